@@ -0,0 +1,73 @@
+package evaluator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A query evaluator over a synthetic Zipfian corpus, shared by the benchmarks
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+    static final int VOCABULARY_SIZE = 50000;
+    static final double EXPONENT = 1.0;
+
+    @Param({"1000", "10000"})
+    public int numOfDocs;
+
+    @Param({"100"})
+    public int meanLength;
+
+    QueryEvaluator evaluator;
+    File corpusFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpusFile = writeCorpus(numOfDocs, meanLength);
+        evaluator = new QueryEvaluator(corpusFile.getAbsolutePath(), false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        corpusFile.delete();
+    }
+
+    static File writeCorpus(int numOfDocs, int meanLength) throws IOException {
+        File file = File.createTempFile("corpus", ".txt");
+        new ZipfianCorpus(VOCABULARY_SIZE, EXPONENT, 42).writeDocuments(file.getAbsolutePath(), numOfDocs, meanLength);
+        return file;
+    }
+
+    //return the term ids of the index sorted by decreasing document frequency
+    int[] termIdsByDocFrequency() {
+        Integer[] termIds = new Integer[evaluator.dictionary.size()];
+        for (int termId = 0; termId < termIds.length; termId++) {
+            termIds[termId] = termId;
+        }
+        Arrays.sort(termIds, (one, two) -> Integer.compare(evaluator.getPostingList(two).size(),
+                evaluator.getPostingList(one).size()));
+        return Arrays.stream(termIds).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Generates queries of two to four words, one in four with a proximity clause of two non stopwords
+     *
+     * @param numOfQueries the number of queries
+     * @return the queries
+     */
+    String[] queries(int numOfQueries) {
+        ZipfianCorpus words = new ZipfianCorpus(VOCABULARY_SIZE, EXPONENT, 7);
+        Random random = new Random(7);
+        String[] queries = new String[numOfQueries];
+        for (int i = 0; i < numOfQueries; i++) {
+            String query = words.nextDocument(2 + random.nextInt(3));
+            if (i % 4 == 0) {
+                query += " " + (1 + random.nextInt(5)) + "(" + words.nextContentWord() + " " + words.nextContentWord() + ")";
+            }
+            queries[i] = query;
+        }
+        return queries;
+    }
+}
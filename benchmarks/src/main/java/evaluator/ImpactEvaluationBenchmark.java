@@ -0,0 +1,36 @@
+package evaluator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates generated queries score-at-a-time on 8 bit impacts, under several postings budgets.
+ * A budget of 0 evaluates the exact weights of the main postings
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImpactEvaluationBenchmark {
+    @Param({"0", "1000000", "1000", "100"})
+    public long postingsBudget;
+
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(CorpusState corpus) {
+        queries = corpus.queries(256);
+        corpus.evaluator.setImpactIndex(postingsBudget == 0 ? null : new ImpactIndex(corpus.evaluator, new TfIdfScorer()),
+                postingsBudget, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<WeightedDocument> evaluateQuery(CorpusState corpus) {
+        return corpus.evaluator.evaluateQuery(queries[next++ & 255]);
+    }
+}
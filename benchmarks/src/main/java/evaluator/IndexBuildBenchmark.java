@@ -0,0 +1,39 @@
+package evaluator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the positional index from a corpus file, without saving it
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexBuildBenchmark {
+
+    @Param({"1000", "10000"})
+    public int numOfDocs;
+
+    private File corpusFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpusFile = CorpusState.writeCorpus(numOfDocs, 100);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        corpusFile.delete();
+    }
+
+    @Benchmark
+    public PositionalInvertedIndex build() {
+        return new PositionalInvertedIndex(corpusFile.getAbsolutePath(), false);
+    }
+}
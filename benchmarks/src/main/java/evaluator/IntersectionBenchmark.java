@@ -0,0 +1,57 @@
+package evaluator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Intersects the posting lists of two terms. The first term is the most frequent indexed term,
+ * the second one the term whose document frequency is closest to the first one's divided by skew.
+ * The lists are intersected by merging them, and on the docId bitmaps of the frequent terms
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IntersectionBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int skew;
+
+    private List<Document> postOne;
+    private List<Document> postTwo;
+    private DocIdBitmap bitmapOne;
+    private DocIdBitmap bitmapTwo;
+
+    @Setup(Level.Trial)
+    public void setUp(CorpusState corpus) {
+        int[] termIds = corpus.termIdsByDocFrequency();
+        postOne = corpus.evaluator.getPostingList(termIds[0]);
+
+        //term with the closest document frequency to the target, other than the first term
+        int target = Math.max(1, postOne.size() / skew);
+        int closest = termIds[1];
+        for (int i = 1; i < termIds.length; i++) {
+            int docFrequency = corpus.evaluator.getPostingList(termIds[i]).size();
+            if (Math.abs(docFrequency - target) < Math.abs(corpus.evaluator.getPostingList(closest).size() - target)) {
+                closest = termIds[i];
+            }
+        }
+        postTwo = corpus.evaluator.getPostingList(closest);
+        bitmapOne = corpus.evaluator.getDocIdBitmap(termIds[0]);
+        bitmapTwo = corpus.evaluator.getDocIdBitmap(closest);
+    }
+
+    @Benchmark
+    public List<Document> intersect(CorpusState corpus) {
+        return corpus.evaluator.intersect(postOne, postTwo);
+    }
+
+    @Benchmark
+    public List<Document> intersectBitmaps(CorpusState corpus) {
+        return corpus.evaluator.intersect(postOne, bitmapOne, postTwo, bitmapTwo);
+    }
+}
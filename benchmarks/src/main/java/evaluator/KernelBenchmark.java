@@ -0,0 +1,129 @@
+package evaluator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the scalar and the Vector API kernels on the docIds of the most frequent indexed term and of the term
+ * whose document frequency is closest to the first one's divided by skew, on long docId arrays of the same skew,
+ * on the positions of the two most frequent terms, on long position arrays with no match, so that both arrays
+ * are scanned, and on two 65536 bit bitmaps.
+ * Run with -jvmArgsAppend -XX:UseAVX=2 to measure the vector kernels on 256 bit vectors
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelBenchmark {
+    static final int WINDOW = 5;
+
+    @Param({"scalar", "vector"})
+    public String kernels;
+
+    @Param({"1024"})
+    public int length;
+
+    @Param({"1", "16", "64"})
+    public int skew;
+
+    private PostingKernels postingKernels;
+    private int[] docIdsOne;
+    private int[] docIdsTwo;
+    private int[] indexesOne;
+    private int[] indexesTwo;
+    private int[] longDocIdsOne;
+    private int[] longDocIdsTwo;
+    private List<Document> intersection;
+    private int[] positionsOne;
+    private int[] positionsTwo;
+    private long[] wordsOne;
+    private long[] wordsTwo;
+    private long[] words;
+
+    @Setup(Level.Trial)
+    public void setUp(CorpusState corpus) {
+        postingKernels = PostingKernels.forName(kernels);
+        int[] termIds = corpus.termIdsByDocFrequency();
+        docIdsOne = corpus.evaluator.getDocIds(termIds[0]);
+        int target = Math.max(1, docIdsOne.length / skew);
+        docIdsTwo = corpus.evaluator.getDocIds(termIds[1]);
+        for (int i = 1; i < termIds.length; i++) {
+            int[] docIds = corpus.evaluator.getDocIds(termIds[i]);
+            if (Math.abs(docIds.length - target) < Math.abs(docIdsTwo.length - target)) {
+                docIdsTwo = docIds;
+            }
+        }
+        intersection = corpus.evaluator.intersect(corpus.evaluator.getPostingList(termIds[0]),
+                corpus.evaluator.getPostingList(termIds[1]));
+
+        //the positions of term two are just outside the window of the positions of term one
+        positionsOne = new int[length];
+        positionsTwo = new int[length];
+        for (int i = 0; i < length; i++) {
+            positionsOne[i] = i * 4 * WINDOW;
+            positionsTwo[i] = i * 4 * WINDOW + 2 * WINDOW;
+        }
+
+        Random random = new Random(42);
+        //docIds with random gaps of 1 to 4, and skew times larger gaps for the second list
+        longDocIdsOne = new int[length];
+        longDocIdsTwo = new int[length / skew];
+        for (int i = 0, docId = 0; i < longDocIdsOne.length; i++) {
+            docId += 1 + random.nextInt(4);
+            longDocIdsOne[i] = docId;
+        }
+        for (int i = 0, docId = 0; i < longDocIdsTwo.length; i++) {
+            docId += skew * (1 + random.nextInt(4));
+            longDocIdsTwo[i] = docId;
+        }
+        indexesOne = new int[Math.max(length, Math.min(docIdsOne.length, docIdsTwo.length))];
+        indexesTwo = new int[indexesOne.length];
+
+        wordsOne = new long[65536 / 64];
+        wordsTwo = new long[wordsOne.length];
+        words = new long[wordsOne.length];
+        for (int i = 0; i < wordsOne.length; i++) {
+            wordsOne[i] = random.nextLong();
+            wordsTwo[i] = random.nextLong();
+        }
+    }
+
+    @Benchmark
+    public int intersectPostings() {
+        return postingKernels.intersect(docIdsOne, docIdsTwo, indexesOne, indexesTwo);
+    }
+
+    @Benchmark
+    public int intersectLong() {
+        return postingKernels.intersect(longDocIdsOne, longDocIdsTwo, indexesOne, indexesTwo);
+    }
+
+    @Benchmark
+    public int matchesWindowPostings() {
+        int matches = 0;
+        for (int i = 0; i < intersection.size() - 1; i += 2) {
+            Document one = intersection.get(i);
+            Document two = intersection.get(i + 1);
+            if (postingKernels.matchesWindow(one.getTermPositions(), one.getTermFrequency(),
+                    two.getTermPositions(), two.getTermFrequency(), WINDOW)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public boolean matchesWindowLong() {
+        return postingKernels.matchesWindow(positionsOne, length, positionsTwo, length, WINDOW);
+    }
+
+    @Benchmark
+    public int and() {
+        return postingKernels.and(wordsOne, wordsTwo, words);
+    }
+}
@@ -0,0 +1,35 @@
+package evaluator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the proximity of the two most frequent indexed terms in the documents containing both
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProximityBenchmark {
+
+    @Param({"1", "5", "25"})
+    public int window;
+
+    private List<Document> intersection;
+
+    @Setup(Level.Trial)
+    public void setUp(CorpusState corpus) {
+        int[] termIds = corpus.termIdsByDocFrequency();
+        intersection = corpus.evaluator.intersect(corpus.evaluator.getPostingList(termIds[0]),
+                corpus.evaluator.getPostingList(termIds[1]));
+    }
+
+    @Benchmark
+    public List<Document> checkProximity(CorpusState corpus) {
+        return corpus.evaluator.checkProximity(intersection, window);
+    }
+}
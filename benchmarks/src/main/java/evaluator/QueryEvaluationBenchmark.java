@@ -0,0 +1,36 @@
+package evaluator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates generated queries, with and without the pseudo-relevance feedback expansions
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryEvaluationBenchmark {
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(CorpusState corpus) {
+        queries = corpus.queries(256);
+    }
+
+    @Benchmark
+    public List<WeightedDocument> evaluateQuery(CorpusState corpus) {
+        return corpus.evaluator.evaluateQuery(queries[next++ & 255]);
+    }
+
+    @Benchmark
+    public Map<Integer, List<WeightedDocument>> evaluateExpandedQuery(CorpusState corpus) {
+        return corpus.evaluator.evaluateExpandedQuery(queries[next++ & 255]);
+    }
+}
@@ -0,0 +1,38 @@
+package evaluator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up the posting list of a query term
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TermLookupBenchmark {
+    private List<String> terms;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(CorpusState corpus) {
+        ZipfianCorpus words = new ZipfianCorpus(CorpusState.VOCABULARY_SIZE, CorpusState.EXPONENT, 7);
+        List<String> sample = new ArrayList<>();
+        for (int i = 0; i < 1024; i++) {
+            sample.add(words.nextWord());
+        }
+        //terms are looked up in their indexed form
+        terms = corpus.evaluator.stringStemmer(sample);
+    }
+
+    @Benchmark
+    public List<Document> lookup(CorpusState corpus) {
+        String term = terms.get(next++ & 1023);
+        return corpus.evaluator.getPostingList(corpus.evaluator.dictionary.getTermId(term));
+    }
+}
@@ -0,0 +1,114 @@
+package evaluator;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels on the Vector API, with the widest vectors of the CPU (16 ints with AVX-512, 8 with AVX2).
+ * Arrays shorter than a vector, and the tails of longer ones, use the scalar kernels
+ */
+public class VectorPostingKernels implements PostingKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Lists of close lengths are merged by the scalar kernel: on JDK 17, comparing blocks of both lists
+     * all against all carries masks across a loop, which JDK 17 allocates on the heap
+     */
+    @Override
+    public int intersect(int[] docIdsOne, int[] docIdsTwo, int[] indexesOne, int[] indexesTwo) {
+        int lanes = INTS.length();
+        if ((long) docIdsTwo.length >= (long) lanes * docIdsOne.length) {
+            return intersectShortest(docIdsOne, docIdsTwo, indexesOne, indexesTwo);
+        } else if ((long) docIdsOne.length >= (long) lanes * docIdsTwo.length) {
+            return intersectShortest(docIdsTwo, docIdsOne, indexesTwo, indexesOne);
+        }
+        return ScalarPostingKernels.intersect(docIdsOne, 0, docIdsTwo, 0, indexesOne, indexesTwo, 0);
+    }
+
+    /**
+     * Compares each docId of the shortest list with a block of the other list at once, skipping the blocks
+     * that end before it
+     *
+     * @param shortIds     the docIds of the shortest list
+     * @param longIds      the docIds of the other list
+     * @param shortIndexes the array the indexes in the shortest list of the common docIds are written to
+     * @param longIndexes  the array the indexes in the other list of the common docIds are written to
+     * @return the number of common docIds
+     */
+    private static int intersectShortest(int[] shortIds, int[] longIds, int[] shortIndexes, int[] longIndexes) {
+        int lanes = INTS.length();
+        int count = 0;
+        int indexShort = 0;
+        int indexLong = 0;
+        for (; indexShort < shortIds.length; indexShort++) {
+            int docId = shortIds[indexShort];
+            while (indexLong + lanes <= longIds.length && longIds[indexLong + lanes - 1] < docId) {
+                indexLong += lanes;
+            }
+            if (indexLong + lanes > longIds.length) {
+                break;
+            }
+            VectorMask<Integer> matches = IntVector.fromArray(INTS, longIds, indexLong)
+                    .compare(VectorOperators.EQ, docId);
+            //written without a branch, the next docId overwrites the indexes if there is no match
+            shortIndexes[count] = indexShort;
+            longIndexes[count] = indexLong + matches.firstTrue();
+            count += matches.trueCount();
+        }
+        return ScalarPostingKernels.intersect(shortIds, indexShort, longIds, indexLong, shortIndexes, longIndexes,
+                count);
+    }
+
+    /**
+     * Compares blocks of positions of term one with the positions of term two that can follow them:
+     * each such position is broadcast and checked against the whole block at once
+     */
+    @Override
+    public boolean matchesWindow(int[] positionsOne, int sizeOne, int[] positionsTwo, int sizeTwo, int window) {
+        int lanes = INTS.length();
+        int indexOne = 0;
+        int indexTwo = 0;
+        for (; indexOne + lanes <= sizeOne; indexOne += lanes) {
+            IntVector block = IntVector.fromArray(INTS, positionsOne, indexOne);
+            //positions of term two after the first position of the block, up to the window of the last one
+            while (indexTwo < sizeTwo && positionsTwo[indexTwo] <= positionsOne[indexOne]) {
+                indexTwo++;
+            }
+            int last = positionsOne[indexOne + lanes - 1] + window + 1;
+            for (int i = indexTwo; i < sizeTwo && positionsTwo[i] <= last; i++) {
+                //a position one p matches if position - window - 1 <= p < position
+                int position = positionsTwo[i];
+                if (block.compare(VectorOperators.LT, position)
+                        .and(block.compare(VectorOperators.GE, position - window - 1)).anyTrue()) {
+                    return true;
+                }
+            }
+        }
+        return ScalarPostingKernels.matchesWindow(positionsOne, indexOne, sizeOne, positionsTwo, indexTwo, sizeTwo,
+                window);
+    }
+
+    @Override
+    public int and(long[] wordsOne, long[] wordsTwo, long[] result) {
+        int bound = LONGS.loopBound(result.length);
+        for (int i = 0; i < bound; i += LONGS.length()) {
+            LongVector.fromArray(LONGS, wordsOne, i).and(LongVector.fromArray(LONGS, wordsTwo, i))
+                    .intoArray(result, i);
+        }
+        //the scalar tail also counts the bits of the vector part
+        int count = 0;
+        for (int i = 0; i < bound; i++) {
+            count += Long.bitCount(result[i]);
+        }
+        return count + ScalarPostingKernels.and(wordsOne, wordsTwo, result, bound);
+    }
+
+    @Override
+    public String getName() {
+        return "vector";
+    }
+}
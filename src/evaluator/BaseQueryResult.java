@@ -0,0 +1,57 @@
+package evaluator;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The evaluated original query with one scorer: the weights of its proximity and regular terms
+ * and its ranking. Expansions with any feedback setting start from it without evaluating the
+ * original terms again, and share the expansion terms ranked for the same feedback documents
+ */
+class BaseQueryResult {
+    private Scorer scorer;
+    private QueryCollection queryCollection;
+    private Map<Integer, List<WeightedPost>> proxQueryResult;
+    private Map<Integer, Double> regQueryResult;
+    private List<WeightedDocument> rankedResults;
+
+    //ranked expansion terms of each set of feedback documents
+    private Map<List<Integer>, List<WeightedPost>> expansionTerms = new HashMap<>();
+
+    BaseQueryResult(Scorer scorer, QueryCollection queryCollection, Map<Integer, List<WeightedPost>> proxQueryResult,
+                    Map<Integer, Double> regQueryResult, List<WeightedDocument> rankedResults) {
+        this.scorer = scorer;
+        this.queryCollection = queryCollection;
+        this.proxQueryResult = proxQueryResult;
+        this.regQueryResult = regQueryResult;
+        this.rankedResults = rankedResults;
+    }
+
+    public Scorer getScorer() {
+        return scorer;
+    }
+
+    public QueryCollection getQueryCollection() {
+        return queryCollection;
+    }
+
+    //return the weighted proximity terms of each matching document
+    public Map<Integer, List<WeightedPost>> getProxQueryResult() {
+        return proxQueryResult;
+    }
+
+    //return the summed weight of the regular terms of each matching document, copy it before adding terms
+    public Map<Integer, Double> getRegQueryResult() {
+        return regQueryResult;
+    }
+
+    public List<WeightedDocument> getRankedResults() {
+        return rankedResults;
+    }
+
+    //return the cache of ranked expansion terms, keyed by the feedback document ids
+    Map<List<Integer>, List<WeightedPost>> getExpansionTerms() {
+        return expansionTerms;
+    }
+}
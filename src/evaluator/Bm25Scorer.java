@@ -0,0 +1,64 @@
+package evaluator;
+
+/**
+ * Okapi BM25
+ */
+public class Bm25Scorer implements Scorer {
+    private double k1;
+    private double b;
+
+    Bm25Scorer() {
+        this(1.2, 0.75);
+    }
+
+    Bm25Scorer(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public double score(int termFrequency, int documentFrequency, long collectionFrequency, int documentLength,
+                        CollectionStatistics statistics) {
+        int docCount = statistics.getDocumentCount();
+        //IDF: log(1 + (N - df + 0.5) / (df + 0.5)), always positive
+        double idf = Math.log(1 + (docCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+
+        //TF with document length normalization
+        double lengthNorm = k1 * (1 - b + b * documentLength / statistics.getAverageDocumentLength());
+        return idf * termFrequency * (k1 + 1) / (termFrequency + lengthNorm);
+    }
+
+    @Override
+    public String getName() {
+        return "bm25";
+    }
+
+    //return the scorer with its parameters, as read by Scorer.forName
+    @Override
+    public String toString() {
+        return getName() + "(k1=" + k1 + ",b=" + b + ")";
+    }
+
+    //return true if obj scores with the same parameters
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        Bm25Scorer other = (Bm25Scorer) obj;
+        return Double.compare(k1, other.k1) == 0 && Double.compare(b, other.b) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(k1) + Double.hashCode(b);
+    }
+
+    public double getK1() {
+        return k1;
+    }
+
+    public double getB() {
+        return b;
+    }
+}
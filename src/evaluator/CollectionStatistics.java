@@ -0,0 +1,28 @@
+package evaluator;
+
+/**
+ * Collection-wide statistics used by the scoring functions
+ */
+public class CollectionStatistics {
+    private int documentCount;
+    private long totalLength;
+
+    CollectionStatistics(int documentCount, long totalLength) {
+        this.documentCount = documentCount;
+        this.totalLength = totalLength;
+    }
+
+    //number of documents in the collection
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    //number of indexed tokens in the collection
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    public double getAverageDocumentLength() {
+        return documentCount == 0 ? 0 : totalLength / (double) documentCount;
+    }
+}
@@ -0,0 +1,161 @@
+package evaluator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Positions of the stopwords, kept apart from the main postings so those stay small.
+ * Each stopword has sorted arrays of docIds, of offsets into its positions and of positions,
+ * and postings are only created for the documents a proximity clause asks for
+ */
+public class CommonTermPositions {
+    //positions of each stopword term id
+    private Map<Integer, Positions> positionsByTerm = new HashMap<>();
+
+    //stopwords whose positions are shared with the positions this was copied from, copied before they change
+    private Set<Integer> sharedTerms = new HashSet<>();
+
+    //positions of one stopword
+    private static class Positions {
+        private int[] docIds = new int[8];
+        //positions of docIds[i] are positions[offsets[i]] to positions[offsets[i + 1]]
+        private int[] offsets = new int[9];
+        private int[] positions = new int[8];
+        private int numOfDocs;
+        private int numOfPositions;
+
+        //return positions equal to these
+        private Positions copy() {
+            Positions copy = new Positions();
+            copy.docIds = docIds.clone();
+            copy.offsets = offsets.clone();
+            copy.positions = positions.clone();
+            copy.numOfDocs = numOfDocs;
+            copy.numOfPositions = numOfPositions;
+            return copy;
+        }
+    }
+
+    /**
+     * Adds an occurrence of a stopword, documents are added in docId order and positions in increasing order
+     *
+     * @param termId   the term id of the stopword
+     * @param docId    the document id
+     * @param position the position of the stopword in the document
+     */
+    void add(int termId, int docId, int position) {
+        Positions term = positionsByTerm.get(termId);
+        if (term == null || sharedTerms.remove(termId)) {
+            term = term == null ? new Positions() : term.copy();
+            positionsByTerm.put(termId, term);
+        }
+        if (term.numOfDocs == 0 || term.docIds[term.numOfDocs - 1] != docId) {
+            if (term.numOfDocs == term.docIds.length) {
+                term.docIds = Arrays.copyOf(term.docIds, term.numOfDocs * 2);
+                term.offsets = Arrays.copyOf(term.offsets, term.numOfDocs * 2 + 1);
+            }
+            term.docIds[term.numOfDocs++] = docId;
+        }
+        if (term.numOfPositions == term.positions.length) {
+            term.positions = Arrays.copyOf(term.positions, term.numOfPositions * 2);
+        }
+        term.positions[term.numOfPositions++] = position;
+        term.offsets[term.numOfDocs] = term.numOfPositions;
+    }
+
+    /**
+     * Returns positions equal to these, positions added to the copy are not added to these.
+     * The positions of each stopword are shared until one is added to the copy, so these must not change
+     *
+     * @return the copy
+     */
+    CommonTermPositions copy() {
+        CommonTermPositions copy = new CommonTermPositions();
+        copy.positionsByTerm.putAll(positionsByTerm);
+        copy.sharedTerms.addAll(positionsByTerm.keySet());
+        return copy;
+    }
+
+    //releases the unused capacity of the arrays, positions shared with another copy are left as they are
+    void trimToSize() {
+        for (Map.Entry<Integer, Positions> entry : positionsByTerm.entrySet()) {
+            if (sharedTerms.contains(entry.getKey())) {
+                continue;
+            }
+            Positions term = entry.getValue();
+            term.docIds = Arrays.copyOf(term.docIds, term.numOfDocs);
+            term.offsets = Arrays.copyOf(term.offsets, term.numOfDocs + 1);
+            term.positions = Arrays.copyOf(term.positions, term.numOfPositions);
+        }
+    }
+
+    //return the number of documents containing the stopword
+    public int getDocumentFrequency(int termId) {
+        Positions term = positionsByTerm.get(termId);
+        return term == null ? 0 : term.numOfDocs;
+    }
+
+    //return the number of occurrences of the stopword in the collection
+    public long getCollectionFrequency(int termId) {
+        Positions term = positionsByTerm.get(termId);
+        return term == null ? 0 : term.numOfPositions;
+    }
+
+    //return the number of ints stored for all stopwords
+    public long getSize() {
+        long size = 0;
+        for (Positions term : positionsByTerm.values()) {
+            size += term.docIds.length + term.offsets.length + term.positions.length;
+        }
+        return size;
+    }
+
+    /**
+     * Creates the postings of a stopword in the documents of a posting list
+     *
+     * @param termId     the term id of the stopword
+     * @param candidates postings sorted by docId, or null for all the documents of the stopword
+     * @return the postings of the stopword in those documents, sorted by docId
+     */
+    public List<Document> getPostings(int termId, List<Document> candidates) {
+        List<Document> postings = new ArrayList<>();
+        Positions term = positionsByTerm.get(termId);
+        if (term == null) {
+            return postings;
+        }
+        if (candidates == null) {
+            for (int i = 0; i < term.numOfDocs; i++) {
+                postings.add(createPosting(termId, term, i));
+            }
+            return postings;
+        }
+
+        //each search starts after the previous match, candidates are sorted
+        int from = 0;
+        for (int i = 0; i < candidates.size() && from < term.numOfDocs; i++) {
+            int docId = candidates.get(i).getDocId();
+            if (i > 0 && docId == candidates.get(i - 1).getDocId()) {
+                continue;
+            }
+            int index = Arrays.binarySearch(term.docIds, from, term.numOfDocs, docId);
+            if (index >= 0) {
+                postings.add(createPosting(termId, term, index));
+                from = index + 1;
+            } else {
+                from = -index - 1;
+            }
+        }
+        return postings;
+    }
+
+    //return the posting of the stopword in its index-th document
+    private Document createPosting(int termId, Positions term, int index) {
+        return new Document(termId, term.docIds[index],
+                Arrays.copyOfRange(term.positions, term.offsets[index], term.offsets[index + 1]));
+    }
+}
@@ -0,0 +1,122 @@
+package evaluator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates a synthetic collection for scale testing: a documents file in the <DOC n> format
+ * and a matching query file in the <query><number>..</number><text>..</text></query> format.
+ * Word frequencies follow a Zipf distribution, the vocabulary grows with the collection
+ * following Heaps' law and document lengths follow a log-normal distribution.
+ * The same arguments always generate the same files
+ */
+public class CorpusGenerator {
+    //median number of words of a document and the standard deviation of its logarithm
+    static final double MEDIAN_LENGTH = 60;
+    static final double LENGTH_SIGMA = 0.8;
+
+    //Heaps' law: vocabulary size = K * tokens^BETA
+    private static final double HEAPS_K = 44;
+    private static final double HEAPS_BETA = 0.49;
+
+    static final double ZIPF_EXPONENT = 1.0;
+
+    //fraction of the queries with a proximity clause
+    static final double PROXIMITY_QUERIES = 0.3;
+
+    private ZipfianCorpus corpus;
+    private Random random;
+
+    /**
+     * @param numOfDocs the number of documents, used to size the vocabulary
+     * @param seed      the seed of the random generators
+     */
+    CorpusGenerator(int numOfDocs, long seed) {
+        this.corpus = new ZipfianCorpus(vocabularySize(numOfDocs), ZIPF_EXPONENT, seed);
+        this.random = new Random(seed + 1);
+    }
+
+    /**
+     * Vocabulary size of a collection following Heaps' law
+     *
+     * @param numOfDocs the number of documents
+     * @return the number of distinct words
+     */
+    static int vocabularySize(int numOfDocs) {
+        //mean of the log-normal length distribution
+        double tokens = numOfDocs * MEDIAN_LENGTH * Math.exp(LENGTH_SIGMA * LENGTH_SIGMA / 2);
+        return (int) Math.max(1000, HEAPS_K * Math.pow(tokens, HEAPS_BETA));
+    }
+
+    //return a log-normal document length, at least one word
+    int nextLength() {
+        return Math.max(1, (int) Math.round(MEDIAN_LENGTH * Math.exp(LENGTH_SIGMA * random.nextGaussian())));
+    }
+
+    /**
+     * Generates a free-text query of one to four words. PROXIMITY_QUERIES of the
+     * queries also have a n(a b) clause, with n between 1 and 9 and no stopwords
+     *
+     * @return the query text
+     */
+    String nextQuery() {
+        StringBuilder query = new StringBuilder(corpus.nextContentWord());
+        int numOfWords = random.nextInt(4);
+        for (int i = 0; i < numOfWords; i++) {
+            query.append(' ').append(corpus.nextWord());
+        }
+
+        if (random.nextDouble() < PROXIMITY_QUERIES) {
+            query.append(' ').append(1 + random.nextInt(9))
+                    .append('(').append(corpus.nextContentWord()).append(' ').append(corpus.nextContentWord()).append(')');
+        }
+        return query.toString();
+    }
+
+    /**
+     * Writes the documents file
+     *
+     * @param fileName  the name of the file
+     * @param numOfDocs the number of documents
+     * @throws IOException if the file cannot be written
+     */
+    void writeDocuments(String fileName, int numOfDocs) throws IOException {
+        corpus.writeDocuments(fileName, numOfDocs, this::nextLength);
+    }
+
+    /**
+     * Writes the query file, one query per line
+     *
+     * @param fileName     the name of the file
+     * @param numOfQueries the number of queries, with numbers 1 to numOfQueries
+     * @throws IOException if the file cannot be written
+     */
+    void writeQueries(String fileName, int numOfQueries) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+            for (int number = 1; number <= numOfQueries; number++) {
+                writer.write("<query><number>" + number + "</number><text>" + nextQuery() + "</text></query>\n");
+            }
+        }
+    }
+
+    /**
+     * Usage: CorpusGenerator numOfDocs numOfQueries [outputFolder] [seed]
+     * Writes documents.txt and queries.xml to outputFolder, the current folder by default
+     */
+    public static void main(String[] args) throws IOException {
+        int numOfDocs = Integer.valueOf(args[0]);
+        int numOfQueries = Integer.valueOf(args[1]);
+        File folder = new File(args.length > 2 ? args[2] : ".");
+        long seed = args.length > 3 ? Long.valueOf(args[3]) : 42;
+
+        folder.mkdirs();
+        CorpusGenerator generator = new CorpusGenerator(numOfDocs, seed);
+        System.out.println("Vocabulary size: " + vocabularySize(numOfDocs));
+
+        generator.writeDocuments(new File(folder, "documents.txt").getPath(), numOfDocs);
+        generator.writeQueries(new File(folder, "queries.xml").getPath(), numOfQueries);
+    }
+}
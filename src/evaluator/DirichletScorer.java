@@ -0,0 +1,54 @@
+package evaluator;
+
+/**
+ * Query likelihood with Dirichlet smoothing.
+ * Only documents containing the term are scored, so the per term score is
+ * log(1 + tf / (mu * P(t|C))) + log(mu / (|d| + mu)), and negative scores are clipped to 0
+ */
+public class DirichletScorer implements Scorer {
+    private double mu;
+
+    DirichletScorer() {
+        this(2000);
+    }
+
+    DirichletScorer(double mu) {
+        this.mu = mu;
+    }
+
+    @Override
+    public double score(int termFrequency, int documentFrequency, long collectionFrequency, int documentLength,
+                        CollectionStatistics statistics) {
+        //probability of the term in the collection language model
+        double collectionProb = collectionFrequency / (double) statistics.getTotalLength();
+
+        double score = Math.log(1 + termFrequency / (mu * collectionProb)) + Math.log(mu / (documentLength + mu));
+        return Math.max(score, 0);
+    }
+
+    @Override
+    public String getName() {
+        return "ql";
+    }
+
+    //return the scorer with its parameters, as read by Scorer.forName
+    @Override
+    public String toString() {
+        return getName() + "(mu=" + mu + ")";
+    }
+
+    //return true if obj scores with the same parameters
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass() && Double.compare(mu, ((DirichletScorer) obj).mu) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(mu);
+    }
+
+    public double getMu() {
+        return mu;
+    }
+}
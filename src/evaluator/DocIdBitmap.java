@@ -0,0 +1,247 @@
+package evaluator;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compressed set of docIds, in the layout of Roaring bitmaps: docIds are grouped by their high 16 bits,
+ * and the low 16 bits of each group are kept in a sorted array, or in a 65536 bit bitmap when the
+ * group has more than ARRAY_CONTAINER_MAX docIds. Used for the posting lists of frequent terms,
+ * where testing a docId or intersecting two sets is cheaper than walking the lists
+ */
+public class DocIdBitmap {
+    //groups with more docIds are stored as bitmaps
+    static final int ARRAY_CONTAINER_MAX = 4096;
+
+    private static final int BITMAP_WORDS = 65536 / 64;
+
+    //high 16 bits of each group, in increasing order
+    private char[] keys;
+
+    //low 16 bits of each group, in increasing order, null for bitmap groups
+    private char[][] arrays;
+
+    //bitmap of each group, null for array groups
+    private long[][] bitmaps;
+
+    private int numOfGroups;
+    private int cardinality;
+
+    private DocIdBitmap(int capacity) {
+        keys = new char[capacity];
+        arrays = new char[capacity][];
+        bitmaps = new long[capacity][];
+    }
+
+    /**
+     * Creates the set of docIds of a posting list
+     *
+     * @param postings postings sorted by docId
+     * @return the docIds
+     */
+    static DocIdBitmap of(List<Document> postings) {
+        int numOfPostings = postings.size();
+        int[] docIds = new int[numOfPostings];
+        for (int i = 0; i < numOfPostings; i++) {
+            docIds[i] = postings.get(i).getDocId();
+        }
+
+        DocIdBitmap bitmap = new DocIdBitmap(numOfPostings == 0 ? 0 : (docIds[numOfPostings - 1] >>> 16) + 1);
+        int from = 0;
+        while (from < numOfPostings) {
+            //docIds of the same group
+            int key = docIds[from] >>> 16;
+            int to = from;
+            char[] values = new char[Math.min(numOfPostings - from, 65536)];
+            while (to < numOfPostings && docIds[to] >>> 16 == key) {
+                values[to - from] = (char) docIds[to];
+                to++;
+            }
+            bitmap.addGroup((char) key, values, to - from);
+            from = to;
+        }
+        bitmap.trimToSize();
+        return bitmap;
+    }
+
+    //adds a group of sorted values after the last one, as a bitmap if it has too many values
+    private void addGroup(char key, char[] values, int count) {
+        if (count > ARRAY_CONTAINER_MAX) {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < count; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            appendGroup(key, null, words, count);
+        } else if (count > 0) {
+            appendGroup(key, values.length == count ? values : Arrays.copyOf(values, count), null, count);
+        }
+    }
+
+    //adds a group after the last one
+    private void appendGroup(char key, char[] array, long[] bitmap, int count) {
+        if (numOfGroups == keys.length) {
+            int capacity = Math.max(4, numOfGroups * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            arrays = Arrays.copyOf(arrays, capacity);
+            bitmaps = Arrays.copyOf(bitmaps, capacity);
+        }
+        keys[numOfGroups] = key;
+        arrays[numOfGroups] = array;
+        bitmaps[numOfGroups] = bitmap;
+        cardinality += count;
+        numOfGroups++;
+    }
+
+    //releases the unused capacity of the groups
+    private void trimToSize() {
+        keys = Arrays.copyOf(keys, numOfGroups);
+        arrays = Arrays.copyOf(arrays, numOfGroups);
+        bitmaps = Arrays.copyOf(bitmaps, numOfGroups);
+    }
+
+    //return the index of the group of a docId, negative if there is none
+    private int findGroup(int docId) {
+        return Arrays.binarySearch(keys, 0, numOfGroups, (char) (docId >>> 16));
+    }
+
+    //return true if the set contains the docId
+    public boolean contains(int docId) {
+        if (docId < 0) {
+            return false;
+        }
+        int group = findGroup(docId);
+        if (group < 0) {
+            return false;
+        }
+        char low = (char) docId;
+        return bitmaps[group] != null ? (bitmaps[group][low >>> 6] & (1L << low)) != 0
+                : Arrays.binarySearch(arrays[group], low) >= 0;
+    }
+
+    /**
+     * Intersects two sets group by group: bitmap with bitmap by words, array with bitmap by
+     * testing the array values, and array with array by merging them
+     *
+     * @param other another set
+     * @return the docIds in both sets
+     */
+    public DocIdBitmap and(DocIdBitmap other) {
+        DocIdBitmap result = new DocIdBitmap(Math.min(numOfGroups, other.numOfGroups));
+        int indexOne = 0;
+        int indexTwo = 0;
+        char[] values = null;
+        while (indexOne < numOfGroups && indexTwo < other.numOfGroups) {
+            if (keys[indexOne] < other.keys[indexTwo]) {
+                indexOne++;
+            } else if (keys[indexOne] > other.keys[indexTwo]) {
+                indexTwo++;
+            } else {
+                long[] bitmapOne = bitmaps[indexOne];
+                long[] bitmapTwo = other.bitmaps[indexTwo];
+                if (bitmapOne != null && bitmapTwo != null) {
+                    result.addBitmapGroup(keys[indexOne], bitmapOne, bitmapTwo);
+                } else {
+                    if (values == null) {
+                        values = new char[ARRAY_CONTAINER_MAX];
+                    }
+                    int count = bitmapOne != null ? filter(other.arrays[indexTwo], bitmapOne, values)
+                            : bitmapTwo != null ? filter(arrays[indexOne], bitmapTwo, values)
+                            : merge(arrays[indexOne], other.arrays[indexTwo], values);
+                    //the buffer is kept by the result if all its values are in the group
+                    result.addGroup(keys[indexOne], values, count);
+                    if (count == values.length) {
+                        values = null;
+                    }
+                }
+                indexOne++;
+                indexTwo++;
+            }
+        }
+        result.trimToSize();
+        return result;
+    }
+
+    //adds the intersection of two bitmaps, as an array if it is small enough
+    private void addBitmapGroup(char key, long[] bitmapOne, long[] bitmapTwo) {
+        long[] words = new long[BITMAP_WORDS];
+        int count = PostingKernels.INSTANCE.and(bitmapOne, bitmapTwo, words);
+        if (count > ARRAY_CONTAINER_MAX) {
+            appendGroup(key, null, words, count);
+        } else {
+            char[] values = new char[count];
+            int next = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    values[next++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                }
+            }
+            addGroup(key, values, count);
+        }
+    }
+
+    //copies the values contained in the bitmap, return their number
+    private static int filter(char[] array, long[] bitmap, char[] result) {
+        int count = 0;
+        for (char value : array) {
+            if ((bitmap[value >>> 6] & (1L << value)) != 0) {
+                result[count++] = value;
+            }
+        }
+        return count;
+    }
+
+    //copies the values of both sorted arrays, return their number
+    private static int merge(char[] arrayOne, char[] arrayTwo, char[] result) {
+        int count = 0;
+        int indexOne = 0;
+        int indexTwo = 0;
+        while (indexOne < arrayOne.length && indexTwo < arrayTwo.length) {
+            if (arrayOne[indexOne] == arrayTwo[indexTwo]) {
+                result[count++] = arrayOne[indexOne];
+                indexOne++;
+                indexTwo++;
+            } else if (arrayOne[indexOne] < arrayTwo[indexTwo]) {
+                indexOne++;
+            } else {
+                indexTwo++;
+            }
+        }
+        return count;
+    }
+
+    //return the docIds of the set, in increasing order
+    public int[] toArray() {
+        int[] docIds = new int[cardinality];
+        int next = 0;
+        for (int group = 0; group < numOfGroups; group++) {
+            int high = keys[group] << 16;
+            if (bitmaps[group] != null) {
+                long[] words = bitmaps[group];
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    for (long word = words[i]; word != 0; word &= word - 1) {
+                        docIds[next++] = high | (i * 64 + Long.numberOfTrailingZeros(word));
+                    }
+                }
+            } else {
+                for (char value : arrays[group]) {
+                    docIds[next++] = high | value;
+                }
+            }
+        }
+        return docIds;
+    }
+
+    //return the number of docIds of the set
+    public int getCardinality() {
+        return cardinality;
+    }
+
+    //return the number of bytes of the groups
+    public long getSizeInBytes() {
+        long size = 2L * numOfGroups;
+        for (int group = 0; group < numOfGroups; group++) {
+            size += bitmaps[group] != null ? 8L * BITMAP_WORDS : 2L * arrays[group].length;
+        }
+        return size;
+    }
+}
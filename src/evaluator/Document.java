@@ -1,50 +1,71 @@
 package evaluator;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Created by mayara on 2/16/17.
  */
 public class Document {
-    private String term;
-    private Integer docId;
-    private Integer termFrequency;
-    private List<Integer> termPositionList;
+    private int termId;
+    private int docId;
+    private int termFrequency;
+    //the first termFrequency entries are the term positions, in increasing order
+    private int[] termPositions;
 
-    Document (String token, int docId) {
-        this.term = token;
+    Document (int termId, int docId) {
+        this.termId = termId;
         this.docId = docId;
     }
 
-    Document(String token, int docId, int termFrequency, int termPosition) {
-        this(token, docId);
-        this.termPositionList = new ArrayList<>();
+    Document(int termId, int docId, int termFrequency, int termPosition) {
+        this(termId, docId);
+        this.termPositions = new int[]{termPosition};
         this.termFrequency = termFrequency;
-        this.termPositionList.add(termPosition);
     }
 
-    public Integer getDocId() {
+    Document(int termId, int docId, int[] termPositions) {
+        this(termId, docId);
+        this.termPositions = termPositions;
+        this.termFrequency = termPositions.length;
+    }
+
+    public int getDocId() {
         return docId;
     }
 
-    public Integer getTermFrequency() {
+    public int getTermFrequency() {
         return termFrequency;
     }
 
-    public void setTermFrequency(Integer termFrequency) {
-        this.termFrequency = termFrequency;
+    /**
+     * Adds a term position to the document and increments the term frequency
+     *
+     * @param termPosition a position after the last one added
+     */
+    void addTermPosition(int termPosition) {
+        if (termFrequency == termPositions.length) {
+            termPositions = Arrays.copyOf(termPositions, termPositions.length * 2);
+        }
+        termPositions[termFrequency] = termPosition;
+        termFrequency++;
+    }
+
+    //releases the unused capacity of the position array
+    void trimToSize() {
+        if (termPositions != null && termPositions.length > termFrequency) {
+            termPositions = Arrays.copyOf(termPositions, termFrequency);
+        }
     }
 
-    public List<Integer> getTermPositionList() {
-        return termPositionList;
+    public int[] getTermPositions() {
+        return termPositions;
     }
 
-    public String getTerm() {
-        return term;
+    public int getTermId() {
+        return termId;
     }
 
-    public void setTerm(String term) {
-        this.term = term;
+    public void setTermId(int termId) {
+        this.termId = termId;
     }
 }
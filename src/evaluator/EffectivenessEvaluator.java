@@ -0,0 +1,181 @@
+package evaluator;
+
+import java.util.*;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the effectiveness of ranked results against relevance judgements, without writing run files.
+ * Results are added as queries finish, from any number of threads, and the means are available at any time.
+ * A document is relevant if its label is above 0, nDCG uses the label as gain.
+ * Queries without relevant judgements are skipped
+ */
+public class EffectivenessEvaluator {
+    //default cutoffs of precision and nDCG
+    static final int[] DEFAULT_CUTOFFS = {5, 10};
+
+    private Qrels qrels;
+    private int[] cutoffs;
+
+    //<query id, gains of its relevant documents sorted in decreasing order>
+    private Map<Integer, int[]> idealGains = new HashMap<>();
+
+    //sums over the evaluated queries
+    private LongAdder queryCount = new LongAdder();
+    private LongAdder skippedQueries = new LongAdder();
+    private DoubleAdder averagePrecisionSum = new DoubleAdder();
+    private DoubleAdder recallSum = new DoubleAdder();
+    private DoubleAdder[] precisionSums;
+    private DoubleAdder[] ndcgSums;
+
+    public EffectivenessEvaluator(Qrels qrels) {
+        this(qrels, DEFAULT_CUTOFFS);
+    }
+
+    /**
+     * @param qrels   the relevance judgements
+     * @param cutoffs the ranks at which precision and nDCG are measured
+     */
+    public EffectivenessEvaluator(Qrels qrels, int... cutoffs) {
+        this.qrels = qrels;
+        this.cutoffs = cutoffs.clone();
+        Arrays.sort(this.cutoffs);
+        this.precisionSums = new DoubleAdder[cutoffs.length];
+        this.ndcgSums = new DoubleAdder[cutoffs.length];
+        for (int i = 0; i < cutoffs.length; i++) {
+            precisionSums[i] = new DoubleAdder();
+            ndcgSums[i] = new DoubleAdder();
+        }
+
+        //relevant labels of each query, for recall and the ideal ranking of nDCG
+        Map<Integer, List<Integer>> gains = new HashMap<>();
+        LongIntMap labels = qrels.getLabels();
+        for (int i = 0; i < labels.size(); i++) {
+            if (labels.getValue(i) > 0) {
+                gains.computeIfAbsent(Qrels.getQueryId(labels.getKey(i)), qid -> new ArrayList<>())
+                        .add(labels.getValue(i));
+            }
+        }
+        gains.forEach((qid, queryGains) -> idealGains.put(qid,
+                queryGains.stream().sorted(Comparator.reverseOrder()).mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Measures the ranked results of a query and adds them to the means
+     *
+     * @param qid           the query id
+     * @param rankedResults the ranked documents
+     * @return false if the query has no relevant judgements and was skipped
+     */
+    public boolean add(int qid, List<WeightedDocument> rankedResults) {
+        int[] ideal = idealGains.get(qid);
+        if (ideal == null) {
+            skippedQueries.increment();
+            return false;
+        }
+
+        int relevantRetrieved = 0;
+        double precisionSum = 0;
+        double dcg = 0;
+        int cutoff = 0;
+        for (int rank = 1; rank <= rankedResults.size(); rank++) {
+            int label = qrels.getLabel(qid, rankedResults.get(rank - 1).getDocId());
+            if (label > 0) {
+                relevantRetrieved++;
+                precisionSum += relevantRetrieved / (double) rank;
+                dcg += label / log2(rank + 1);
+            }
+            //measures at the cutoffs reached at this rank
+            while (cutoff < cutoffs.length && cutoffs[cutoff] == rank) {
+                addAtCutoff(cutoff++, relevantRetrieved, dcg, ideal);
+            }
+        }
+        //cutoffs deeper than the ranking
+        for (; cutoff < cutoffs.length; cutoff++) {
+            addAtCutoff(cutoff, relevantRetrieved, dcg, ideal);
+        }
+
+        averagePrecisionSum.add(precisionSum / ideal.length);
+        recallSum.add(relevantRetrieved / (double) ideal.length);
+        queryCount.increment();
+        return true;
+    }
+
+    //adds precision and nDCG at the index-th cutoff
+    private void addAtCutoff(int index, int relevantRetrieved, double dcg, int[] ideal) {
+        precisionSums[index].add(relevantRetrieved / (double) cutoffs[index]);
+        double idealDcg = 0;
+        for (int rank = 1; rank <= Math.min(cutoffs[index], ideal.length); rank++) {
+            idealDcg += ideal[rank - 1] / log2(rank + 1);
+        }
+        ndcgSums[index].add(dcg / idealDcg);
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+
+    //number of evaluated queries
+    public long getQueryCount() {
+        return queryCount.sum();
+    }
+
+    //number of queries without relevant judgements
+    public long getSkippedQueries() {
+        return skippedQueries.sum();
+    }
+
+    public int[] getCutoffs() {
+        return cutoffs.clone();
+    }
+
+    //return the mean of a sum over the evaluated queries
+    private double mean(double sum) {
+        long count = queryCount.sum();
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public double getMeanAveragePrecision() {
+        return mean(averagePrecisionSum.sum());
+    }
+
+    public double getMeanRecall() {
+        return mean(recallSum.sum());
+    }
+
+    //return the mean precision at the index-th cutoff
+    public double getMeanPrecision(int cutoffIndex) {
+        return mean(precisionSums[cutoffIndex].sum());
+    }
+
+    //return the mean nDCG at the index-th cutoff
+    public double getMeanNdcg(int cutoffIndex) {
+        return mean(ndcgSums[cutoffIndex].sum());
+    }
+
+    //return the names of the measures, comma separated
+    public String getCsvHeader() {
+        StringBuilder header = new StringBuilder("queries");
+        for (int cutoff : cutoffs) {
+            header.append(",P@").append(cutoff);
+        }
+        header.append(",MAP");
+        for (int cutoff : cutoffs) {
+            header.append(",nDCG@").append(cutoff);
+        }
+        return header.append(",recall").toString();
+    }
+
+    //return the means, in the order of getCsvHeader
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder().append(getQueryCount());
+        for (int i = 0; i < cutoffs.length; i++) {
+            csv.append(',').append(String.format(Locale.ROOT, "%.4f", getMeanPrecision(i)));
+        }
+        csv.append(',').append(String.format(Locale.ROOT, "%.4f", getMeanAveragePrecision()));
+        for (int i = 0; i < cutoffs.length; i++) {
+            csv.append(',').append(String.format(Locale.ROOT, "%.4f", getMeanNdcg(i)));
+        }
+        return csv.append(',').append(String.format(Locale.ROOT, "%.4f", getMeanRecall())).toString();
+    }
+}
@@ -0,0 +1,203 @@
+package evaluator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Impact ordered copy of the document ids of the main postings, for score-at-a-time evaluation.
+ * The weight of every posting is computed once with a scorer and quantized to an integer impact
+ * between 0 and 2^bits - 1. The postings of each term are grouped in segments of equal impact, in
+ * decreasing impact order, and the segments of all the query terms are processed from the highest
+ * impact down, so evaluation can stop after a number of postings or a time and keep the documents
+ * with the largest contributions. Without a budget the ranking only differs by the quantization error
+ */
+public class ImpactIndex {
+    //default number of bits of an impact
+    static final int DEFAULT_BITS = 8;
+
+    private Scorer scorer;
+    private int maxImpact;
+
+    //weight of one impact unit
+    private double impactWeight;
+
+    //segments of each term id, null for terms without postings
+    private Segments[] termSegments;
+
+    private long numOfPostings;
+
+    //impact ordered postings of one term
+    private static class Segments {
+        //impact of each segment, in decreasing order
+        private int[] impacts;
+        //documents of segment i are docIds[offsets[i]] to docIds[offsets[i + 1]], in increasing order
+        private int[] offsets;
+        private int[] docIds;
+    }
+
+    public ImpactIndex(PositionalInvertedIndex index, Scorer scorer) {
+        this(index, scorer, DEFAULT_BITS);
+    }
+
+    /**
+     * @param index  the index whose postings are weighed
+     * @param scorer the scoring function of the impacts
+     * @param bits   the number of bits of an impact, between 1 and 16
+     */
+    public ImpactIndex(PositionalInvertedIndex index, Scorer scorer, int bits) {
+        if (bits < 1 || bits > 16) {
+            throw new IllegalArgumentException("Impacts must have between 1 and 16 bits: " + bits);
+        }
+        this.scorer = scorer;
+        this.maxImpact = (1 << bits) - 1;
+        this.termSegments = new Segments[index.dictionary.size()];
+
+        //the largest weight of the collection is the largest impact
+        double maxWeight = 0;
+        for (int termId = 0; termId < termSegments.length; termId++) {
+            List<Document> postingList = index.scanPostingList(termId);
+            for (Document document : postingList) {
+                maxWeight = Math.max(maxWeight, weigh(index, document));
+            }
+        }
+        this.impactWeight = maxWeight > 0 ? maxWeight / maxImpact : 1;
+
+        int[] impactCounts = new int[maxImpact + 2];
+        for (int termId = 0; termId < termSegments.length; termId++) {
+            List<Document> postingList = index.scanPostingList(termId);
+            if (!postingList.isEmpty()) {
+                termSegments[termId] = createSegments(index, postingList, impactCounts);
+                numOfPostings += postingList.size();
+            }
+        }
+    }
+
+    //return the weight of a posting, as weighed by the regular query evaluation
+    private double weigh(PositionalInvertedIndex index, Document document) {
+        return scorer.score(document.getTermFrequency(), index.getDocumentFrequency(document.getTermId()),
+                index.getCollectionFrequency(document.getTermId()), index.getDocumentLength(document.getDocId()),
+                index.getCollectionStatistics());
+    }
+
+    /**
+     * Quantizes the postings of a term and groups them by impact with a counting sort
+     *
+     * @param index        the index
+     * @param postingList  the postings of the term, sorted by docId
+     * @param impactCounts a buffer of maxImpact + 2 counters
+     * @return the segments of the term
+     */
+    private Segments createSegments(PositionalInvertedIndex index, List<Document> postingList, int[] impactCounts) {
+        int[] impacts = new int[postingList.size()];
+        Arrays.fill(impactCounts, 0);
+        for (int i = 0; i < impacts.length; i++) {
+            double weight = weigh(index, postingList.get(i));
+            //only postings of weight 0 have impact 0, they are processed last
+            impacts[i] = weight <= 0 ? 0 : (int) Math.max(1, Math.min(maxImpact, Math.round(weight / impactWeight)));
+            //counts are kept in decreasing impact order
+            impactCounts[maxImpact - impacts[i] + 1]++;
+        }
+
+        int numOfSegments = 0;
+        for (int i = 1; i < impactCounts.length; i++) {
+            if (impactCounts[i] > 0) {
+                numOfSegments++;
+            }
+            //start of each impact, documents stay in docId order within it
+            impactCounts[i] += impactCounts[i - 1];
+        }
+
+        Segments segments = new Segments();
+        segments.impacts = new int[numOfSegments];
+        segments.offsets = new int[numOfSegments + 1];
+        segments.docIds = new int[impacts.length];
+        int segment = 0;
+        for (int i = 0; i < impactCounts.length - 1; i++) {
+            if (impactCounts[i + 1] > impactCounts[i]) {
+                segments.impacts[segment] = maxImpact - i;
+                segments.offsets[segment] = impactCounts[i];
+                segment++;
+            }
+        }
+        segments.offsets[numOfSegments] = impacts.length;
+        for (int i = 0; i < impacts.length; i++) {
+            segments.docIds[impactCounts[maxImpact - impacts[i]]++] = postingList.get(i).getDocId();
+        }
+        return segments;
+    }
+
+    /**
+     * Adds the weights of query terms to the documents that contain them, highest impacts first.
+     * Evaluation stops at the first of the budgets, the remaining postings have impacts no higher
+     * than the last one processed
+     *
+     * @param termIds         the term ids of the query, TermDictionary.UNKNOWN for terms that are not indexed
+     * @param docWeights      a map of <DocId, summed weight> to add the terms to
+     * @param postingsBudget  the maximum number of postings processed
+     * @param timeBudgetNanos the time after which no more segments are processed
+     * @return the number of postings processed
+     */
+    public long evaluate(int[] termIds, Map<Integer, Double> docWeights, long postingsBudget, long timeBudgetNanos) {
+        long start = System.nanoTime();
+
+        //segments of the query terms as {impact, term index, segment index}, highest impact first
+        List<int[]> querySegments = new ArrayList<>();
+        for (int i = 0; i < termIds.length; i++) {
+            Segments segments = getSegments(termIds[i]);
+            for (int j = 0; segments != null && j < segments.impacts.length; j++) {
+                querySegments.add(new int[]{segments.impacts[j], i, j});
+            }
+        }
+        querySegments.sort((one, two) -> one[0] != two[0] ? Integer.compare(two[0], one[0])
+                : one[1] != two[1] ? Integer.compare(one[1], two[1]) : Integer.compare(one[2], two[2]));
+
+        long processed = 0;
+        for (int[] querySegment : querySegments) {
+            if (processed >= postingsBudget
+                    || (timeBudgetNanos != Long.MAX_VALUE && System.nanoTime() - start >= timeBudgetNanos)) {
+                break;
+            }
+            Segments segments = termSegments[termIds[querySegment[1]]];
+            int from = segments.offsets[querySegment[2]];
+            //the budget is compared as a long, from + budget would overflow with an unlimited budget
+            int to = from + (int) Math.min(segments.offsets[querySegment[2] + 1] - from, postingsBudget - processed);
+            Double weight = querySegment[0] * impactWeight;
+            for (int i = from; i < to; i++) {
+                docWeights.merge(segments.docIds[i], weight, Double::sum);
+            }
+            processed += to - from;
+        }
+        return processed;
+    }
+
+    //return the segments of a term, null if it has no postings
+    private Segments getSegments(int termId) {
+        return termId == TermDictionary.UNKNOWN || termId >= termSegments.length ? null : termSegments[termId];
+    }
+
+    //return the scorer the impacts were computed with
+    public Scorer getScorer() {
+        return scorer;
+    }
+
+    public int getMaxImpact() {
+        return maxImpact;
+    }
+
+    //return the weight of one impact unit
+    public double getImpactWeight() {
+        return impactWeight;
+    }
+
+    //return the number of segments of a term
+    public int getNumOfSegments(int termId) {
+        Segments segments = getSegments(termId);
+        return segments == null ? 0 : segments.impacts.length;
+    }
+
+    public long getNumOfPostings() {
+        return numOfPostings;
+    }
+}
@@ -0,0 +1,231 @@
+package evaluator;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput, phase timings and memory of an index build.
+ * Progress is written as JSON lines every REPORT_INTERVAL_SECONDS, so short builds stay silent,
+ * and the final summary is a JSON object that can be saved to a file
+ */
+public class IndexBuildMetrics {
+    static final long REPORT_INTERVAL_SECONDS = 5;
+
+    enum Phase {READ, TOKENIZE, STEM, REORDER, INVERT, PERSIST}
+
+    private PrintStream out;
+    private long[] phaseNanos = new long[Phase.values().length];
+    private long startNanos;
+    private long elapsedNanos;
+    private long lastReportNanos;
+    private boolean reported;
+
+    private long documentsRead;
+    private long documents;
+    private long documentsIndexed;
+    private long tokens;
+    private long distinctTerms;
+    private long postings;
+    private long postingBytes;
+    private long docIdBytes;
+    //largest heap usage sampled while the build reports its progress
+    private long peakHeapBytes;
+
+    /**
+     * @param out where progress is reported
+     */
+    IndexBuildMetrics(PrintStream out) {
+        this.out = out;
+    }
+
+    //starts timing the build
+    void start() {
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        peakHeapBytes = 0;
+        sampleHeap();
+    }
+
+    //keeps the largest heap usage seen, the peaks of the JVM memory pools are left to other readers
+    private void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        peakHeapBytes = Math.max(peakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    void addPhaseNanos(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    //counts a document read from the file
+    void documentRead() {
+        documentsRead++;
+        reportProgress(Phase.READ);
+    }
+
+    //counts a document tokenized and stemmed
+    void documentAnalyzed(int numOfTokens) {
+        documents++;
+        tokens += numOfTokens;
+        reportProgress(Phase.STEM);
+    }
+
+    //counts a document added to the positional index
+    void documentIndexed() {
+        documentsIndexed++;
+        reportProgress(Phase.INVERT);
+    }
+
+    /**
+     * Counts the postings of a posting list from an index on, with their size encoded as variable-byte gaps
+     *
+     * @param docList a posting list
+     * @param from    the index of the first posting counted, the previous ones are already counted
+     */
+    void postingsAdded(List<Document> docList, int from) {
+        int previousDocId = from == 0 ? 0 : docList.get(from - 1).getDocId();
+        for (int i = from; i < docList.size(); i++) {
+            Document doc = docList.get(i);
+            int docIdGapBytes = variableByteSize(doc.getDocId() - previousDocId);
+            docIdBytes += docIdGapBytes;
+            postingBytes += docIdGapBytes + variableByteSize(doc.getTermFrequency());
+            int previousPosition = 0;
+            for (int position : doc.getTermPositions()) {
+                postingBytes += variableByteSize(position - previousPosition);
+                previousPosition = position;
+            }
+            previousDocId = doc.getDocId();
+        }
+        postings += docList.size() - from;
+    }
+
+    //records the number of terms of the finished index
+    void indexCreated(long numOfTerms) {
+        distinctTerms = numOfTerms;
+    }
+
+    //starts from the size of the index documents are added to, so the summary is the size of the new index
+    void carryOver(IndexBuildMetrics previous) {
+        distinctTerms = previous.distinctTerms;
+        postings = previous.postings;
+        postingBytes = previous.postingBytes;
+        docIdBytes = previous.docIdBytes;
+    }
+
+    //stops timing the build, the summary is reported if progress was
+    void finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+        sampleHeap();
+        if (reported) {
+            out.println(toJson());
+        }
+    }
+
+    /**
+     * Samples the heap usage, and writes a progress line if the report interval has passed since the last one
+     *
+     * @param phase the phase being run
+     */
+    void reportProgress(Phase phase) {
+        sampleHeap();
+        long now = System.nanoTime();
+        if (now - lastReportNanos < TimeUnit.SECONDS.toNanos(REPORT_INTERVAL_SECONDS)) {
+            return;
+        }
+        lastReportNanos = now;
+        reported = true;
+
+        double seconds = (now - startNanos) / 1e9;
+        Runtime runtime = Runtime.getRuntime();
+        out.println("{\"event\":\"progress\",\"phase\":\"" + phase.name().toLowerCase() + "\""
+                + ",\"elapsedMillis\":" + TimeUnit.NANOSECONDS.toMillis(now - startNanos)
+                + ",\"documentsRead\":" + documentsRead
+                + ",\"documents\":" + documents
+                + ",\"documentsIndexed\":" + documentsIndexed
+                + ",\"tokens\":" + tokens
+                + ",\"documentsPerSecond\":" + format(documents / seconds)
+                + ",\"tokensPerSecond\":" + format(tokens / seconds)
+                + ",\"heapUsedBytes\":" + (runtime.totalMemory() - runtime.freeMemory()) + "}");
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    /**
+     * Number of bytes of a value encoded with variable-byte encoding, 7 bits per byte
+     *
+     * @param value a non-negative value
+     * @return the number of bytes
+     */
+    static int variableByteSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public long getPostingBytes() {
+        return postingBytes;
+    }
+
+    public long getDocIdBytes() {
+        return docIdBytes;
+    }
+
+    /**
+     * Summary of the build in JSON format. postingBytes is the size of the postings
+     * encoded as variable-byte docId gaps, term frequencies and position gaps, docIdBytes the part of the docId gaps
+     *
+     * @return a JSON object
+     */
+    public String toJson() {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder json = new StringBuilder("{\"event\":\"summary\"")
+                .append(",\"elapsedMillis\":").append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                .append(",\"documents\":").append(documents)
+                .append(",\"tokens\":").append(tokens)
+                .append(",\"distinctTerms\":").append(distinctTerms)
+                .append(",\"postings\":").append(postings)
+                .append(",\"postingBytes\":").append(postingBytes)
+                .append(",\"docIdBytes\":").append(docIdBytes)
+                .append(",\"documentsPerSecond\":").append(format(documents / seconds))
+                .append(",\"tokensPerSecond\":").append(format(tokens / seconds))
+                .append(",\"peakHeapBytes\":").append(peakHeapBytes)
+                .append(",\"phaseMillis\":{");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(phase.name().toLowerCase()).append("\":")
+                    .append(TimeUnit.NANOSECONDS.toMillis(phaseNanos[phase.ordinal()]));
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Saves the summary to a file
+     *
+     * @param fileName the name of the file
+     */
+    public void saveToFile(String fileName) {
+        try (PrintWriter writer = new PrintWriter(fileName)) {
+            writer.println(toJson());
+        } catch (FileNotFoundException fnfe) {
+            System.out.println(Arrays.toString(fnfe.getStackTrace()));
+        }
+    }
+}
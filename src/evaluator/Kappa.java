@@ -1,175 +1,203 @@
 package evaluator;
 
 import java.io.*;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
 
 /**
  * Created by mayara on 4/2/17.
- * Calculates kappa between two relevance judgement lists.
+ * Calculates the agreement between relevance judgement files.
+ * Judgements are joined on (query id, document id), so files may be in any order and judge
+ * different documents. Labels may have any number of grades. A single pass over the judged
+ * pairs computes Cohen's kappa for every pair of files and Fleiss' kappa over all files
  */
 public class Kappa {
 
-    //relevance ratings from file one and two
-    private List<String> relevanceOne;
-    private List<String> relevanceTwo;
-
-    //list of files containing relevance judgement
+    //the baseline file followed by the judgement files, sorted by name
     private File[] listOfFiles;
+    private Qrels[] judgements;
+
+    //distinct labels of all files, in increasing order
+    private int[] labelValues;
+
+    //confusion[i][j][a * numOfLabels + b]: pairs labelled a by file i and b by file j, for i < j
+    private long[][][] confusion;
 
-    private Kappa(String fileNameOne, String folderPath) {
-        relevanceOne = new ArrayList<>();
-        relevanceTwo = new ArrayList<>();
+    //pairs labelled with each label by all files, for Fleiss' kappa
+    private long[] fleissLabelCounts;
+    private long fleissItems;
+    private double fleissAgreementSum;
 
-        readFile(fileNameOne);
-        readFileList(folderPath);
+    Kappa(String fileNameOne, String folderPath) {
+        readFileList(fileNameOne, folderPath);
+
+        //files are read in parallel
+        judgements = new Qrels[listOfFiles.length];
+        IntStream.range(0, listOfFiles.length).parallel().forEach(i -> judgements[i] = readFile(listOfFiles[i]));
     }
 
 
     /**
      * Reads a relevance judgement file in the format
-     * [QryID] 0 [DocID] [Relevance] and extracts the relevance
-     * values into a list
+     * [QryID] 0 [DocID] [Relevance]
      *
-     * @param fileName
+     * @param file a relevance judgement file
+     * @return the judgements, empty if the file cannot be read
      */
-    private void readFile(String fileName) {
-        relevanceTwo.clear();
-
-        String line;
-        List<String> relevanceList = new ArrayList<>();
+    private static Qrels readFile(File file) {
         try {
-            BufferedReader br = new BufferedReader(new FileReader(fileName));
-            while ((line = br.readLine()) != null) {
-                String relevance = line.substring(6);
-                relevanceList.add(relevance);
+            Qrels qrels = Qrels.load(file.getAbsolutePath());
+            if (qrels.getSkippedLines() > 0) {
+                System.out.println(file.getName() + ": skipped " + qrels.getSkippedLines() + " lines");
             }
-
-            if (relevanceOne.isEmpty()) {
-                relevanceOne.addAll(relevanceList);
-            } else {
-                relevanceTwo.addAll(relevanceList);
-            }
-
-        } catch (FileNotFoundException fnfe) {
-            System.out.println(fnfe.getMessage());
-
+            return qrels;
         } catch (IOException ioe) {
             System.out.println(ioe.getMessage());
+            return new Qrels();
         }
-
     }
 
     /**
-     * Find all equal relevance scores from two lists
-     *
-     * @param listOne relevance agreement from annotator one
-     * @param listTwo relevance agreement from annotator two
-     * @return a list of all the equal relevance from both lists
+     * Counts the labels given to each judged (query, document) pair by every pair of files.
+     * The judged pairs of all files are joined in one map, then each pair is visited once
      */
-    private List<String> getEqualRows(List<String> listOne, List<String> listTwo) {
-        List<String> result = new ArrayList<>();
-
-        int indexOne = 0;
-        int indexTwo = 0;
-        while (indexOne < listOne.size() && indexTwo < listTwo.size()) {
-
-            String valueOne = listOne.get(indexOne);
-            String valueTwo = listTwo.get(indexTwo);
-
-            if (valueOne.equals(valueTwo)) {
-                result.add(valueOne);
+    void countAgreements() {
+        int numOfFiles = judgements.length;
+
+        //distinct labels
+        TreeSet<Integer> labels = new TreeSet<>();
+        for (Qrels qrels : judgements) {
+            for (int i = 0; i < qrels.size(); i++) {
+                labels.add(qrels.getLabels().getValue(i));
             }
-
-            indexOne++;
-            indexTwo++;
         }
-        return result;
-
-    }
-
-
-    /**
-     * Gets the total number of relevant and non relevant scores from a list
-     *
-     * @param relevanceList a list with relevant / non-relevant scores
-     * @return an object with the counts of relevant and non relevant scores
-     */
-    private Relevance countRelevanceRating(List<String> relevanceList) {
-        int relevant = 0;
-        int nonRelevant = 0;
-        for (String value : relevanceList) {
-            //count number of relevant
-            value = value.trim();
-            if (value.equals("1")) {
-                relevant++;
-
-                //count number of non-relevant
-            } else if (value.equals("0")) {
-                nonRelevant++;
+        labelValues = labels.stream().mapToInt(Integer::intValue).toArray();
+        int numOfLabels = labelValues.length;
+
+        //index of each judged pair, and the label index each file gave it, -1 if not judged
+        LongIntMap items = new LongIntMap();
+        for (Qrels qrels : judgements) {
+            for (int i = 0; i < qrels.size(); i++) {
+                long key = qrels.getLabels().getKey(i);
+                if (items.indexOf(key) < 0) {
+                    items.put(key, items.size());
+                }
+            }
+        }
+        int[][] itemLabels = new int[numOfFiles][items.size()];
+        for (int file = 0; file < numOfFiles; file++) {
+            Arrays.fill(itemLabels[file], -1);
+            LongIntMap fileLabels = judgements[file].getLabels();
+            for (int i = 0; i < fileLabels.size(); i++) {
+                itemLabels[file][items.indexOf(fileLabels.getKey(i))] =
+                        Arrays.binarySearch(labelValues, fileLabels.getValue(i));
             }
         }
 
-        return new Relevance(relevant, nonRelevant);
-    }
-
-    /**
-     * Probability that two annotators agree on their relevance and on-relevance scores
-     *
-     * @param relevanceAgreement counter of all relevance and non-relevance agreements
-     *                           between two annotators
-     * @return the probability of agreement
-     */
-    private double probabilityOfAgreement(Relevance relevanceAgreement) {
-        return (relevanceAgreement.getRelevantCount() + relevanceAgreement.getNonRelevantCount())
-                / (double) relevanceOne.size();
-    }
-
-    /**
-     * Probability that both annotators would agree in their relevance scores
-     *
-     * @param relevanceJudgementOne the relevance count from annotator one
-     * @param relevanceJudgementTwo the relevance count from annotator two
-     * @return the probability of relevance agreement
-     */
-    private double probRelevant(Relevance relevanceJudgementOne, Relevance relevanceJudgementTwo) {
-        double relOne = relevanceJudgementOne.getRelevantCount() / (double) relevanceOne.size();
-        double relTwo = relevanceJudgementTwo.getRelevantCount() / (double) relevanceTwo.size();
+        confusion = new long[numOfFiles][numOfFiles][];
+        for (int i = 0; i < numOfFiles; i++) {
+            for (int j = i + 1; j < numOfFiles; j++) {
+                confusion[i][j] = new long[numOfLabels * numOfLabels];
+            }
+        }
+        fleissLabelCounts = new long[numOfLabels];
+        int[] itemLabelCounts = new int[numOfLabels];
+
+        for (int item = 0; item < items.size(); item++) {
+            int raters = 0;
+            Arrays.fill(itemLabelCounts, 0);
+            for (int i = 0; i < numOfFiles; i++) {
+                int labelOne = itemLabels[i][item];
+                if (labelOne < 0) {
+                    continue;
+                }
+                raters++;
+                itemLabelCounts[labelOne]++;
+                for (int j = i + 1; j < numOfFiles; j++) {
+                    int labelTwo = itemLabels[j][item];
+                    if (labelTwo >= 0) {
+                        confusion[i][j][labelOne * numOfLabels + labelTwo]++;
+                    }
+                }
+            }
 
-        return relOne * relTwo;
+            //Fleiss' kappa needs the same number of raters for every pair, only pairs judged by all files count
+            if (raters == numOfFiles && numOfFiles > 1) {
+                long agreeingRaterPairs = 0;
+                for (int label = 0; label < numOfLabels; label++) {
+                    fleissLabelCounts[label] += itemLabelCounts[label];
+                    agreeingRaterPairs += (long) itemLabelCounts[label] * (itemLabelCounts[label] - 1);
+                }
+                fleissAgreementSum += agreeingRaterPairs / (double) (numOfFiles * (numOfFiles - 1));
+                fleissItems++;
+            }
+        }
     }
 
     /**
-     * Probability that both annotators would agree in their non-relevance scores
+     * Cohen's kappa between two files, over the pairs both judged
      *
-     * @param relevanceJudgementOne the non-relevance count from annotator one
-     * @param relevanceJudgementTwo the non-relevance count from annotator two
-     * @return the probability of non-relevance agreement
+     * @param fileOne index of a file
+     * @param fileTwo index of another file
+     * @return the kappa result, NaN if the files have no judged pair in common
      */
-    private double probNonRelevant(Relevance relevanceJudgementOne, Relevance relevanceJudgementTwo) {
-        double relOne = relevanceJudgementOne.getNonRelevantCount() / (double) relevanceOne.size();
-        double relTwo = relevanceJudgementTwo.getNonRelevantCount() / (double) relevanceTwo.size();
+    double getKappa(int fileOne, int fileTwo) {
+        if (fileOne == fileTwo) {
+            return 1;
+        }
+        long[] counts = confusion[Math.min(fileOne, fileTwo)][Math.max(fileOne, fileTwo)];
+        int numOfLabels = labelValues.length;
+
+        long total = 0;
+        long agreements = 0;
+        long[] labelsOne = new long[numOfLabels];
+        long[] labelsTwo = new long[numOfLabels];
+        for (int a = 0; a < numOfLabels; a++) {
+            for (int b = 0; b < numOfLabels; b++) {
+                long count = counts[a * numOfLabels + b];
+                total += count;
+                labelsOne[a] += count;
+                labelsTwo[b] += count;
+                if (a == b) {
+                    agreements += count;
+                }
+            }
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
 
-        return relOne * relTwo;
+        //probability of agreement, and of agreement by chance from each file's label distribution
+        double probAgreement = agreements / (double) total;
+        double probChanceAgreement = 0;
+        for (int label = 0; label < numOfLabels; label++) {
+            probChanceAgreement += (labelsOne[label] / (double) total) * (labelsTwo[label] / (double) total);
+        }
+        return getKappa(probAgreement, probChanceAgreement);
     }
 
     /**
-     * Probability two annotators agree by chance
+     * Fleiss' kappa of all the files, over the pairs judged by every file
      *
-     * @param probNonRelevant the probability of non-relevance agreement
-     * @param probRelevant    the probability of relevance agreement
-     * @return the probability of chance agreement
+     * @return the kappa result, NaN if no pair was judged by every file
      */
-    private double probChanceAgreement(double probNonRelevant, double probRelevant) {
-        double sqRel = probRelevant * probRelevant;
-        double sqNonRel = probNonRelevant * probRelevant;
-
-        return sqNonRel + sqRel;
+    double getFleissKappa() {
+        if (fleissItems == 0) {
+            return Double.NaN;
+        }
+        double probAgreement = fleissAgreementSum / fleissItems;
+        double probChanceAgreement = 0;
+        for (long labelCount : fleissLabelCounts) {
+            double labelProbability = labelCount / (double) (fleissItems * judgements.length);
+            probChanceAgreement += labelProbability * labelProbability;
+        }
+        return getKappa(probAgreement, probChanceAgreement);
     }
 
     /**
-     * The Kappa statistic for two relevance lists
+     * The Kappa statistic
      *
      * @param probAgreement       probability of agreement between annotators
      * @param probChanceAgreement probability of chance agreement between annotators
@@ -181,14 +209,18 @@ public class Kappa {
 
 
     /**
-     * Saves the kappa statistic values to file
+     * Saves the kappa of each judgement file with the baseline, and Fleiss' kappa of all files
      *
-     * @param kappaResult result from calculated kappa and
-     *                    fileName the name of the file
+     * @param fileName the name of the report
      */
-    private void saveToFile(double kappaResult, String fileName) {
-        try (FileWriter writer = new FileWriter("Kappa.txt", true)) {
-            writer.write("File: " + String.format("%30s", fileName) + "\t:" + String.format("%10.4f", kappaResult) + "\n");
+    private void saveToFile(String fileName) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+            for (int i = 1; i < listOfFiles.length; i++) {
+                writer.write("File: " + String.format("%30s", listOfFiles[i].getName()) + "\t:"
+                        + String.format("%10.4f", getKappa(0, i)) + "\n");
+            }
+            writer.write("Fleiss: " + String.format("%28s", fleissItems + " pairs judged by all") + "\t:"
+                    + String.format("%10.4f", getFleissKappa()) + "\n");
 
         } catch (IOException ioe) {
             System.out.println(Arrays.toString(ioe.getStackTrace()));
@@ -196,65 +228,68 @@ public class Kappa {
 
     }
 
+    /**
+     * Saves Cohen's kappa of every pair of files as a csv matrix, the baseline first
+     *
+     * @param fileName the name of the csv file
+     */
+    private void saveMatrixToFile(String fileName) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+            writer.write("file");
+            for (File file : listOfFiles) {
+                writer.write("," + file.getName());
+            }
+            writer.newLine();
+            for (int i = 0; i < listOfFiles.length; i++) {
+                writer.write(listOfFiles[i].getName());
+                for (int j = 0; j < listOfFiles.length; j++) {
+                    writer.write("," + String.format("%.4f", getKappa(i, j)));
+                }
+                writer.newLine();
+            }
 
-    void start() {
-        List<String> result;
-
-        for (int i = 0; i < listOfFiles.length; i++) {
-
-            readFile(listOfFiles[i].getAbsolutePath());
-
-            //get a list with all the agreements among two annotators
-            result = getEqualRows(relevanceOne, relevanceTwo);
-
-            //get a counter of all relevance and non-relevance agreements
-            Relevance relevanceAgreement = countRelevanceRating(result);
-
-            //get probability of agreement between two annotators
-            double probAgreement = probabilityOfAgreement(relevanceAgreement);
-
-            //relevance judgement count from annotator One
-            Relevance relevanceJudgementOne = countRelevanceRating(relevanceOne);
-
-            //relevance judgement count from annotator Two
-            Relevance relevanceJudgementTwo = countRelevanceRating(relevanceTwo);
-
-            //get probability of non-relevant
-            double probNonRelevant = probNonRelevant(relevanceJudgementOne, relevanceJudgementTwo);
-
-            //get probability of relevant
-            double probRelevant = probRelevant(relevanceJudgementOne, relevanceJudgementTwo);
-
-            //get probability of chance agreement
-            double probChanceAgreement = probChanceAgreement(probNonRelevant, probRelevant);
-
-            //calculate kappa
-            double kappaResult = getKappa(probAgreement, probChanceAgreement);
+        } catch (IOException ioe) {
+            System.out.println(Arrays.toString(ioe.getStackTrace()));
+        }
+    }
 
-            //save kappa to file
-            String fileName = listOfFiles[i].getName();
-            saveToFile(kappaResult, fileName);
 
-        }
+    void start() {
+        countAgreements();
 
+        //save kappa to file
+        saveToFile("Kappa.txt");
+        saveMatrixToFile("KappaMatrix.csv");
     }
 
     /**
-     * Reads a list of .txt files
+     * Lists the baseline and the .txt files of a folder, sorted by name
      *
-     * @param folderPath a path to a folder containing .txt files
+     * @param fileNameOne the baseline relevance judgement file
+     * @param folderPath  a path to a folder containing .txt files
      */
-    private void readFileList(String folderPath) {
+    private void readFileList(String fileNameOne, String folderPath) {
         File folder = new File(folderPath);
+        File baseline = new File(fileNameOne);
         //saves .txt files to a list
-        this.listOfFiles = folder.listFiles((dir, name) -> name.endsWith(".txt"));
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(".txt") && !new File(dir, name).equals(baseline));
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+
+        this.listOfFiles = new File[files.length + 1];
+        this.listOfFiles[0] = baseline;
+        System.arraycopy(files, 0, this.listOfFiles, 1, files.length);
     }
 
+    /**
+     * Args: [baseline qrels] [folder of judgement files]
+     */
     public static void main(String[] args) {
 
-        Kappa k = new Kappa("./BrandaoDusheyko-qrels.txt",
-                "/Users/mayara/IdeaProjects/PositionalQueryEvaluator/relevance_docs/");
+        Kappa k = new Kappa(args.length > 0 ? args[0] : "./BrandaoDusheyko-qrels.txt",
+                args.length > 1 ? args[1] : "/Users/mayara/IdeaProjects/PositionalQueryEvaluator/relevance_docs/");
         k.start();
     }
 }
-
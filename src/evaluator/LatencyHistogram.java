@@ -0,0 +1,83 @@
+package evaluator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of non-negative values, such as latencies in nanoseconds.
+ * Like HdrHistogram, buckets are linear within each power of two:
+ * values below 32 are exact, larger ones are recorded with 16 buckets per power of two,
+ * a relative error below 1/16
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 16;
+    private static final int EXACT_VALUES = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = EXACT_VALUES + 59 * SUB_BUCKETS;
+
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private AtomicLong count = new AtomicLong();
+    private AtomicLong sum = new AtomicLong();
+    private AtomicLong max = new AtomicLong();
+
+    //return the bucket of a value
+    static int bucket(long value) {
+        if (value < EXACT_VALUES) {
+            return (int) Math.max(value, 0);
+        }
+        //shift that leaves the value between SUB_BUCKETS and 2 * SUB_BUCKETS
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 4;
+        return EXACT_VALUES + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    //return the highest value recorded in a bucket
+    static long highestValue(int bucket) {
+        if (bucket < EXACT_VALUES) {
+            return bucket;
+        }
+        int shift = (bucket - EXACT_VALUES) / SUB_BUCKETS + 1;
+        long subBucket = (bucket - EXACT_VALUES) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long value) {
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : sum.get() / (double) total;
+    }
+
+    /**
+     * Value at a percentile, within the precision of the buckets
+     *
+     * @param percentile between 0 and 100
+     * @return the highest value of the bucket containing the percentile
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestValue(bucket), max.get());
+            }
+        }
+        return max.get();
+    }
+}
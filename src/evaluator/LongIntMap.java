@@ -0,0 +1,114 @@
+package evaluator;
+
+import java.util.Arrays;
+
+/**
+ * A map of long keys to int values that keeps its entries in insertion order.
+ * Entries are stored in parallel arrays and found through an open addressing table
+ * with linear probing, so neither keys nor values are boxed
+ */
+public class LongIntMap {
+    //entries in insertion order
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    //entry index + 1 of each slot, 0 for an empty slot. The table is at most half full
+    private int[] table;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity *= 2;
+        }
+        keys = new long[Math.max(expectedSize, 8)];
+        values = new int[keys.length];
+        table = new int[capacity];
+    }
+
+    //return the first slot of a key
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (table.length - 1);
+    }
+
+    /**
+     * Finds the entry of a key
+     *
+     * @param key a key
+     * @return the index of the entry, -1 if the key is not in the map
+     */
+    public int indexOf(long key) {
+        for (int slot = slot(key); table[slot] != 0; slot = (slot + 1) & (table.length - 1)) {
+            if (keys[table[slot] - 1] == key) {
+                return table[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    //return the value of a key, defaultValue if the key is not in the map
+    public int get(long key, int defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : values[index];
+    }
+
+    /**
+     * Sets the value of a key, adding an entry if the key is not in the map
+     *
+     * @param key   a key
+     * @param value its value
+     * @return the index of the entry
+     */
+    public int put(long key, int value) {
+        int slot = slot(key);
+        for (; table[slot] != 0; slot = (slot + 1) & (table.length - 1)) {
+            if (keys[table[slot] - 1] == key) {
+                values[table[slot] - 1] = value;
+                return table[slot] - 1;
+            }
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        table[slot] = ++size;
+        if (size * 2 > table.length) {
+            resize();
+        }
+        return size - 1;
+    }
+
+    //doubles the table and adds the entries again
+    private void resize() {
+        table = new int[table.length * 2];
+        for (int index = 0; index < size; index++) {
+            int slot = slot(keys[index]);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (table.length - 1);
+            }
+            table[slot] = index + 1;
+        }
+    }
+
+    //return the key of the index-th entry
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    //return the value of the index-th entry
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    //number of entries
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,309 @@
+package evaluator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates the queries of a query file with every configuration of a parameter grid, on one index.
+ * The grid file has one parameter per line, with its values separated by spaces:
+ * <pre>
+ * scorer = tfidf bm25(k1=0.9,b=0.4) ql(mu=1000)
+ * feedbackDocs = 1 5 10
+ * expansionTerms = 0 1 3 5
+ * depth = 100 1000
+ * </pre>
+ * Each query is evaluated once per scorer, its expansions for every number of feedback documents
+ * start from that result, and every expansion level is cut at every depth. Unlike QueryEvaluator,
+ * the feedback documents of every expansion level are the top results of the original query, so the
+ * run of a configuration does not depend on the other values of the grid. Queries are evaluated
+ * concurrently and each configuration gets its own run file, in query file order
+ */
+public class ParameterSweep {
+    //number of queries evaluated ahead of the run files, per thread
+    private static final int QUERIES_PER_THREAD = 4;
+
+    private QueryEvaluator evaluator;
+
+    //grid values, missing parameters keep their default value
+    private List<Scorer> scorers = Collections.singletonList(new TfIdfScorer());
+    private int[] feedbackDocs = {1};
+    private int[] expansionTerms = {1, 3, 5};
+    private int[] depths = {1000};
+
+    //configurations in the order they are evaluated: scorer, feedback documents, expansion terms, depth
+    private List<Configuration> configurations = new ArrayList<>();
+
+    //effectiveness of each configuration, null without relevance judgements
+    private EffectivenessEvaluator[] effectiveness;
+
+    /**
+     * A combination of the grid values
+     */
+    static class Configuration {
+        private Scorer scorer;
+        private int feedbackDocuments;
+        private int expansionTerms;
+        private int depth;
+
+        Configuration(Scorer scorer, int feedbackDocuments, int expansionTerms, int depth) {
+            this.scorer = scorer;
+            this.feedbackDocuments = feedbackDocuments;
+            this.expansionTerms = expansionTerms;
+            this.depth = depth;
+        }
+
+        //return the name written to the run file
+        public String getName() {
+            return scorer + "-fb" + feedbackDocuments + "-terms" + expansionTerms + "-depth" + depth;
+        }
+
+        //return the name of the run file
+        public String getFileName() {
+            return "Run-" + getName().replaceAll("\\)", "").replaceAll("[(,]", "_") + ".txt";
+        }
+    }
+
+    /**
+     * @param evaluator the evaluator of the shared index
+     * @param gridFile  the grid file
+     * @throws IOException if the grid file cannot be read
+     */
+    ParameterSweep(QueryEvaluator evaluator, String gridFile) throws IOException {
+        this.evaluator = evaluator;
+        readGrid(gridFile);
+
+        for (Scorer scorer : scorers) {
+            for (int feedbackDocuments : feedbackDocs) {
+                for (int numOfTerms : expansionTerms) {
+                    for (int depth : depths) {
+                        configurations.add(new Configuration(scorer, feedbackDocuments, numOfTerms, depth));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the values of each parameter of the grid. Blank lines and lines starting with # are ignored
+     *
+     * @param gridFile the grid file
+     * @throws IOException if the file cannot be read
+     */
+    private void readGrid(String gridFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(gridFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int separator = line.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Invalid grid line: " + line);
+                }
+                String parameter = line.substring(0, separator).trim();
+                String[] values = line.substring(separator + 1).trim().split("\\s+");
+                switch (parameter) {
+                    case "scorer":
+                        scorers = new ArrayList<>();
+                        for (String value : values) {
+                            scorers.add(Scorer.forName(value));
+                        }
+                        break;
+                    case "feedbackDocs":
+                        feedbackDocs = toInts(values);
+                        break;
+                    case "expansionTerms":
+                        //expansion levels extend each other in increasing order
+                        expansionTerms = toInts(values);
+                        Arrays.sort(expansionTerms);
+                        break;
+                    case "depth":
+                        depths = toInts(values);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown grid parameter: " + parameter);
+                }
+            }
+        }
+    }
+
+    private static int[] toInts(String[] values) {
+        return Arrays.stream(values).mapToInt(Integer::parseInt).toArray();
+    }
+
+    public List<Configuration> getConfigurations() {
+        return configurations;
+    }
+
+    //measures each configuration against relevance judgements
+    public void setQrels(Qrels qrels) {
+        effectiveness = new EffectivenessEvaluator[configurations.size()];
+        for (int i = 0; i < effectiveness.length; i++) {
+            effectiveness[i] = new EffectivenessEvaluator(qrels);
+        }
+    }
+
+    /**
+     * Evaluates a query with every configuration
+     *
+     * @param id    the query id
+     * @param query the query
+     * @return the run file lines of the query for each configuration
+     */
+    private String[] evaluate(String id, String query) {
+        String[] runs = new String[configurations.size()];
+        int configuration = 0;
+        for (Scorer scorer : scorers) {
+            //the original query is evaluated once per scorer
+            BaseQueryResult baseQuery = evaluator.evaluateBaseQuery(query, scorer, QueryTrace.DISABLED);
+            for (int feedbackDocuments : feedbackDocs) {
+                Map<Integer, List<WeightedDocument>> expandedResults =
+                        evaluator.expandQuery(baseQuery, feedbackDocuments, expansionTerms, false,
+                                QueryTrace.DISABLED);
+                for (int numOfTerms : expansionTerms) {
+                    List<WeightedDocument> rankedResults = evaluator.toExternalIds(
+                            expandedResults.getOrDefault(numOfTerms, Collections.emptyList()));
+                    for (int depth : depths) {
+                        List<WeightedDocument> topResults =
+                                rankedResults.subList(0, Math.min(depth, rankedResults.size()));
+                        runs[configuration] = toRun(id, topResults, configurations.get(configuration).getName());
+                        if (effectiveness != null && id.matches("\\d+")) {
+                            effectiveness[configuration].add(Integer.parseInt(id), topResults);
+                        }
+                        configuration++;
+                    }
+                }
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Formats ranked documents as run file lines.
+     * Format: [QryID] 0 [DocID] [Rank] [Score] [Configuration]
+     *
+     * @param queryId       the query id
+     * @param rankedResults the ranked documents
+     * @param name          the name of the configuration
+     * @return the lines
+     */
+    private static String toRun(String queryId, List<WeightedDocument> rankedResults, String name) {
+        StringBuilder run = new StringBuilder();
+        int rank = 1;
+        for (WeightedDocument document : rankedResults) {
+            run.append(queryId).append(" 0 ").append(document.getDocId()).append(' ').append(rank++).append(' ')
+                    .append(document.getWeight()).append(' ').append(name).append('\n');
+        }
+        return run.toString();
+    }
+
+    /**
+     * Evaluates the queries of a query file and writes one run file per configuration
+     *
+     * @param queryFile    the query file
+     * @param outputFolder the folder of the run files
+     * @param threads      the number of queries evaluated at the same time
+     * @throws IOException if a file cannot be read or written
+     */
+    public void run(String queryFile, String outputFolder, int threads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        BufferedWriter[] writers = new BufferedWriter[configurations.size()];
+        try (QueryFileReader queries = new QueryFileReader(queryFile)) {
+            for (int i = 0; i < writers.length; i++) {
+                writers[i] = new BufferedWriter(new FileWriter(new File(outputFolder,
+                        configurations.get(i).getFileName())));
+            }
+
+            //queries are evaluated ahead in parallel, their runs are written in file order
+            Deque<Future<String[]>> pending = new ArrayDeque<>();
+            while (queries.next()) {
+                String id = queries.getId();
+                String query = queries.getText();
+                pending.add(executor.submit(() -> evaluate(id, query)));
+                if (pending.size() >= threads * QUERIES_PER_THREAD) {
+                    write(pending.poll(), writers);
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), writers);
+            }
+        } finally {
+            executor.shutdownNow();
+            for (BufferedWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+
+        if (effectiveness != null) {
+            saveEffectivenessToFile(new File(outputFolder, "Sweep.csv"));
+        }
+    }
+
+    //waits for the runs of a query and writes them
+    private static void write(Future<String[]> runs, BufferedWriter[] writers) throws IOException {
+        try {
+            String[] queryRuns = runs.get();
+            for (int i = 0; i < writers.length; i++) {
+                writers[i].write(queryRuns[i]);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while evaluating the queries", ie);
+        } catch (ExecutionException ee) {
+            throw new IOException("Query evaluation failed", ee.getCause());
+        }
+    }
+
+    /**
+     * Saves the mean effectiveness of each configuration
+     *
+     * @param file the csv file
+     * @throws IOException if the file cannot be written
+     */
+    private void saveEffectivenessToFile(File file) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("configuration,scorer,feedbackDocs,expansionTerms,depth," + effectiveness[0].getCsvHeader());
+            writer.newLine();
+            for (int i = 0; i < configurations.size(); i++) {
+                Configuration configuration = configurations.get(i);
+                writer.write(configuration.getName() + ",\"" + configuration.scorer + "\","
+                        + configuration.feedbackDocuments + "," + configuration.expansionTerms + ","
+                        + configuration.depth + "," + effectiveness[i].toCsv());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Args: documents.txt queries.xml grid.txt [outputFolder]
+     * -Dqrels=file saves the effectiveness of each configuration to Sweep.csv,
+     * -Dsweep.threads sets the number of queries evaluated at the same time
+     */
+    public static void main(String[] args) throws IOException {
+        QueryEvaluator queryEvaluator = new QueryEvaluator(args[0], false,
+                StopwordSet.forName(System.getProperty("stopwords")), Boolean.getBoolean("indexStopwords"),
+                Boolean.getBoolean("reorderDocuments"));
+        queryEvaluator.configurePostingFile();
+        ParameterSweep sweep = new ParameterSweep(queryEvaluator, args[2]);
+        if (System.getProperty("qrels") != null) {
+            sweep.setQrels(Qrels.load(System.getProperty("qrels")));
+        }
+        long start = System.nanoTime();
+        sweep.run(args[1], args.length > 3 ? args[3] : ".",
+                Integer.getInteger("sweep.threads", Runtime.getRuntime().availableProcessors()));
+        System.err.println(sweep.getConfigurations().size() + " configurations in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
@@ -5,8 +5,11 @@ import org.lemurproject.kstem.KrovetzStemmer;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -15,14 +18,136 @@ import java.util.stream.Collectors;
 public class PositionalInvertedIndex {
 
     public PositionalInvertedIndex(String indexFileName) {
-        initializeIndex(indexFileName);
+        this(indexFileName, true);
     }
 
-    protected Map<String, List<Integer>> invertedIndex = new TreeMap<>();
-    protected Map<String, List<Document>> positionalIndex = new TreeMap<>();
+    /**
+     * @param indexFileName the file with the documents to be indexed
+     * @param saveIndex     whether to save the index to PositionalIndex.txt
+     */
+    public PositionalInvertedIndex(String indexFileName, boolean saveIndex) {
+        this(indexFileName, saveIndex, StopwordSet.DEFAULT);
+    }
+
+    public PositionalInvertedIndex(String indexFileName, boolean saveIndex, StopwordSet stopwords) {
+        this(indexFileName, saveIndex, stopwords, false);
+    }
+
+    /**
+     * @param indexFileName  the documents file
+     * @param saveIndex      whether to save the index to a file
+     * @param stopwords      the stopwords, not indexed in the main postings
+     * @param indexStopwords whether to keep the stopword positions for proximity queries
+     */
+    public PositionalInvertedIndex(String indexFileName, boolean saveIndex, StopwordSet stopwords,
+                                   boolean indexStopwords) {
+        this(indexFileName, saveIndex, stopwords, indexStopwords, false);
+    }
+
+    /**
+     * @param indexFileName    the documents file
+     * @param saveIndex        whether to save the index to a file
+     * @param stopwords        the stopwords, not indexed in the main postings
+     * @param indexStopwords   whether to keep the stopword positions for proximity queries
+     * @param reorderDocuments whether to give documents sharing terms close internal ids
+     */
+    public PositionalInvertedIndex(String indexFileName, boolean saveIndex, StopwordSet stopwords,
+                                   boolean indexStopwords, boolean reorderDocuments) {
+        this.dictionary = new TermDictionary(stopwords);
+        this.commonTerms = indexStopwords ? new CommonTermPositions() : null;
+        this.reorderDocuments = reorderDocuments;
+        initializeIndex(indexFileName, saveIndex);
+    }
+
+    /**
+     * A new version of an index, sharing all its structures. Changes made to the new version replace
+     * the structures they change with copies, so the previous version can keep serving queries unchanged
+     *
+     * @param previous the index to copy
+     */
+    protected PositionalInvertedIndex(PositionalInvertedIndex previous) {
+        this.positionalIndex = previous.positionalIndex;
+        this.docIdBitmaps = previous.docIdBitmaps;
+        this.docIds = previous.docIds;
+        this.postingFile = previous.postingFile;
+        this.postingCache = previous.postingCache;
+        this.appendedPostings = previous.appendedPostings;
+        this.appendedBytes = previous.appendedBytes;
+        this.documentFrequencies = previous.documentFrequencies;
+        this.dictionary = previous.dictionary;
+        this.termVectors = previous.termVectors;
+        this.documentLengths = previous.documentLengths;
+        this.collectionFrequencies = previous.collectionFrequencies;
+        this.collectionStatistics = previous.collectionStatistics;
+        this.globalDocumentFrequencies = previous.globalDocumentFrequencies;
+        this.globalCollectionFrequencies = previous.globalCollectionFrequencies;
+        this.globalCollectionStatistics = previous.globalCollectionStatistics;
+        this.commonTerms = previous.commonTerms;
+        this.reorderDocuments = previous.reorderDocuments;
+        this.externalIds = previous.externalIds;
+        this.buildMetrics = previous.buildMetrics;
+    }
+
+    //terms in at least one in this many documents also get a docId bitmap
+    static final int BITMAP_DOCUMENT_RATIO = 16;
+
+    //versions of the indexes of this process, in creation order
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    //version of this index, greater than the versions of the indexes created before it
+    private final long version = VERSIONS.incrementAndGet();
+
+    //posting lists, indexed by term id
+    protected List<List<Document>> positionalIndex = new ArrayList<>();
+
+    //docIds of the frequent terms, indexed by term id, null for the other terms
+    private DocIdBitmap[] docIdBitmaps = new DocIdBitmap[0];
+
+    //docIds of each posting list, indexed by term id, for the intersection kernels
+    private int[][] docIds = new int[0][];
+
+    //posting lists and docIds decoded from a mapped file, null if they are kept in positionalIndex and docIds
+    private PostingFile postingFile;
+    private PostingCache postingCache;
+
+    //posting lists of a mapped index changed by added documents, indexed by term id, null for the lists of the file
+    private PostingCache.Entry[] appendedPostings;
+    //estimated heap size of the changed posting lists
+    private long appendedBytes;
 
-    //map of <document id, token list>
-    private Map<Integer, List<String>> documentTokens = new TreeMap<>();
+    //number of documents containing each term, indexed by term id
+    private int[] documentFrequencies = new int[0];
+
+    //term ids of the index, flags the stopwords removed by index and query analysis
+    protected TermDictionary dictionary;
+
+    //forward index, map of <document id, term vector>
+    private Map<Integer, TermVector> termVectors = new TreeMap<>();
+
+    //number of indexed tokens of each document, indexed by docId
+    private int[] documentLengths = new int[0];
+
+    //number of occurrences of each term in the collection, indexed by term id
+    private long[] collectionFrequencies = new long[0];
+
+    private CollectionStatistics collectionStatistics;
+
+    //statistics of the collection this index is a shard of, indexed by term id, null if it is not a shard
+    private int[] globalDocumentFrequencies;
+    private long[] globalCollectionFrequencies;
+    private CollectionStatistics globalCollectionStatistics;
+
+    //positions of the stopwords, null if stopwords are not indexed
+    private CommonTermPositions commonTerms;
+
+    //whether documents get internal ids in the order of RecursiveGraphBisection
+    private boolean reorderDocuments;
+
+    //document id of the documents file of each internal docId, null if they are the same
+    private int[] externalIds;
+
+    //throughput, phase timings and memory of the build, progress is reported to System.err
+    private IndexBuildMetrics buildMetrics = new IndexBuildMetrics(System.err);
 
     /**
      * Read a series of documents from a file
@@ -33,13 +158,27 @@ public class PositionalInvertedIndex {
      * and docText is the text body of the document
      */
     private Map<Integer, String> readFile(String fileName) {
+        try {
+            return readDocuments(new BufferedReader(new FileReader(fileName)));
+        } catch (FileNotFoundException fnfe) {
+            fnfe.printStackTrace();
+            return new TreeMap<>();
+        }
+    }
+
+    /**
+     * Read a series of documents in the format of the documents file
+     *
+     * @param br the documents
+     * @return a Map with <id, docText> pairs
+     */
+    private Map<Integer, String> readDocuments(BufferedReader br) {
         String line;
         StringBuilder doc = new StringBuilder();
         //maps document ID to document text
         Map<Integer, String> documents = new TreeMap<>();
 
         try {
-            BufferedReader br = new BufferedReader(new FileReader(fileName));
             //reads the file line by line and save docId followed by doc text to a map
             Integer id = 0;
             StringBuilder word = new StringBuilder();
@@ -59,6 +198,7 @@ public class PositionalInvertedIndex {
                     String docText = doc.toString();
                     documents.put(id, docText);
                     doc.setLength(0);
+                    buildMetrics.documentRead();
                 }
 
             }
@@ -134,9 +274,9 @@ public class PositionalInvertedIndex {
     protected List<String> stopwordsRemoval(List<String> stringList) {
         List<String> reducedTokenSet = new ArrayList<>();
 
+        StopwordSet stopwords = dictionary.getStopwords();
         for (String token : stringList) {
-            if (!token.equals("the") && !token.equals("is") && !token.equals("at") && !token.equals("of")
-                    && !token.equals("on") && !token.equals("and") && !token.equals("a")) {
+            if (!stopwords.contains(token)) {
                 reducedTokenSet.add(token);
             }
         }
@@ -145,82 +285,181 @@ public class PositionalInvertedIndex {
     }
 
     /**
-     * Creates an inverted Index
+     * Maps the tokens of a document to term ids, adding new terms to the dictionary.
+     * Stopwords get term ids too, the dictionary flags them so they are filtered by id
      *
-     * @param documentTokens a map of <docId, wordList> pairs
+     * @param tokens a list of stemmed word tokens
+     * @return the term id of each token
      */
-    private void createInvertedIndex(Map<Integer, List<String>> documentTokens) {
-        for (Map.Entry<Integer, List<String>> entry : documentTokens.entrySet()) {
-            Integer docId = entry.getKey();
-            //iterates the list of word tokens from each document
-            for (String token : entry.getValue()) {
-                //checks if the word token is already in the map
-                if (!invertedIndex.containsKey(token)) {
-                    //creates a new list of docIds associated to that word token
-                    List<Integer> docIdList = new ArrayList<>();
-                    docIdList.add(docId);
-                    invertedIndex.put(token, docIdList);
-                } else {
-                    //get the list associated to this word token
-                    List<Integer> docIdList = invertedIndex.get(token);
-                    //checks if the list associated to this word token already has this docId
-                    if (!docIdList.contains(docId)) {
-                        docIdList.add(docId);
-                    }
+    private int[] internTokens(List<String> tokens) {
+        int[] tokenIds = new int[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            tokenIds[i] = dictionary.add(tokens.get(i));
+        }
+        return tokenIds;
+    }
+
+    /**
+     * Maps query tokens to term ids
+     *
+     * @param tokens a list of pre-processed query tokens
+     * @return the term id of each token, TermDictionary.UNKNOWN for terms that are not indexed
+     */
+    protected int[] getTermIds(List<String> tokens) {
+        int[] queryTermIds = new int[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            queryTermIds[i] = dictionary.getTermId(tokens.get(i));
+        }
+        return queryTermIds;
+    }
+
+    /**
+     * Creates an positional Index and the forward index of each document
+     *
+     * @param documentTokens a map of <docId, term ids> pairs
+     */
+    private void createPositionalIndex(Map<Integer, int[]> documentTokens) {
+        documentLengths = new int[documentTokens.isEmpty() ? 0 : Collections.max(documentTokens.keySet()) + 1];
+        long totalLength = indexDocuments(documentTokens, termId -> {
+            //stopwords have ids but no postings, so ids may skip ahead of the posting lists
+            while (positionalIndex.size() <= termId) {
+                positionalIndex.add(new ArrayList<>());
+            }
+            return positionalIndex.get(termId);
+        });
+
+        //stopwords added after the last indexed term
+        while (positionalIndex.size() < dictionary.size()) {
+            positionalIndex.add(new ArrayList<>());
+        }
+
+        //sums the term frequencies of each term and releases the unused capacity of the postings
+        collectionFrequencies = new long[positionalIndex.size()];
+        for (int termId = 0; termId < positionalIndex.size(); termId++) {
+            List<Document> docList = positionalIndex.get(termId);
+            for (Document doc : docList) {
+                collectionFrequencies[termId] += doc.getTermFrequency();
+            }
+            //size of the postings encoded as variable-byte gaps
+            buildMetrics.postingsAdded(docList, 0);
+            ((ArrayList<Document>) docList).trimToSize();
+        }
+        if (commonTerms != null) {
+            commonTerms.trimToSize();
+            for (int termId = 0; termId < positionalIndex.size(); termId++) {
+                if (dictionary.isStopword(termId)) {
+                    collectionFrequencies[termId] = commonTerms.getCollectionFrequency(termId);
                 }
             }
         }
+        buildMetrics.indexCreated(positionalIndex.size());
+
+        //dense posting lists are intersected on bitmaps, the others on docId arrays
+        docIdBitmaps = new DocIdBitmap[positionalIndex.size()];
+        docIds = new int[positionalIndex.size()][];
+        documentFrequencies = new int[positionalIndex.size()];
+        for (int termId = 0; termId < positionalIndex.size(); termId++) {
+            List<Document> docList = positionalIndex.get(termId);
+            documentFrequencies[termId] = docList.size();
+            docIds[termId] = new int[docList.size()];
+            for (int i = 0; i < docList.size(); i++) {
+                docIds[termId][i] = docList.get(i).getDocId();
+            }
+            if (!docList.isEmpty() && (long) docList.size() * BITMAP_DOCUMENT_RATIO >= documentTokens.size()) {
+                docIdBitmaps[termId] = DocIdBitmap.of(docList);
+            }
+        }
+
+        collectionStatistics = new CollectionStatistics(documentTokens.size(), totalLength);
     }
 
     /**
-     * Creates an positional Index
+     * Adds documents to the posting lists, the term vectors and the document lengths, and the positions of their
+     * stopwords to the stopword positions. Each document gets new postings at the end of its posting lists, so
+     * documents are added in docId order, after the documents already in the posting lists
      *
-     * @param documentTokens a map of <docId, wordList> pairs
+     * @param documentTokens a map of <docId, term ids> pairs
+     * @param postingList    return the posting list of a term id, that the postings of the documents are added to
+     * @return the number of indexed tokens of the documents
      */
-    private void createPositionalIndex(Map<Integer, List<String>> documentTokens) {
-        for (Map.Entry<Integer, List<String>> entry : documentTokens.entrySet()) {
-            Integer docId = entry.getKey();
-            //iterates the list of word tokens from each document
-
-            for (int i = 0; i < entry.getValue().size(); i++) {
-                String token = entry.getValue().get(i);
-                //remove stop words
-                if (!token.equals("the") && !token.equals("is") && !token.equals("at") && !token.equals("of")
-                        && !token.equals("on") && !token.equals("and") && !token.equals("a")) {
-                    //checks if the word token is already in the map
-                    if (!positionalIndex.containsKey(token)) {
-                        //creates a new list of Documents associated to that word token
-                        List<Document> docList = new ArrayList<>();
-                        //creates a new document
-                        Document doc = new Document(token, docId, 1, i + 1);
-                        docList.add(doc);
-                        positionalIndex.put(token, docList);
+    private long indexDocuments(Map<Integer, int[]> documentTokens, IntFunction<List<Document>> postingList) {
+        long totalLength = 0;
+        for (Map.Entry<Integer, int[]> entry : documentTokens.entrySet()) {
+            int docId = entry.getKey();
+            int[] tokenIds = entry.getValue();
+            //postings created for this document, in order of first occurrence
+            List<Document> documentPostings = new ArrayList<>();
+            int documentLength = 0;
+            //iterates the term ids of each document
+
+            for (int i = 0; i < tokenIds.length; i++) {
+                int termId = tokenIds[i];
+                //stop words are not in the main postings, their positions may be kept apart
+                if (dictionary.isStopword(termId)) {
+                    if (commonTerms != null) {
+                        commonTerms.add(termId, docId, i + 1);
+                    }
+                } else {
+                    documentLength++;
+                    List<Document> docList = postingList.apply(termId);
+                    //documents are indexed in docId order, so only the last posting can belong to this docId
+                    Document doc = docList.isEmpty() ? null : docList.get(docList.size() - 1);
+                    if (doc != null && doc.getDocId() == docId) {
+                        //adds term position to the Document and increments the term frequency
+                        doc.addTermPosition(i + 1);
                     } else {
-                        //get the list associated to this word token
-                        List<Document> docList = positionalIndex.get(token);
-                        //checks if the list associated to this word token already has this docId and updates its information
-                        boolean updated = false;
-                        for (Document doc : docList) {
-                            if (doc.getDocId().equals(docId)) {
-                                //increments the term frequency
-                                doc.setTermFrequency(doc.getTermFrequency() + 1);
-                                //adds term position to the Document position list
-                                //token.indexOf(docId): index of the current token
-                                doc.getTermPositionList().add(i + 1);
-                                updated = true;
-                            }
-                        }
-
-                        //adds a new doc to the list associated to this word token
-                        //CHECK if it was not added before, then add here
-                        if (!updated) {
-                            Document newDoc = new Document(token, docId, 1, i + 1);
-                            docList.add(newDoc);
-                        }
+                        //adds a new doc to the list associated to this term
+                        Document newDoc = new Document(termId, docId, 1, i + 1);
+                        docList.add(newDoc);
+                        documentPostings.add(newDoc);
                     }
                 }
             }
+
+            //stores the term vector of this document and releases the unused capacity of its postings
+            int[] vectorTermIds = new int[documentPostings.size()];
+            int[] vectorTermFrequencies = new int[documentPostings.size()];
+            for (int i = 0; i < documentPostings.size(); i++) {
+                Document doc = documentPostings.get(i);
+                doc.trimToSize();
+                vectorTermIds[i] = doc.getTermId();
+                vectorTermFrequencies[i] = doc.getTermFrequency();
+            }
+            termVectors.put(docId, new TermVector(vectorTermIds, vectorTermFrequencies));
+
+            documentLengths[docId] = documentLength;
+            totalLength += documentLength;
+            buildMetrics.documentIndexed();
         }
+        return totalLength;
+    }
+
+    /**
+     * Gives internal ids to the documents, in an order where documents sharing terms are close
+     *
+     * @param documentTokens a map of <docId, term ids> pairs
+     * @return a map of <internal docId, term ids> pairs
+     */
+    private Map<Integer, int[]> reorderDocuments(Map<Integer, int[]> documentTokens) {
+        int[] documentIds = new int[documentTokens.size()];
+        int[][] documentTerms = new int[documentTokens.size()][];
+        int i = 0;
+        for (Map.Entry<Integer, int[]> entry : documentTokens.entrySet()) {
+            documentIds[i] = entry.getKey();
+            //distinct terms of the main postings
+            documentTerms[i] = Arrays.stream(entry.getValue()).filter(termId -> !dictionary.isStopword(termId))
+                    .sorted().distinct().toArray();
+            i++;
+        }
+        int[] order = new RecursiveGraphBisection(documentTerms, dictionary.size()).order();
+
+        Map<Integer, int[]> reordered = new TreeMap<>();
+        externalIds = new int[order.length];
+        for (int docId = 0; docId < order.length; docId++) {
+            externalIds[docId] = documentIds[order[docId]];
+            reordered.put(docId, documentTokens.get(externalIds[docId]));
+        }
+        return reordered;
     }
 
     /**
@@ -229,17 +468,28 @@ public class PositionalInvertedIndex {
     private void savePositionalIndexToFile() {
         try (PrintWriter writer = new PrintWriter("PositionalIndex.txt")) {
             writer.println("word,docFrequency:[docId termFrequency: termPosition ]");
-            for (Map.Entry<String, List<Document>> entry : positionalIndex.entrySet()) {
-                String key = entry.getKey();
-                List<Document> postingList = entry.getValue();
-                Integer docFrequency = postingList.size();
+            //terms are written in alphabetical order
+            Integer[] sortedTermIds = new Integer[dictionary.size()];
+            for (int termId = 0; termId < sortedTermIds.length; termId++) {
+                sortedTermIds[termId] = termId;
+            }
+            Arrays.sort(sortedTermIds, Comparator.comparing(dictionary::getTerm));
+
+            for (int termId : sortedTermIds) {
+                //stopwords are not indexed
+                if (dictionary.isStopword(termId)) {
+                    continue;
+                }
+                String key = dictionary.getTerm(termId);
+                List<Document> postingList = positionalIndex.get(termId);
+                int docFrequency = postingList.size();
 
                 //word and docFrequency
                 writer.print(key + "," + docFrequency + ":");
                 for (Document doc : postingList) {
                     //posting list
-                    writer.print("[" + doc.getDocId() + " " + doc.getTermFrequency() + ":");
-                    for (int position : doc.getTermPositionList()) {
+                    writer.print("[" + getExternalId(doc.getDocId()) + " " + doc.getTermFrequency() + ":");
+                    for (int position : doc.getTermPositions()) {
                         writer.print(" " + position);
                     }
                     writer.print("]");
@@ -252,38 +502,449 @@ public class PositionalInvertedIndex {
         }
     }
 
-    private void initializeIndex(String fileName) {
+    /**
+     * Builds the index from a file of documents. The document text and tokens
+     * are only kept while building, the index keeps the postings, term vectors and lengths
+     *
+     * @param fileName  the name of the file
+     * @param saveIndex whether to save the index to a file
+     */
+    private void initializeIndex(String fileName, boolean saveIndex) {
+        buildMetrics.start();
+        long phaseStart = System.nanoTime();
         Map<Integer, String> documentSet = readFile(fileName);
+        buildMetrics.addPhaseNanos(IndexBuildMetrics.Phase.READ, System.nanoTime() - phaseStart);
+
+        //map of <document id, term ids>
+        Map<Integer, int[]> documentTokens = new TreeMap<>();
         List<String> tokens;
 
-        for (Map.Entry<Integer, String> entry : documentSet.entrySet()) {
+        Iterator<Map.Entry<Integer, String>> iterator = documentSet.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, String> entry = iterator.next();
             Integer key = entry.getKey();
             String value = entry.getValue();
+            //the text is no longer needed once tokenized
+            iterator.remove();
+            long tokenizeStart = System.nanoTime();
             //tokenize text
             tokens = stringTokenizer(value);
             //normalize text to lower case
             tokens = stringNormalizer(tokens);
+            long stemStart = System.nanoTime();
             //stem text
             tokens = stringStemmer(tokens);
-            //add processed words to map
-            documentTokens.put(key, tokens);
+            long internStart = System.nanoTime();
+            //add term ids of the processed words to map
+            documentTokens.put(key, internTokens(tokens));
+            long internEnd = System.nanoTime();
+
+            buildMetrics.addPhaseNanos(IndexBuildMetrics.Phase.TOKENIZE, stemStart - tokenizeStart);
+            buildMetrics.addPhaseNanos(IndexBuildMetrics.Phase.STEM, internStart - stemStart);
+            buildMetrics.addPhaseNanos(IndexBuildMetrics.Phase.INVERT, internEnd - internStart);
+            buildMetrics.documentAnalyzed(tokens.size());
+        }
+
+        if (reorderDocuments) {
+            phaseStart = System.nanoTime();
+            documentTokens = reorderDocuments(documentTokens);
+            buildMetrics.addPhaseNanos(IndexBuildMetrics.Phase.REORDER, System.nanoTime() - phaseStart);
         }
 
         //create positionalIndex
+        phaseStart = System.nanoTime();
         createPositionalIndex(documentTokens);
+        buildMetrics.addPhaseNanos(IndexBuildMetrics.Phase.INVERT, System.nanoTime() - phaseStart);
 
         //save to file
-        savePositionalIndexToFile();
+        if (saveIndex) {
+            phaseStart = System.nanoTime();
+            savePositionalIndexToFile();
+            buildMetrics.addPhaseNanos(IndexBuildMetrics.Phase.PERSIST, System.nanoTime() - phaseStart);
+        }
+        buildMetrics.finish();
+        if (saveIndex) {
+            buildMetrics.saveToFile("IndexBuildMetrics.json");
+        }
+    }
+
+    /**
+     * Indexes documents after the documents of this index, they get the next internal docIds.
+     * The structures this index shares with the version it was copied from are replaced by copies
+     * before they change, so that version is not modified. Only the posting lists and stopword positions the
+     * documents add to are copied. Mapped posting lists stay mapped: the lists that change are decoded and kept
+     * on the heap until they outgrow the cache budget, then the file is rewritten with them. If this index is a
+     * shard, the documents are also added to the statistics of the collection
+     *
+     * @param documents the documents, in the format of the documents file
+     * @return the number of documents added, documents whose id is already in the index are skipped
+     */
+    protected int appendDocuments(BufferedReader documents) {
+        IndexBuildMetrics previousMetrics = buildMetrics;
+        buildMetrics = new IndexBuildMetrics(System.err);
+        buildMetrics.carryOver(previousMetrics);
+        buildMetrics.start();
+        Map<Integer, String> documentSet = readDocuments(documents);
+
+        //documents already in the index are skipped
+        Set<Integer> indexedIds = new HashSet<>();
+        if (externalIds != null) {
+            Arrays.stream(externalIds).forEach(indexedIds::add);
+        } else {
+            indexedIds.addAll(termVectors.keySet());
+        }
+        documentSet.keySet().removeAll(indexedIds);
+        if (documentSet.isEmpty()) {
+            buildMetrics.finish();
+            return 0;
+        }
+
+        //analyzes the documents with a copy of the dictionary, the new terms get the next term ids
+        dictionary = dictionary.copy();
+        TreeMap<Integer, int[]> documentTokens = new TreeMap<>();
+        for (Map.Entry<Integer, String> entry : documentSet.entrySet()) {
+            List<String> tokens = stringStemmer(stringNormalizer(stringTokenizer(entry.getValue())));
+            documentTokens.put(entry.getKey(), internTokens(tokens));
+            buildMetrics.documentAnalyzed(tokens.size());
+        }
+
+        //documents keep their ids if they directly follow the indexed ones, otherwise they get the next
+        //internal ids, so the arrays indexed by docId only grow by the number of documents
+        int firstDocId = documentLengths.length;
+        if (externalIds != null || documentTokens.firstKey() != firstDocId
+                || documentTokens.lastKey() != firstDocId + documentTokens.size() - 1) {
+            int[] ids = externalIds != null ? externalIds : new int[firstDocId];
+            if (externalIds == null) {
+                Arrays.setAll(ids, docId -> docId);
+            }
+            externalIds = Arrays.copyOf(ids, firstDocId + documentTokens.size());
+            TreeMap<Integer, int[]> internalTokens = new TreeMap<>();
+            int docId = firstDocId;
+            for (Map.Entry<Integer, int[]> entry : documentTokens.entrySet()) {
+                externalIds[docId] = entry.getKey();
+                internalTokens.put(docId++, entry.getValue());
+            }
+            documentTokens = internalTokens;
+        }
+
+        //copies of the structures that change, the posting lists themselves are copied when a document adds to them
+        int previousNumOfTerms = documentFrequencies.length;
+        int[] previousDocumentFrequencies = documentFrequencies;
+        long[] previousCollectionFrequencies = collectionFrequencies;
+        CommonTermPositions previousCommonTerms = commonTerms;
+        int numOfTerms = dictionary.size();
+        documentFrequencies = Arrays.copyOf(documentFrequencies, numOfTerms);
+        collectionFrequencies = Arrays.copyOf(collectionFrequencies, numOfTerms);
+        docIdBitmaps = Arrays.copyOf(docIdBitmaps, numOfTerms);
+        if (postingFile == null) {
+            positionalIndex = new ArrayList<>(positionalIndex);
+            docIds = Arrays.copyOf(docIds, numOfTerms);
+            while (positionalIndex.size() < numOfTerms) {
+                docIds[positionalIndex.size()] = new int[0];
+                positionalIndex.add(new ArrayList<>());
+            }
+        } else {
+            appendedPostings = appendedPostings == null ? new PostingCache.Entry[numOfTerms]
+                    : Arrays.copyOf(appendedPostings, numOfTerms);
+        }
+        documentLengths = Arrays.copyOf(documentLengths, firstDocId + documentTokens.size());
+        termVectors = new TreeMap<>(termVectors);
+        if (commonTerms != null) {
+            commonTerms = commonTerms.copy();
+        }
+
+        Map<Integer, List<Document>> changedLists = new TreeMap<>();
+        long addedLength = indexDocuments(documentTokens, termId -> changedLists.computeIfAbsent(termId,
+                id -> id < previousNumOfTerms && previousDocumentFrequencies[id] > 0
+                        ? new ArrayList<>(scanPostingList(id)) : new ArrayList<>()));
+
+        int documentCount = collectionStatistics.getDocumentCount() + documentTokens.size();
+        for (Map.Entry<Integer, List<Document>> changedList : changedLists.entrySet()) {
+            int termId = changedList.getKey();
+            List<Document> docList = changedList.getValue();
+            ((ArrayList<Document>) docList).trimToSize();
+            //only the postings of the new documents are counted
+            int previousDocumentFrequency = termId < previousNumOfTerms ? previousDocumentFrequencies[termId] : 0;
+            buildMetrics.postingsAdded(docList, previousDocumentFrequency);
+            for (int i = previousDocumentFrequency; i < docList.size(); i++) {
+                collectionFrequencies[termId] += docList.get(i).getTermFrequency();
+            }
+            documentFrequencies[termId] = docList.size();
+            int[] termDocIds = new int[docList.size()];
+            for (int i = 0; i < docList.size(); i++) {
+                termDocIds[i] = docList.get(i).getDocId();
+            }
+            boolean frequent = (long) docList.size() * BITMAP_DOCUMENT_RATIO >= documentCount;
+            docIdBitmaps[termId] = frequent ? DocIdBitmap.of(docList) : null;
+            if (postingFile == null) {
+                positionalIndex.set(termId, docList);
+                docIds[termId] = termDocIds;
+            } else {
+                PostingCache.Entry previous = appendedPostings[termId];
+                appendedPostings[termId] = PostingCache.Entry.of(docList, termDocIds);
+                appendedBytes += appendedPostings[termId].getBytes() - (previous == null ? 0 : previous.getBytes());
+            }
+        }
+        //new terms without postings are stopwords, they are not in the mapped file either
+        for (int termId = previousNumOfTerms; postingFile != null && termId < numOfTerms; termId++) {
+            if (appendedPostings[termId] == null) {
+                appendedPostings[termId] = PostingCache.Entry.of(new ArrayList<>(), new int[0]);
+            }
+        }
+        if (commonTerms != null) {
+            commonTerms.trimToSize();
+            for (int termId = 0; termId < numOfTerms; termId++) {
+                if (dictionary.isStopword(termId)) {
+                    collectionFrequencies[termId] = commonTerms.getCollectionFrequency(termId);
+                }
+            }
+        }
+        collectionStatistics = new CollectionStatistics(documentCount,
+                collectionStatistics.getTotalLength() + addedLength);
+
+        //the statistics of the collection this index is a shard of count the documents too. Terms new to this
+        //shard only count its documents until the coordinator sends the statistics of every shard again
+        if (globalDocumentFrequencies != null) {
+            int[] documentFrequencies = Arrays.copyOf(globalDocumentFrequencies, numOfTerms);
+            long[] frequencies = Arrays.copyOf(globalCollectionFrequencies, numOfTerms);
+            for (int termId = 0; termId < numOfTerms; termId++) {
+                int previousDocumentFrequency = previousCommonTerms != null && dictionary.isStopword(termId)
+                        ? previousCommonTerms.getDocumentFrequency(termId)
+                        : termId < previousNumOfTerms ? previousDocumentFrequencies[termId] : 0;
+                documentFrequencies[termId] += getShardDocumentFrequency(termId) - previousDocumentFrequency;
+                frequencies[termId] += collectionFrequencies[termId]
+                        - (termId < previousNumOfTerms ? previousCollectionFrequencies[termId] : 0);
+            }
+            globalDocumentFrequencies = documentFrequencies;
+            globalCollectionFrequencies = frequencies;
+            globalCollectionStatistics = new CollectionStatistics(
+                    globalCollectionStatistics.getDocumentCount() + documentTokens.size(),
+                    globalCollectionStatistics.getTotalLength() + addedLength);
+        }
+        buildMetrics.indexCreated(numOfTerms);
+        buildMetrics.finish();
+
+        //the changed posting lists are written to the file once they outgrow the cache
+        if (postingFile != null && appendedBytes > postingCache.getMaxBytes()) {
+            try {
+                postingFile = PostingFile.write(postingFile, appendedPostings, postingFile.getFileName());
+                postingCache = new PostingCache(postingFile::read, postingCache.getMaxBytes());
+                appendedPostings = null;
+                appendedBytes = 0;
+            } catch (IOException ioe) {
+                System.out.println(Arrays.toString(ioe.getStackTrace()));
+            }
+        }
+        return documentTokens.size();
+    }
+
+    //return the id of a document in the documents file
+    public int getExternalId(int docId) {
+        return externalIds == null ? docId : externalIds[docId];
+    }
+
+    //return true if internal docIds differ from the docIds of the documents file
+    public boolean hasExternalIds() {
+        return externalIds != null;
+    }
+
+    //return the term vector of the document
+    public TermVector getTermVector(int docId) {
+        return termVectors.get(docId);
+    }
+
+    //return the term associated to a term id
+    public String getTerm(int termId) {
+        return dictionary.getTerm(termId);
+    }
+
+    /**
+     * Returns the posting list of a term together with its docIds. A mapped posting list is looked up in the
+     * cache once, so callers needing both should use this rather than getPostingList and getDocIds
+     *
+     * @param termId a term id
+     * @return the postings and docIds of the term, null if the term is not in the index
+     */
+    PostingCache.Entry getPostings(int termId) {
+        if (termId == TermDictionary.UNKNOWN) {
+            return null;
+        }
+        if (postingCache == null) {
+            return new PostingCache.Entry(positionalIndex.get(termId), docIds[termId], 0);
+        }
+        PostingCache.Entry appended = appendedPostings != null ? appendedPostings[termId] : null;
+        return appended != null ? appended : postingCache.get(termId);
+    }
+
+    //return the posting list of a term, null if the term is not in the index
+    public List<Document> getPostingList(int termId) {
+        PostingCache.Entry postings = getPostings(termId);
+        return postings == null ? null : postings.getPostings();
+    }
+
+    /**
+     * Returns the posting list of a term for a scan of the whole index. Mapped posting lists are decoded
+     * without going through the cache, so a scan does not evict the posting lists of the queried terms
+     *
+     * @param termId a term id
+     * @return the posting list of the term
+     */
+    List<Document> scanPostingList(int termId) {
+        if (postingFile == null) {
+            return positionalIndex.get(termId);
+        }
+        PostingCache.Entry appended = appendedPostings != null ? appendedPostings[termId] : null;
+        return appended != null ? appended.getPostings() : postingFile.read(termId).getPostings();
+    }
+
+    //return the docIds of a frequent term, null if the term is not frequent or not in the index
+    public DocIdBitmap getDocIdBitmap(int termId) {
+        return termId == TermDictionary.UNKNOWN ? null : docIdBitmaps[termId];
     }
 
-    //return a list of terms in the document
-    public List<String> getDocumentTokens(int docId) {
-        return documentTokens.get(docId);
+    //return the docIds of the posting list of a term, null if the term is not in the index
+    public int[] getDocIds(int termId) {
+        PostingCache.Entry postings = getPostings(termId);
+        return postings == null ? null : postings.getDocIds();
     }
 
-    //return number of documents in the collection
+    /**
+     * Moves the posting lists to a file mapped into memory. A posting list is only read from the file when
+     * its term is queried, and the decoded posting lists are kept in a cache bounded by their heap size.
+     * The docId bitmaps, term vectors and statistics stay on the heap
+     *
+     * @param fileName   the file of the posting lists, replaced if it exists
+     * @param cacheBytes the maximum estimated heap size of the cached posting lists
+     * @throws IOException if the file cannot be written or mapped, the posting lists then stay on the heap
+     */
+    public void mapPostings(String fileName, long cacheBytes) throws IOException {
+        if (postingFile != null) {
+            return;
+        }
+        postingFile = PostingFile.write(positionalIndex, fileName);
+        postingCache = new PostingCache(postingFile::read, cacheBytes);
+        positionalIndex = null;
+        docIds = null;
+    }
+
+    /**
+     * Maps the posting lists to the file of -Dindex.file if it is set, with a cache of -Dindex.cacheBytes
+     * (64MB by default)
+     */
+    void configurePostingFile() {
+        if (System.getProperty("index.file") != null) {
+            try {
+                mapPostings(System.getProperty("index.file"), Long.getLong("index.cacheBytes", 64L << 20));
+            } catch (IOException ioe) {
+                System.out.println(Arrays.toString(ioe.getStackTrace()));
+            }
+        }
+    }
+
+    //return the cache of the mapped posting lists, null if they are kept on the heap
+    public PostingCache getPostingCache() {
+        return postingCache;
+    }
+
+    //return true if the stopword positions are indexed
+    public boolean hasCommonTerms() {
+        return commonTerms != null;
+    }
+
+    //return true if the term is a stopword whose positions are indexed
+    public boolean isCommonTerm(int termId) {
+        return commonTerms != null && dictionary.isStopword(termId);
+    }
+
+    /**
+     * Returns the postings of a stopword, created from its indexed positions
+     *
+     * @param termId     a common term
+     * @param candidates postings sorted by docId to restrict the documents to, null for all the documents
+     * @return the postings of the stopword in those documents
+     */
+    public List<Document> getCommonTermPostings(int termId, List<Document> candidates) {
+        return commonTerms.getPostings(termId, candidates);
+    }
+
+    //return the number of documents containing a term, in the whole collection if this index is a shard
+    public int getDocumentFrequency(int termId) {
+        int[] documentFrequencies = globalDocumentFrequencies;
+        return documentFrequencies != null ? documentFrequencies[termId] : getShardDocumentFrequency(termId);
+    }
+
+    //return the number of documents of this index containing a term
+    private int getShardDocumentFrequency(int termId) {
+        return isCommonTerm(termId) ? commonTerms.getDocumentFrequency(termId) : documentFrequencies[termId];
+    }
+
+    //return the number of indexed tokens in the document
+    public int getDocumentLength(int docId) {
+        return documentLengths[docId];
+    }
+
+    //return the number of occurrences of a term in the collection
+    public long getCollectionFrequency(int termId) {
+        long[] frequencies = globalCollectionFrequencies;
+        return frequencies != null ? frequencies[termId] : collectionFrequencies[termId];
+    }
+
+    public IndexBuildMetrics getBuildMetrics() {
+        return buildMetrics;
+    }
+
+    public CollectionStatistics getCollectionStatistics() {
+        CollectionStatistics statistics = globalCollectionStatistics;
+        return statistics != null ? statistics : collectionStatistics;
+    }
+
+    /**
+     * Statistics of the documents of this index, whether or not it is a shard
+     *
+     * @return the frequencies of the terms of this index, with its number of documents and tokens
+     */
+    public TermStatistics getShardStatistics() {
+        TermStatistics statistics = new TermStatistics(collectionStatistics.getDocumentCount(),
+                collectionStatistics.getTotalLength());
+        for (int termId = 0; termId < dictionary.size(); termId++) {
+            int documentFrequency = getShardDocumentFrequency(termId);
+            if (documentFrequency > 0) {
+                statistics.addTerm(dictionary.getTerm(termId), documentFrequency, collectionFrequencies[termId]);
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Makes this index a shard of a collection: terms are weighed with the statistics of the collection,
+     * so the documents of this index get the weights they have in a single index of the collection.
+     * Call it before the index is shared with the threads evaluating queries, on a new version of a served index
+     *
+     * @param statistics the statistics of the collection, terms of this index that are missing keep theirs
+     */
+    public void setGlobalStatistics(TermStatistics statistics) {
+        int[] documentFrequencies = new int[dictionary.size()];
+        long[] frequencies = new long[dictionary.size()];
+        for (int termId = 0; termId < dictionary.size(); termId++) {
+            long[] termFrequencies = statistics.getFrequencies(dictionary.getTerm(termId));
+            documentFrequencies[termId] = termFrequencies != null ? (int) termFrequencies[0]
+                    : getShardDocumentFrequency(termId);
+            frequencies[termId] = termFrequencies != null ? termFrequencies[1] : collectionFrequencies[termId];
+        }
+        globalDocumentFrequencies = documentFrequencies;
+        globalCollectionFrequencies = frequencies;
+        globalCollectionStatistics = new CollectionStatistics(statistics.getDocumentCount(),
+                statistics.getTotalLength());
+    }
+
+    //return the version of this index, versions increase in the order indexes are built or copied
+    public long getVersion() {
+        return version;
+    }
+
+    //return number of documents of this index
     public int getCollectionSize() {
-        return documentTokens.size();
+        return collectionStatistics.getDocumentCount();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,232 @@
+package evaluator;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+/**
+ * A cache of decoded posting lists keyed by term id, bounded by their estimated heap size.
+ * Entries are evicted with a segmented LRU policy: a term enters the probation segment when it is loaded and moves
+ * to the protected segment when it is asked for again, so terms that are queried once do not evict the terms
+ * most queries use. The protected segment holds at most 80% of the budget, its least recently used entries go back
+ * to probation. A term asked for by several threads while it is loaded is decoded once.
+ * Lookups, hits included, take the lock of the cache since a hit reorders the segments; it is held for a few map
+ * operations and never while a posting list is decoded. Callers needing both the postings and the docIds of a term
+ * read them from one entry, so each term of a query takes the lock once
+ */
+public class PostingCache {
+    //share of the budget of the protected segment
+    private static final double PROTECTED_SHARE = 0.8;
+
+    //decoded posting list of a term
+    static class Entry {
+        private List<Document> postings;
+        private int[] docIds;
+        private long bytes;
+
+        /**
+         * @param postings the postings of the term, sorted by docId
+         * @param docIds   the docIds of the postings
+         * @param bytes    the estimated heap size of the postings and docIds
+         */
+        Entry(List<Document> postings, int[] docIds, long bytes) {
+            this.postings = postings;
+            this.docIds = docIds;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @param postings the postings of a term, sorted by docId
+         * @param docIds   the docIds of the postings
+         * @return an entry with the estimated heap size of the list, the docIds and the postings
+         */
+        static Entry of(List<Document> postings, int[] docIds) {
+            long bytes = 40 + 4L * postings.size() + 16 + 4L * docIds.length;
+            for (Document document : postings) {
+                bytes += 32 + ((16 + 4L * document.getTermPositions().length + 7) & ~7);
+            }
+            return new Entry(postings, docIds, bytes);
+        }
+
+        public List<Document> getPostings() {
+            return postings;
+        }
+
+        public int[] getDocIds() {
+            return docIds;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private final IntFunction<Entry> loader;
+    private final long maxBytes;
+    private final long maxProtectedBytes;
+
+    //segments in access order, the least recently used entry first
+    private final LinkedHashMap<Integer, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Integer, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationBytes;
+    private long protectedBytes;
+
+    //terms being decoded, the threads asking for them wait for the first one
+    private final Map<Integer, CompletableFuture<Entry>> loading = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long loadNanos;
+
+    /**
+     * @param loader   decodes the posting list of a term id
+     * @param maxBytes the maximum estimated heap size of the cached posting lists
+     */
+    PostingCache(IntFunction<Entry> loader, long maxBytes) {
+        this.loader = loader;
+        this.maxBytes = maxBytes;
+        this.maxProtectedBytes = (long) (maxBytes * PROTECTED_SHARE);
+    }
+
+    /**
+     * Returns the posting list of a term, decoding it if it is not cached
+     *
+     * @param termId the term id
+     * @return the decoded posting list
+     */
+    public Entry get(int termId) {
+        CompletableFuture<Entry> load;
+        boolean decoding;
+        synchronized (this) {
+            Entry entry = protectedSegment.get(termId);
+            if (entry != null) {
+                hits++;
+                return entry;
+            }
+            entry = probation.remove(termId);
+            if (entry != null) {
+                hits++;
+                probationBytes -= entry.bytes;
+                protect(termId, entry);
+                return entry;
+            }
+            misses++;
+            load = loading.get(termId);
+            decoding = load == null;
+            if (decoding) {
+                load = new CompletableFuture<>();
+                loading.put(termId, load);
+            }
+        }
+        //another thread is decoding the term
+        if (!decoding) {
+            return load.join();
+        }
+
+        //decodes outside of the lock, so hits are not held back
+        long start = System.nanoTime();
+        Entry entry;
+        try {
+            entry = loader.apply(termId);
+        } catch (RuntimeException re) {
+            synchronized (this) {
+                loading.remove(termId);
+            }
+            load.completeExceptionally(re);
+            throw re;
+        }
+        synchronized (this) {
+            loading.remove(termId);
+            loadNanos += System.nanoTime() - start;
+            //posting lists larger than the budget are not cached
+            if (entry.bytes <= maxBytes) {
+                probation.put(termId, entry);
+                probationBytes += entry.bytes;
+                evict();
+            }
+        }
+        load.complete(entry);
+        return entry;
+    }
+
+    //moves an entry to the protected segment, and its least recently used entries over budget to probation
+    private void protect(int termId, Entry entry) {
+        protectedSegment.put(termId, entry);
+        protectedBytes += entry.bytes;
+        Iterator<Map.Entry<Integer, Entry>> eldest = protectedSegment.entrySet().iterator();
+        while (protectedBytes > maxProtectedBytes && protectedSegment.size() > 1) {
+            Map.Entry<Integer, Entry> demoted = eldest.next();
+            eldest.remove();
+            protectedBytes -= demoted.getValue().bytes;
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationBytes += demoted.getValue().bytes;
+        }
+        evict();
+    }
+
+    //removes the least recently used entries of probation, then of the protected segment, until within budget
+    private void evict() {
+        while (probationBytes + protectedBytes > maxBytes) {
+            if (!probation.isEmpty()) {
+                Iterator<Entry> eldest = probation.values().iterator();
+                probationBytes -= eldest.next().bytes;
+                eldest.remove();
+            } else {
+                Iterator<Entry> eldest = protectedSegment.values().iterator();
+                protectedBytes -= eldest.next().bytes;
+                eldest.remove();
+            }
+            evictions++;
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    //return the share of the requests found in the cache, 0 if there were none
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    //return the estimated heap size of the cached posting lists
+    public synchronized long getBytes() {
+        return probationBytes + protectedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    //return the number of cached posting lists
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    //return the hit rate, size and decoding time of the cache as JSON
+    public synchronized String toJson() {
+        return "{\"hits\":" + hits
+                + ",\"misses\":" + misses
+                + ",\"hitRate\":" + String.format(Locale.ROOT, "%.4f", getHitRate())
+                + ",\"evictions\":" + evictions
+                + ",\"entries\":" + size()
+                + ",\"bytes\":" + getBytes()
+                + ",\"maxBytes\":" + maxBytes
+                + ",\"protectedBytes\":" + protectedBytes
+                + ",\"loadMillis\":" + loadNanos / 1000000 + "}";
+    }
+}
@@ -0,0 +1,319 @@
+package evaluator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Posting lists in a file mapped into memory, read by the operating system as terms are queried instead of being
+ * kept on the heap. The file starts with a header (signature, version, number of terms) and the offset of each
+ * posting list, followed by the posting lists encoded as variable-byte integers: the number of documents, then
+ * the docId gap, term frequency and position gaps of each document
+ */
+public class PostingFile {
+    //"PIDX" and the version of the format
+    private static final int MAGIC = 0x50494458;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+
+    //a buffer maps at most 2GB, larger files are mapped in 1GB segments
+    private static final int SEGMENT_SHIFT = 30;
+
+    private String fileName;
+    private MappedByteBuffer[] segments;
+    private int segmentShift;
+    private long segmentMask;
+    private int numOfTerms;
+    private long size;
+
+    private PostingFile(String fileName, MappedByteBuffer[] segments, int segmentShift, int numOfTerms, long size) {
+        this.fileName = fileName;
+        this.segments = segments;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        this.numOfTerms = numOfTerms;
+        this.size = size;
+    }
+
+    /**
+     * Writes posting lists to a file and maps it. The file is written and mapped under another name, then renamed,
+     * so a file that is already mapped keeps its content
+     *
+     * @param postingLists the posting lists, indexed by term id
+     * @param fileName     the name of the file
+     * @return the mapped posting lists
+     * @throws IOException if the file cannot be written or mapped
+     */
+    static PostingFile write(List<List<Document>> postingLists, String fileName) throws IOException {
+        return write(postingLists.size(), postingLists::get, null, fileName);
+    }
+
+    /**
+     * Writes the posting lists of a mapped file, some of them replaced, to a file and maps it. The posting lists
+     * that are kept are copied without being decoded
+     *
+     * @param base     the mapped posting lists
+     * @param replaced the posting lists replacing those of base, indexed by term id, null for the lists of base.
+     *                 Term ids after the last term of base must have one
+     * @param fileName the name of the file, it may be the file of base
+     * @return the mapped posting lists
+     * @throws IOException if the file cannot be written or mapped
+     */
+    static PostingFile write(PostingFile base, PostingCache.Entry[] replaced, String fileName) throws IOException {
+        return write(replaced.length, termId -> replaced[termId] != null ? replaced[termId].getPostings() : null,
+                base, fileName);
+    }
+
+    /**
+     * Writes posting lists to a file and maps it. The file is written and mapped under another name, then renamed,
+     * so a file that is already mapped keeps its content
+     *
+     * @param numOfTerms   the number of posting lists
+     * @param postingLists the posting list of a term id, null to copy the posting list of base
+     * @param base         the mapped posting lists copied, null if every posting list is given
+     * @param fileName     the name of the file
+     * @return the mapped posting lists
+     * @throws IOException if the file cannot be written or mapped
+     */
+    private static PostingFile write(int numOfTerms, IntFunction<List<Document>> postingLists, PostingFile base,
+                                     String fileName) throws IOException {
+        Path path = Paths.get(fileName).toAbsolutePath();
+        Path temporary = Paths.get(path + "." + ProcessHandle.current().pid() + ".tmp");
+        byte[] buffer = new byte[1 << 16];
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(numOfTerms);
+
+            //offset of each posting list, and the end of the last one
+            long offset = HEADER_BYTES + 8L * (numOfTerms + 1);
+            output.writeLong(offset);
+            for (int termId = 0; termId < numOfTerms; termId++) {
+                List<Document> postingList = postingLists.apply(termId);
+                offset += postingList != null ? encodedSize(postingList) : base.end(termId) - base.start(termId);
+                output.writeLong(offset);
+            }
+
+            for (int termId = 0; termId < numOfTerms; termId++) {
+                List<Document> postingList = postingLists.apply(termId);
+                if (postingList == null) {
+                    //the encoded posting list is copied as is
+                    base.copy(base.start(termId), base.end(termId), output, buffer);
+                    continue;
+                }
+                writeVariableByte(output, postingList.size());
+                int previousDocId = 0;
+                for (Document document : postingList) {
+                    writeVariableByte(output, document.getDocId() - previousDocId);
+                    writeVariableByte(output, document.getTermFrequency());
+                    int previousPosition = 0;
+                    int[] positions = document.getTermPositions();
+                    for (int i = 0; i < document.getTermFrequency(); i++) {
+                        writeVariableByte(output, positions[i] - previousPosition);
+                        previousPosition = positions[i];
+                    }
+                    previousDocId = document.getDocId();
+                }
+            }
+        } catch (IOException ioe) {
+            Files.deleteIfExists(temporary);
+            throw ioe;
+        }
+        try {
+            PostingFile postingFile = open(temporary.toString());
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            postingFile.fileName = fileName;
+            return postingFile;
+        } catch (IOException ioe) {
+            Files.deleteIfExists(temporary);
+            throw ioe;
+        }
+    }
+
+    //return the number of bytes of an encoded posting list
+    private static long encodedSize(List<Document> postingList) {
+        long bytes = IndexBuildMetrics.variableByteSize(postingList.size());
+        int previousDocId = 0;
+        for (Document document : postingList) {
+            bytes += IndexBuildMetrics.variableByteSize(document.getDocId() - previousDocId)
+                    + IndexBuildMetrics.variableByteSize(document.getTermFrequency());
+            int previousPosition = 0;
+            int[] positions = document.getTermPositions();
+            for (int i = 0; i < document.getTermFrequency(); i++) {
+                bytes += IndexBuildMetrics.variableByteSize(positions[i] - previousPosition);
+                previousPosition = positions[i];
+            }
+            previousDocId = document.getDocId();
+        }
+        return bytes;
+    }
+
+    //writes 7 bits per byte, lowest bits first, the high bit is set on every byte but the last
+    private static void writeVariableByte(OutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    /**
+     * Maps a file of posting lists, no posting list is read until it is asked for
+     *
+     * @param fileName the name of the file
+     * @return the mapped posting lists
+     * @throws IOException if the file cannot be mapped or is not a posting file
+     */
+    static PostingFile open(String fileName) throws IOException {
+        return open(fileName, SEGMENT_SHIFT);
+    }
+
+    /**
+     * Maps a file of posting lists in segments of a given size, no posting list is read until it is asked for
+     *
+     * @param fileName     the name of the file
+     * @param segmentShift the log2 of the size of a segment, at most 30
+     * @return the mapped posting lists
+     * @throws IOException if the file cannot be mapped or is not a posting file
+     */
+    static PostingFile open(String fileName, int segmentShift) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<MappedByteBuffer> segments = new ArrayList<>();
+            for (long offset = 0; offset < size; offset += 1L << segmentShift) {
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(1L << segmentShift, size - offset)));
+            }
+            if (size < HEADER_BYTES || segments.get(0).getInt(0) != MAGIC || segments.get(0).getInt(4) != VERSION) {
+                throw new IOException("Not a posting file: " + fileName);
+            }
+            int numOfTerms = segments.get(0).getInt(8);
+            PostingFile postingFile = new PostingFile(fileName, segments.toArray(new MappedByteBuffer[0]), segmentShift,
+                    numOfTerms, size);
+            if (size < HEADER_BYTES + 8L * (numOfTerms + 1L)
+                    || postingFile.getLong(HEADER_BYTES + 8L * numOfTerms) != size) {
+                throw new IOException("Truncated posting file: " + fileName);
+            }
+            return postingFile;
+        }
+    }
+
+    //return the byte at an offset of the file
+    private byte get(long offset) {
+        return segments[(int) (offset >>> segmentShift)].get((int) (offset & segmentMask));
+    }
+
+    //writes the bytes of the file from start to end, through a buffer
+    private void copy(long start, long end, OutputStream output, byte[] buffer) throws IOException {
+        for (long offset = start; offset < end; ) {
+            int position = (int) (offset & segmentMask);
+            ByteBuffer segment = segments[(int) (offset >>> segmentShift)].duplicate();
+            int length = (int) Math.min(Math.min(buffer.length, end - offset), segment.limit() - position);
+            segment.position(position);
+            segment.get(buffer, 0, length);
+            output.write(buffer, 0, length);
+            offset += length;
+        }
+    }
+
+    //return the big-endian long at an offset of the file
+    private long getLong(long offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (get(offset + i) & 0xFF);
+        }
+        return value;
+    }
+
+    //return the offset of the posting list of a term
+    private long start(int termId) {
+        return getLong(HEADER_BYTES + 8L * termId);
+    }
+
+    //return the offset after the posting list of a term
+    private long end(int termId) {
+        return getLong(HEADER_BYTES + 8L * (termId + 1));
+    }
+
+    /**
+     * Decodes the posting list of a term
+     *
+     * @param termId the term id
+     * @return the postings and docIds of the term
+     */
+    PostingCache.Entry read(int termId) {
+        long start = start(termId);
+        long end = end(termId);
+
+        //a posting list that crosses segments is copied
+        ByteBuffer block;
+        int[] position = new int[1];
+        int segment = (int) (start >>> segmentShift);
+        if (segment == (int) ((end - 1) >>> segmentShift)) {
+            block = segments[segment];
+            position[0] = (int) (start & segmentMask);
+        } else {
+            byte[] bytes = new byte[(int) (end - start)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = get(start + i);
+            }
+            block = ByteBuffer.wrap(bytes);
+        }
+
+        int numOfDocs = readVariableByte(block, position);
+        List<Document> postings = new ArrayList<>(numOfDocs);
+        int[] docIds = new int[numOfDocs];
+        int docId = 0;
+        for (int i = 0; i < numOfDocs; i++) {
+            docId += readVariableByte(block, position);
+            int[] termPositions = new int[readVariableByte(block, position)];
+            int termPosition = 0;
+            for (int j = 0; j < termPositions.length; j++) {
+                termPosition += readVariableByte(block, position);
+                termPositions[j] = termPosition;
+            }
+            postings.add(new Document(termId, docId, termPositions));
+            docIds[i] = docId;
+        }
+        return PostingCache.Entry.of(postings, docIds);
+    }
+
+    //return the variable-byte integer at a position of a buffer, and moves the position after it
+    private static int readVariableByte(ByteBuffer buffer, int[] position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte next = buffer.get(position[0]++);
+            value |= (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    //return the number of terms of the file
+    public int getNumOfTerms() {
+        return numOfTerms;
+    }
+
+    //return the size of the file in bytes
+    public long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,87 @@
+package evaluator;
+
+/**
+ * Inner loops over the primitive arrays of the index: the docIds of the posting lists, the positions
+ * of a posting and the words of docId bitmaps. The scalar kernels run on any JVM. The Vector API kernels are compiled from
+ * src-vector on JDK 17 or later and are selected at startup when the JVM runs with
+ * --add-modules jdk.incubator.vector, -Dkernels=scalar or -Dkernels=vector forces a choice
+ */
+public interface PostingKernels {
+    //kernels selected at startup
+    PostingKernels INSTANCE = load();
+
+    /**
+     * Intersects two posting lists on their docIds
+     *
+     * @param docIdsOne  the docIds of list one, in increasing order
+     * @param docIdsTwo  the docIds of list two, in increasing order
+     * @param indexesOne the array the indexes in list one of the common docIds are written to
+     * @param indexesTwo the array the indexes in list two of the common docIds are written to
+     * @return the number of common docIds
+     */
+    int intersect(int[] docIdsOne, int[] docIdsTwo, int[] indexesOne, int[] indexesTwo);
+
+    /**
+     * Checks if a position of term two follows a position of term one within a window
+     *
+     * @param positionsOne the positions of term one, in increasing order
+     * @param sizeOne      the number of positions of term one
+     * @param positionsTwo the positions of term two, in increasing order
+     * @param sizeTwo      the number of positions of term two
+     * @param window       the number of words allowed between the terms
+     * @return true if some position two is after some position one by at most window + 1
+     */
+    boolean matchesWindow(int[] positionsOne, int sizeOne, int[] positionsTwo, int sizeTwo, int window);
+
+    /**
+     * Intersects two bitmaps of the same length
+     *
+     * @param wordsOne a bitmap
+     * @param wordsTwo another bitmap
+     * @param result   the array the intersection is written to
+     * @return the number of bits set in the intersection
+     */
+    int and(long[] wordsOne, long[] wordsTwo, long[] result);
+
+    //name of the kernels, scalar or vector
+    String getName();
+
+    /**
+     * Creates kernels
+     *
+     * @param name scalar or vector
+     * @return the kernels
+     * @throws IllegalArgumentException if the name is unknown or the Vector API is not available
+     */
+    static PostingKernels forName(String name) {
+        switch (name) {
+            case "scalar":
+                return new ScalarPostingKernels();
+            case "vector":
+                if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+                    throw new IllegalArgumentException("Vector kernels need --add-modules jdk.incubator.vector");
+                }
+                try {
+                    return (PostingKernels) Class.forName("evaluator.VectorPostingKernels")
+                            .getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    throw new IllegalArgumentException("Vector kernels are not available: " + e, e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown kernels: " + name);
+        }
+    }
+
+    //return the kernels of -Dkernels, or the vector kernels if they are available
+    private static PostingKernels load() {
+        String name = System.getProperty("kernels");
+        if (name != null) {
+            return forName(name);
+        }
+        try {
+            return forName("vector");
+        } catch (IllegalArgumentException iae) {
+            return new ScalarPostingKernels();
+        }
+    }
+}
@@ -5,14 +5,14 @@ package evaluator;
  */
 public class ProximityQuery {
     private int termProximity;
-    private String termOne;
-    private String termTwo;
+    private int termOne;
+    private int termTwo;
 
     ProximityQuery() {
 
     }
 
-    ProximityQuery(int prox, String wordOne, String wordTwo) {
+    ProximityQuery(int prox, int wordOne, int wordTwo) {
         this.termProximity = prox;
         this.termOne = wordOne;
         this.termTwo = wordTwo;
@@ -22,11 +22,11 @@ public class ProximityQuery {
         this.termProximity = termProximity;
     }
 
-    public void setTermOne(String termOne) {
+    public void setTermOne(int termOne) {
         this.termOne = termOne;
     }
 
-    public void setTermTwo(String termTwo) {
+    public void setTermTwo(int termTwo) {
         this.termTwo = termTwo;
     }
 
@@ -34,11 +34,11 @@ public class ProximityQuery {
         return termProximity;
     }
 
-    public String getTermOne() {
+    public int getTermOne() {
         return termOne;
     }
 
-    public String getTermTwo() {
+    public int getTermTwo() {
         return termTwo;
     }
 }
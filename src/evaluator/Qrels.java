@@ -0,0 +1,87 @@
+package evaluator;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Relevance judgements read from a qrels file with lines [QryID] 0 [DocID] [Relevance].
+ * Query and document ids are numbers, each judgement is keyed by (qid << 32) | docid
+ */
+public class Qrels {
+    //label of a pair that was not judged
+    public static final int NOT_JUDGED = Integer.MIN_VALUE;
+
+    //<(qid, docid), relevance label>
+    private LongIntMap labels = new LongIntMap();
+    private int skippedLines;
+
+    /**
+     * Reads a qrels file, the last judgement of a pair is kept.
+     * Lines without four fields or with ids that are not numbers are skipped
+     *
+     * @param fileName the name of the file
+     * @return the judgements of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static Qrels load(String fileName) throws IOException {
+        Qrels qrels = new Qrels();
+        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                try {
+                    if (fields.length < 4) {
+                        throw new NumberFormatException(line);
+                    }
+                    qrels.add(Integer.parseInt(fields[0]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+                } catch (NumberFormatException nfe) {
+                    if (!line.trim().isEmpty()) {
+                        qrels.skippedLines++;
+                    }
+                }
+            }
+        }
+        return qrels;
+    }
+
+    //return the key of a judgement
+    public static long key(int qid, int docId) {
+        return ((long) qid << 32) | (docId & 0xFFFFFFFFL);
+    }
+
+    //return the query id of a key
+    public static int getQueryId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    //return the document id of a key
+    public static int getDocId(long key) {
+        return (int) key;
+    }
+
+    //adds or replaces a judgement
+    void add(int qid, int docId, int label) {
+        labels.put(key(qid, docId), label);
+    }
+
+    //return the label of a document for a query, NOT_JUDGED if there is no judgement
+    public int getLabel(int qid, int docId) {
+        return labels.get(key(qid, docId), NOT_JUDGED);
+    }
+
+    //return the judgements, in file order
+    public LongIntMap getLabels() {
+        return labels;
+    }
+
+    //number of judgements
+    public int size() {
+        return labels.size();
+    }
+
+    //number of lines that could not be read as judgements
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+}
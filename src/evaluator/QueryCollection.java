@@ -7,9 +7,10 @@ import java.util.List;
  */
 public class QueryCollection {
     private List<ProximityQuery> proximityQueryList;
-    private List<String> regularQueryList;
+    //term ids of the regular query
+    private int[] regularQueryList;
 
-    QueryCollection(List<ProximityQuery> proxQueryList, List<String> regQueryList) {
+    QueryCollection(List<ProximityQuery> proxQueryList, int[] regQueryList) {
         this.proximityQueryList = proxQueryList;
         this.regularQueryList = regQueryList;
     }
@@ -18,11 +19,11 @@ public class QueryCollection {
         return proximityQueryList;
     }
 
-    public List<String> getRegularQueryList() {
+    public int[] getRegularQueryList() {
         return regularQueryList;
     }
 
     public int getTotalTerms() {
-        return proximityQueryList.size() + regularQueryList.size();
+        return proximityQueryList.size() + regularQueryList.length;
     }
 }
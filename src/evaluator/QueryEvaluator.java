@@ -1,12 +1,9 @@
 package evaluator;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Created by mayara on 2/15/17.
@@ -15,19 +12,196 @@ public class QueryEvaluator extends PositionalInvertedIndex {
 
     //private List<WeightedDocument> rankedResults;
 
+    //number of expansion terms added to the query in each pseudo-relevance feedback run
+    private static final int[] EXPANSION_TERMS = {1, 3, 5};
+
+    //number of top ranked documents used for pseudo-relevance feedback
+    private int feedbackDocuments = 1;
+
+    //scoring function of the run
+    private Scorer scorer = new TfIdfScorer();
+
+    //per stage latency metrics, null when disabled
+    private QueryMetrics metrics;
+
+    //log of the queries slower than its threshold, null when disabled
+    private SlowQueryLog slowQueryLog;
+
+    //relevance judgements the runs are measured against, null when disabled
+    private Qrels qrels;
+
+    //impact ordered postings for score-at-a-time evaluation of the regular terms, null when disabled
+    private ImpactIndex impactIndex;
+    private long postingsBudget = Long.MAX_VALUE;
+    private long timeBudgetNanos = Long.MAX_VALUE;
+
     public QueryEvaluator(String indexFileName) {
         super(indexFileName);
     }
 
+    public QueryEvaluator(String indexFileName, boolean saveIndex) {
+        super(indexFileName, saveIndex);
+    }
+
+    public QueryEvaluator(String indexFileName, boolean saveIndex, StopwordSet stopwords) {
+        super(indexFileName, saveIndex, stopwords);
+    }
+
+    public QueryEvaluator(String indexFileName, boolean saveIndex, StopwordSet stopwords, boolean indexStopwords) {
+        super(indexFileName, saveIndex, stopwords, indexStopwords);
+    }
+
+    public QueryEvaluator(String indexFileName, boolean saveIndex, StopwordSet stopwords, boolean indexStopwords,
+                          boolean reorderDocuments) {
+        super(indexFileName, saveIndex, stopwords, indexStopwords, reorderDocuments);
+    }
+
+    /**
+     * A new version of an evaluator, with the same settings and sharing the index of the previous version
+     *
+     * @param previous the evaluator to copy
+     */
+    private QueryEvaluator(QueryEvaluator previous) {
+        super(previous);
+        this.feedbackDocuments = previous.feedbackDocuments;
+        this.scorer = previous.scorer;
+        this.metrics = previous.metrics;
+        this.slowQueryLog = previous.slowQueryLog;
+        this.qrels = previous.qrels;
+        this.impactIndex = previous.impactIndex;
+        this.postingsBudget = previous.postingsBudget;
+        this.timeBudgetNanos = previous.timeBudgetNanos;
+    }
+
+    /**
+     * Returns a new version of this evaluator with more documents. This evaluator is not modified and
+     * can keep evaluating queries while the new version is built. The impact index is rebuilt if -Dimpact.bits
+     * is set, and dropped otherwise
+     *
+     * @param documents the documents to add, in the format of the documents file
+     * @return the new version, or this evaluator if all the documents are already indexed
+     */
+    public QueryEvaluator withDocuments(BufferedReader documents) {
+        QueryEvaluator next = new QueryEvaluator(this);
+        if (next.appendDocuments(documents) == 0) {
+            return this;
+        }
+        next.setImpactIndex(null, Long.MAX_VALUE, Long.MAX_VALUE);
+        next.configureImpactIndex();
+        return next;
+    }
+
+    /**
+     * Returns a new version of this evaluator weighing terms with the statistics of the collection it is a shard of.
+     * This evaluator is not modified
+     *
+     * @param statistics the statistics of the collection
+     * @return the new version
+     */
+    public QueryEvaluator withGlobalStatistics(TermStatistics statistics) {
+        QueryEvaluator next = new QueryEvaluator(this);
+        next.setGlobalStatistics(statistics);
+        next.configureImpactIndex();
+        return next;
+    }
+
+    public void setFeedbackDocuments(int feedbackDocuments) {
+        this.feedbackDocuments = feedbackDocuments;
+    }
+
+    public void setScorer(Scorer scorer) {
+        this.scorer = scorer;
+    }
+
+    public void setMetrics(QueryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    public void setQrels(Qrels qrels) {
+        this.qrels = qrels;
+    }
+
+    /**
+     * Evaluates the regular query terms score-at-a-time on impact ordered postings, when
+     * they are weighed with the scorer of the impacts. Each evaluation of regular terms stops
+     * at the first of the budgets
+     *
+     * @param impactIndex     the impact ordered postings, null to evaluate the exact weights
+     * @param postingsBudget  the maximum number of postings processed, Long.MAX_VALUE for no limit
+     * @param timeBudgetNanos the time after which no more postings are processed, Long.MAX_VALUE for no limit
+     */
+    public void setImpactIndex(ImpactIndex impactIndex, long postingsBudget, long timeBudgetNanos) {
+        this.impactIndex = impactIndex;
+        this.postingsBudget = postingsBudget;
+        this.timeBudgetNanos = timeBudgetNanos;
+    }
+
+    /**
+     * Builds the impact ordered postings for the scorer of this evaluator if -Dimpact.bits is set,
+     * -Dimpact.postings and -Dimpact.micros set the budgets of each query
+     */
+    void configureImpactIndex() {
+        if (Integer.getInteger("impact.bits") != null) {
+            long timeBudgetMicros = Long.getLong("impact.micros", Long.MAX_VALUE);
+            setImpactIndex(new ImpactIndex(this, scorer, Integer.getInteger("impact.bits")),
+                    Long.getLong("impact.postings", Long.MAX_VALUE),
+                    timeBudgetMicros == Long.MAX_VALUE ? Long.MAX_VALUE : timeBudgetMicros * 1000);
+        }
+    }
+
+    //return a trace for a new query, the disabled trace if there are no metrics and no slow query log
+    private QueryTrace newTrace() {
+        if (metrics == null && slowQueryLog == null) {
+            return QueryTrace.DISABLED;
+        }
+        return new QueryTrace(true, metrics != null && metrics.isTrackingAllocation(), slowQueryLog != null);
+    }
+
+    //stops the trace of a finished query and adds it to the metrics and the slow query log
+    private void recordTrace(QueryTrace trace, int resultCount) {
+        if (trace.isEnabled()) {
+            trace.stop();
+            trace.setResultCount(resultCount);
+            if (metrics != null) {
+                metrics.record(trace);
+            }
+            if (slowQueryLog != null) {
+                slowQueryLog.offer(trace);
+            }
+        }
+    }
+
+    //return the number of distinct documents in a list of postings sorted by docId
+    private static int countDocuments(List<Document> postings) {
+        int documents = 0;
+        for (int i = 0; i < postings.size(); i++) {
+            if (i == 0 || postings.get(i).getDocId() != postings.get(i - 1).getDocId()) {
+                documents++;
+            }
+        }
+        return documents;
+    }
+
 
     /**
-     * Reads a query string and returns a collection of proximity and/or regular query tokens
+     * Reads a query string and returns a collection of proximity and/or regular query tokens.
+     * A proximity clause with a stopword is evaluated on the stopword positions if they are indexed,
+     * otherwise its stopwords are removed. The terms of a clause left with fewer than two terms are evaluated
+     * as regular query terms
      *
      * @param query a string with the query to be evaluated
      * @return a collection of proximity and/or regular query tokens
      * contained in the query string
      */
-    private QueryCollection getQueryCollection(String query) {
+    QueryCollection getQueryCollection(String query) {
 
         List<ProximityQuery> proximityQueries = new ArrayList<>();
         List<String> regularQueries;
@@ -50,23 +224,32 @@ public class QueryEvaluator extends PositionalInvertedIndex {
                 //stem tokens
                 tokens = stringStemmer(tokens);
 
-                //removes stopwords from tokens
-                tokens = stopwordsRemoval(tokens);
+                //a stopword can only be in a clause if its positions are indexed
+                if (!hasCommonTerms()) {
+                    tokens = stopwordsRemoval(tokens);
+                }
+                boolean evaluable = tokens.size() >= 3;
 
                 //creates proximity query object
-                ProximityQuery proximityQuery = new ProximityQuery();
-                try {
-                    proximityQuery.setTermProximity(Integer.valueOf(tokens.get(0)));
-                    proximityQuery.setTermOne(tokens.get(1));
-                    proximityQuery.setTermTwo(tokens.get(2));
-                    proximityQueries.add(proximityQuery);
-
-                } catch (NumberFormatException nfe) {
-                    System.out.println(nfe.getMessage());
+                String regularTerms = " ";
+                if (evaluable) {
+                    ProximityQuery proximityQuery = new ProximityQuery();
+                    try {
+                        proximityQuery.setTermProximity(Integer.valueOf(tokens.get(0)));
+                        proximityQuery.setTermOne(dictionary.getTermId(tokens.get(1)));
+                        proximityQuery.setTermTwo(dictionary.getTermId(tokens.get(2)));
+                        proximityQueries.add(proximityQuery);
+
+                    } catch (NumberFormatException nfe) {
+                        System.out.println(nfe.getMessage());
+                    }
+                } else {
+                    //the terms of the clause, without the proximity
+                    regularTerms = " " + String.join(" ", tokens.subList(Math.min(1, tokens.size()), tokens.size())) + " ";
                 }
 
                 //regular query
-                query = query.replace(proxQuery, " ");
+                query = query.replace(proxQuery, regularTerms);
 
             } else {
                 //Pre-process regular query
@@ -87,7 +270,8 @@ public class QueryEvaluator extends PositionalInvertedIndex {
 
         }
 
-        QueryCollection queryTokensCollection = new QueryCollection(proximityQueries, regularQueries);
+        //terms are evaluated by term id
+        QueryCollection queryTokensCollection = new QueryCollection(proximityQueries, getTermIds(regularQueries));
 
         return queryTokensCollection;
 
@@ -101,13 +285,13 @@ public class QueryEvaluator extends PositionalInvertedIndex {
      * @param postTwo posting list for termOne
      * @return a list with the intersection
      */
-    private List<Document> intersect(List<Document> postOne, List<Document> postTwo) {
+    List<Document> intersect(List<Document> postOne, List<Document> postTwo) {
         List<Document> result = new ArrayList<>();
 
         int indexOne = 0;
         int indexTwo = 0;
 
-        while (indexOne < postOne.size() && indexOne < postTwo.size() && indexTwo < postTwo.size()) {
+        while (indexOne < postOne.size() && indexTwo < postTwo.size()) {
             //checks if the docId in list one is also in list two
             int docIdOne = postOne.get(indexOne).getDocId();
             int docIdTwo = postTwo.get(indexTwo).getDocId();
@@ -126,6 +310,104 @@ public class QueryEvaluator extends PositionalInvertedIndex {
         return result;
     }
 
+    /**
+     * Intersects two posting lists on their docId arrays, with the intersection kernel
+     *
+     * @param postOne   posting list for termOne
+     * @param docIdsOne docIds of postOne
+     * @param postTwo   posting list for termTwo
+     * @param docIdsTwo docIds of postTwo
+     * @return a list with the postings of both terms in each document of the intersection
+     */
+    List<Document> intersect(List<Document> postOne, int[] docIdsOne, List<Document> postTwo, int[] docIdsTwo) {
+        int[] indexesOne = new int[Math.min(docIdsOne.length, docIdsTwo.length)];
+        int[] indexesTwo = new int[indexesOne.length];
+        int count = PostingKernels.INSTANCE.intersect(docIdsOne, docIdsTwo, indexesOne, indexesTwo);
+
+        List<Document> result = new ArrayList<>(2 * count);
+        for (int i = 0; i < count; i++) {
+            result.add(postOne.get(indexesOne[i]));
+            result.add(postTwo.get(indexesTwo[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Intersects two posting lists, on the docId bitmaps of frequent terms when they have them.
+     * Two bitmaps are intersected directly and a list is tested against a bitmap, then only the
+     * postings of the documents in both lists are fetched, so proximity reads the same pairs as with intersect
+     *
+     * @param postOne   posting list for termOne
+     * @param bitmapOne docIds of postOne, or null
+     * @param postTwo   posting list for termTwo
+     * @param bitmapTwo docIds of postTwo, or null
+     * @return a list with the postings of both terms in each document of the intersection
+     */
+    List<Document> intersect(List<Document> postOne, DocIdBitmap bitmapOne, List<Document> postTwo,
+                             DocIdBitmap bitmapTwo) {
+        if (bitmapOne == null && bitmapTwo == null) {
+            return intersect(postOne, postTwo);
+        }
+
+        List<Document> result = new ArrayList<>();
+        int indexOne = 0;
+        int indexTwo = 0;
+        if (bitmapOne != null && bitmapTwo != null) {
+            for (int docId : bitmapOne.and(bitmapTwo).toArray()) {
+                indexOne = seek(postOne, indexOne, docId);
+                indexTwo = seek(postTwo, indexTwo, docId);
+                result.add(postOne.get(indexOne));
+                result.add(postTwo.get(indexTwo));
+            }
+        } else if (bitmapTwo != null) {
+            for (Document document : postOne) {
+                if (bitmapTwo.contains(document.getDocId())) {
+                    indexTwo = seek(postTwo, indexTwo, document.getDocId());
+                    result.add(document);
+                    result.add(postTwo.get(indexTwo));
+                }
+            }
+        } else {
+            for (Document document : postTwo) {
+                if (bitmapOne.contains(document.getDocId())) {
+                    indexOne = seek(postOne, indexOne, document.getDocId());
+                    result.add(postOne.get(indexOne));
+                    result.add(document);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds a document of a posting list by galloping from a previous position
+     *
+     * @param postings a posting list sorted by docId
+     * @param from     the index the search starts at, at or before the document
+     * @param docId    a docId of the list
+     * @return the index of the posting of the document
+     */
+    private static int seek(List<Document> postings, int from, int docId) {
+        //doubles the step until it passes the document, then searches the last step
+        int step = 1;
+        int to = from;
+        while (to < postings.size() && postings.get(to).getDocId() < docId) {
+            from = to;
+            to += step;
+            step *= 2;
+        }
+        to = Math.min(to, postings.size() - 1);
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (postings.get(middle).getDocId() < docId) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
     /**
      * Check proximity between two terms
      *
@@ -133,31 +415,21 @@ public class QueryEvaluator extends PositionalInvertedIndex {
      * @param proximity the distance
      * @return a list of documents that satisfy the condition
      */
-    private List<Document> checkProximity(List<Document> docList, int proximity) {
+    List<Document> checkProximity(List<Document> docList, int proximity) {
         List<Document> result = new ArrayList<>();
 
         for (int i = 0; i < docList.size() - 1; i += 2) {
-            //gets term position list for each term
-            List<Integer> docPositionOne = docList.get(i).getTermPositionList();
-            Set<Integer> docPositionTwo = new HashSet<>(docList.get(i + 1).getTermPositionList());
-
-            match:
-            for (int position : docPositionOne) {
-                int value = 0;
-                int j = 1;
-
-                //checks if terms are in the correct proximity
-                while (value <= position + proximity) {
-                    value = position + j;
-                    j++;
-
-                    //found a match
-                    if (docPositionTwo.contains(value)) {
-                        result.add(docList.get(i));
-                        result.add(docList.get(i + 1));
-                        break match;
-                    }
-                }
+            //gets term position list for each term, both are sorted
+            int[] docPositionOne = docList.get(i).getTermPositions();
+            int[] docPositionTwo = docList.get(i + 1).getTermPositions();
+            int sizeOne = docList.get(i).getTermFrequency();
+            int sizeTwo = docList.get(i + 1).getTermFrequency();
+
+            //checks if terms are in the correct proximity
+            if (PostingKernels.INSTANCE.matchesWindow(docPositionOne, sizeOne, docPositionTwo, sizeTwo, proximity)) {
+                //found a match
+                result.add(docList.get(i));
+                result.add(docList.get(i + 1));
             }
         }
 
@@ -165,48 +437,79 @@ public class QueryEvaluator extends PositionalInvertedIndex {
     }
 
     /**
-     * Weighs terms for each document. TF.IDF
+     * Weighs terms for each document
      *
-     * @param term a post for a query term
+     * @param term   a post for a query term
+     * @param scorer the scoring function
      * @return weighted post
      */
-    private WeightedPost weighTerm(Document term) {
+    private WeightedPost weighTerm(Document term, Scorer scorer) {
         //gets document frequency of the term
-        double docFreqTerm = (double) positionalIndex.get(term.getTerm()).size();
-
-        //gets term frequency
-        double termFreq = (double) term.getTermFrequency();
-
-        //TF: (1 + Math.log10(termFreq))
-        //IDF: Math.log10(getCollectionSize() / docFreqTerm)
-        double termWeigh = (1 + Math.log10(termFreq)) * Math.log10(getCollectionSize() / docFreqTerm);
+        int docFreqTerm = getDocumentFrequency(term.getTermId());
 
         //returns the weighted term
-        return new WeightedPost(term.getTerm(), term.getDocId(), termWeigh);
+        return new WeightedPost(term.getTermId(), term.getDocId(), weigh(term.getTermFrequency(), docFreqTerm,
+                getCollectionFrequency(term.getTermId()), term.getDocId(), scorer));
+
+    }
 
+    /**
+     * Weight of a term in a document
+     *
+     * @param termFreq    the frequency of the term in the document
+     * @param docFreqTerm the number of documents containing the term
+     * @param collFreq    the number of occurrences of the term in the collection
+     * @param docId       the document id
+     * @param scorer      the scoring function
+     * @return the term weight
+     */
+    private double weigh(int termFreq, int docFreqTerm, long collFreq, int docId, Scorer scorer) {
+        return scorer.score(termFreq, docFreqTerm, collFreq, getDocumentLength(docId), getCollectionStatistics());
     }
 
     /**
      * ranks a list of documents based on the weight of its query terms
      *
-     * @param weightedTermList a list of weighted terms
+     * @param regularScores   a map of <DocId, summed weight of the regular query terms>
+     * @param proxQueryResult a map of <DocId, weighted proximity query terms>
+     * @param trace           the trace of the query
+     * @return the documents sorted by weight
      */
-    private List<WeightedDocument> rankDocuments(Map<Integer, List<WeightedPost>> weightedTermList) {
+    private List<WeightedDocument> rankDocuments(Map<Integer, Double> regularScores,
+                                                 Map<Integer, List<WeightedPost>> proxQueryResult, QueryTrace trace) {
         List<WeightedDocument> rankedDocuments = new ArrayList<>();
-        double docWeight = 0;
-        for (Map.Entry<Integer, List<WeightedPost>> entry : weightedTermList.entrySet()) {
+        for (Map.Entry<Integer, Double> entry : regularScores.entrySet()) {
             Integer docId = entry.getKey();
-            for (WeightedPost term : entry.getValue()) {
-                docWeight += term.getWeight();
+            double docWeight = entry.getValue();
+            //adds the proximity query terms of this document
+            if (proxQueryResult.containsKey(docId)) {
+                for (WeightedPost term : proxQueryResult.get(docId)) {
+                    docWeight += term.getWeight();
+                }
             }
-            WeightedDocument doc = new WeightedDocument(docWeight, docId);
-            rankedDocuments.add(doc);
-            docWeight = 0;
+            rankedDocuments.add(new WeightedDocument(docWeight, docId));
         }
 
-        //sort results
-        Collections.sort(rankedDocuments, (docOne, docTwo) -> Double
-                .compare(docTwo.getWeight(), docOne.getWeight()));
+        //documents that only matched the proximity query
+        for (Map.Entry<Integer, List<WeightedPost>> entry : proxQueryResult.entrySet()) {
+            Integer docId = entry.getKey();
+            if (!regularScores.containsKey(docId)) {
+                double docWeight = 0;
+                for (WeightedPost term : entry.getValue()) {
+                    docWeight += term.getWeight();
+                }
+                rankedDocuments.add(new WeightedDocument(docWeight, docId));
+            }
+        }
+
+        trace.addDocumentsScored(rankedDocuments.size());
+        trace.lap(QueryStage.MERGE);
+
+        //sort results, ties are ranked by the docId of the documents file
+        Collections.sort(rankedDocuments, (docOne, docTwo) -> docOne.getWeight() != docTwo.getWeight()
+                ? Double.compare(docTwo.getWeight(), docOne.getWeight())
+                : Integer.compare(getExternalId(docOne.getDocId()), getExternalId(docTwo.getDocId())));
+        trace.lap(QueryStage.RANK);
 
         return rankedDocuments;
     }
@@ -216,33 +519,56 @@ public class QueryEvaluator extends PositionalInvertedIndex {
      * where n is the proximity between terms
      *
      * @param proxQueryList a list of proximity query objects
+     * @param scorer        the scoring function
+     * @param trace         the trace of the query
      * @return a Map of <DocId, Weighted terms> that has met the search query
      */
-    private Map<Integer, List<WeightedPost>> evaluateProximityQuery(List<ProximityQuery> proxQueryList) {
+    private Map<Integer, List<WeightedPost>> evaluateProximityQuery(List<ProximityQuery> proxQueryList,
+                                                                    Scorer scorer, QueryTrace trace) {
         List<Document> result = null;
         List<List<Document>> resultSet = new ArrayList<>();
         Map<Integer, List<WeightedPost>> resultMap = new HashMap<>();
 
-        //get posting lists
-        List<Document> docOneList = null;
-        List<Document> docTwoList = null;
-
         for (int i = 0; i < proxQueryList.size(); i++) {
-            if (positionalIndex.containsKey(proxQueryList.get(i).getTermOne())) {
-                docOneList = positionalIndex.get(proxQueryList.get(i).getTermOne());
-            }
-
-            if (positionalIndex.containsKey(proxQueryList.get(i).getTermTwo())) {
-                docTwoList = positionalIndex.get(proxQueryList.get(i).getTermTwo());
+            //get posting lists
+            int termOne = proxQueryList.get(i).getTermOne();
+            int termTwo = proxQueryList.get(i).getTermTwo();
+            PostingCache.Entry postingsOne = getPostings(termOne);
+            PostingCache.Entry postingsTwo = getPostings(termTwo);
+            List<Document> docOneList = postingsOne == null ? null : postingsOne.getPostings();
+            List<Document> docTwoList = postingsTwo == null ? null : postingsTwo.getPostings();
+
+            //stopword postings are only created for the documents of the other term
+            if (docOneList != null && docTwoList != null) {
+                if (isCommonTerm(termOne)) {
+                    docOneList = getCommonTermPostings(termOne, isCommonTerm(termTwo) ? null : docTwoList);
+                }
+                if (isCommonTerm(termTwo)) {
+                    docTwoList = getCommonTermPostings(termTwo, docOneList);
+                }
             }
 
-            //intersect
+            //intersect, no document matches if a term is not indexed
             if (docOneList != null && docTwoList != null) {
-                result = intersect(docOneList, docTwoList);
+                trace.addPostingsScanned(docOneList.size() + docTwoList.size());
+                DocIdBitmap bitmapOne = isCommonTerm(termOne) ? null : getDocIdBitmap(termOne);
+                DocIdBitmap bitmapTwo = isCommonTerm(termTwo) ? null : getDocIdBitmap(termTwo);
+                if (bitmapOne == null && bitmapTwo == null && !isCommonTerm(termOne) && !isCommonTerm(termTwo)) {
+                    result = intersect(docOneList, postingsOne.getDocIds(), docTwoList, postingsTwo.getDocIds());
+                } else {
+                    result = intersect(docOneList, bitmapOne, docTwoList, bitmapTwo);
+                }
+            } else {
+                result = new ArrayList<>();
             }
+            int intersection = trace.isRecordingDetails() ? countDocuments(result) : 0;
 
             //check proximity
             result = checkProximity(result, proxQueryList.get(i).getTermProximity());
+            if (trace.isRecordingDetails()) {
+                trace.addProximityClause(proxQueryList.get(i), docOneList == null ? 0 : docOneList.size(),
+                        docTwoList == null ? 0 : docTwoList.size(), intersection, countDocuments(result));
+            }
 
             resultSet.add(result);
 
@@ -250,6 +576,9 @@ public class QueryEvaluator extends PositionalInvertedIndex {
                 //intersect
                 if (resultSet.get(0) != null && resultSet.get(1) != null) {
                     result = intersect(resultSet.get(0), resultSet.get(1));
+                    if (trace.isRecordingDetails()) {
+                        trace.addClauseIntersection(countDocuments(result));
+                    }
                     resultSet.clear();
                     if (result.size() > 0) {
                         resultSet.add(result);
@@ -269,12 +598,12 @@ public class QueryEvaluator extends PositionalInvertedIndex {
                     //creates a new list of weighted posts associated to that docId
                     List<WeightedPost> weightedPostList = new ArrayList<>();
                     //weighs term and adds to list
-                    weightedPostList.add(weighTerm(document));
+                    weightedPostList.add(weighTerm(document, scorer));
                     resultMap.put(document.getDocId(), weightedPostList);
                 } else {
                     //adds weighted term the list associated to this docId
                     List<WeightedPost> weightedPostList = resultMap.get(document.getDocId());
-                    weightedPostList.add(weighTerm(document));
+                    weightedPostList.add(weighTerm(document, scorer));
                 }
             }
         }
@@ -285,36 +614,49 @@ public class QueryEvaluator extends PositionalInvertedIndex {
 
     /**
      * Evaluates query of type term1 term2 ...
+     * The weight of each term is added to the weight of the documents that contain it,
+     * so further terms can be added later to the same map
      *
-     * @return a map of <DocId, List weighted terms>
+     * @param regQueryList the term ids of the query
+     * @param docWeights   a map of <DocId, summed weight> to add the terms to
+     * @param scorer       the scoring function
+     * @param trace        the trace of the query
+     * @return docWeights
      */
-    private Map<Integer, List<WeightedPost>> evaluateRegularQuery(List<String> regQueryList) {
-        Map<Integer, List<WeightedPost>> result = new HashMap<>();
+    private Map<Integer, Double> evaluateRegularQuery(int[] regQueryList, Map<Integer, Double> docWeights,
+                                                      Scorer scorer, QueryTrace trace) {
+        //score-at-a-time, if the impacts were computed with this scorer
+        if (impactIndex != null && impactIndex.getScorer().equals(scorer)) {
+            if (trace.isRecordingDetails()) {
+                for (int termId : regQueryList) {
+                    List<Document> postingList = getPostingList(termId);
+                    trace.addTermPostings(termId, postingList == null ? 0 : postingList.size());
+                }
+            }
+            trace.addPostingsScanned(impactIndex.evaluate(regQueryList, docWeights, postingsBudget, timeBudgetNanos));
+            return docWeights;
+        }
 
         //get terms posting list
-        for (String term : regQueryList) {
-            if (positionalIndex.get(term) == null) {
+        for (int termId : regQueryList) {
+            List<Document> postingList = getPostingList(termId);
+            trace.addTermPostings(termId, postingList == null ? 0 : postingList.size());
+            if (postingList == null) {
                 continue;
             }
 
-            for (Document document : positionalIndex.get(term)) {
-                //weigh term and adds to map
-                //checks if the term is already in the map
-                if (!result.containsKey(document.getDocId())) {
-                    //creates a new list of weighted posts associated to that docId
-                    List<WeightedPost> weightedPostList = new ArrayList<>();
-                    //weighs term and adds to list
-                    weightedPostList.add(weighTerm(document));
-                    result.put(document.getDocId(), weightedPostList);
-                } else {
-                    //adds weighted term the list associated to this docId
-                    List<WeightedPost> weightedPostList = result.get(document.getDocId());
-                    weightedPostList.add(weighTerm(document));
-                }
+            int docFreqTerm = getDocumentFrequency(termId);
+            long collFreq = getCollectionFrequency(termId);
+            trace.addPostingsScanned(postingList.size());
+            for (Document document : postingList) {
+                //weigh term and adds it to the document weight
+                docWeights.merge(document.getDocId(),
+                        weigh(document.getTermFrequency(), docFreqTerm, collFreq, document.getDocId(), scorer),
+                        Double::sum);
             }
         }
 
-        return result;
+        return docWeights;
     }
 
     /**
@@ -330,7 +672,7 @@ public class QueryEvaluator extends PositionalInvertedIndex {
                 writer.write("rank, document, and relevance score:\n");
                 int counter = 1;
                 for (WeightedDocument document : result) {
-                    writer.write(counter + ". \tDoc id:" + document.getDocId() + "\tscore: " + document.getWeight() + "\n");
+                    writer.write(counter + ". \tDoc id:" + getExternalId(document.getDocId()) + "\tscore: " + document.getWeight() + "\n");
                     counter++;
                 }
                 writer.write("\n");
@@ -346,7 +688,7 @@ public class QueryEvaluator extends PositionalInvertedIndex {
 
     /**
      * Saves the results from evaluating the expanded query.
-     * Format: [QryID] 0 [DocID] [Rank] [Score] tfidf
+     * Format: [QryID] 0 [DocID] [Rank] [Score] [Scorer]
      *
      * @param rankedResults the ranked documents
      * @param queryId       the id of query evaluated
@@ -358,7 +700,7 @@ public class QueryEvaluator extends PositionalInvertedIndex {
                 int rank = 1;
                 for (WeightedDocument document : rankedResults) {
                     writer.write(queryId + " " + "0" + " " + document.getDocId() + " " + rank + " " + document.getWeight()
-                            + " " + "tfidf" + "\n");
+                            + " " + scorer.getName() + "\n");
                     rank++;
 
                 }
@@ -369,101 +711,83 @@ public class QueryEvaluator extends PositionalInvertedIndex {
     }
 
     /**
-     * Takes a list of weighted terms and returns the subset
-     * requested
+     * Returns ranked documents with the docIds of the documents file, for run files and judgements
      *
-     * @param numOfTerms the number of terms to be returned from a list
-     * @return result a subset of a list
+     * @param rankedResults ranked documents with internal docIds
+     * @return the same ranking with external docIds, rankedResults if documents were not reordered
      */
-    private List<WeightedPost> getTerms(int numOfTerms, List<WeightedPost> weightedPostList) {
-        List<WeightedPost> result = new ArrayList<>();
-        for (int i = 0; i < numOfTerms; i++) {
-            result.add(weightedPostList.get(i));
-
+    List<WeightedDocument> toExternalIds(List<WeightedDocument> rankedResults) {
+        if (!hasExternalIds()) {
+            return rankedResults;
         }
-        return result;
-
+        List<WeightedDocument> externalResults = new ArrayList<>(rankedResults.size());
+        for (WeightedDocument document : rankedResults) {
+            externalResults.add(new WeightedDocument(document.getWeight(), getExternalId(document.getDocId())));
+        }
+        return externalResults;
     }
 
     /**
-     * Expands a given query with additional numOfTerms terms
+     * Takes a list of weighted terms and returns the term ids of
+     * the first numOfTerms terms
      *
-     * @param query       a string query to be expanded
-     * @param listOfTerms a list of terms to be used for query expansion
-     * @param numOfTerms  the number of terms to be added to query
-     * @return a new expanded query
+     * @param numOfTerms       the number of terms to be returned from a list
+     * @param weightedPostList a ranked list of expansion terms
+     * @return result a subset of a list
      */
-    private String expandQuery(String query, List<WeightedPost> listOfTerms, int numOfTerms) {
-
-        List<WeightedPost> resultOne = getTerms(numOfTerms, listOfTerms);
-        String newQuery = query;
-
-        for (int i = 0; i < numOfTerms; i++) {
-            newQuery += " " + resultOne.get(i).getTerm();
+    private int[] getTerms(int numOfTerms, List<WeightedPost> weightedPostList) {
+        int[] result = new int[Math.min(numOfTerms, weightedPostList.size())];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = weightedPostList.get(i).getTermId();
         }
+        return result;
 
-
-        return newQuery;
     }
 
     /**
-     * Pseudo-Relevance feedback, query expansion
+     * Pseudo-Relevance feedback, ranks the candidate expansion terms.
+     * Rocchio-style: the weight of a candidate term is its average weight
+     * over the top feedbackDocuments ranked documents
      *
-     * @param topResult  a weighted document
-     * @param query      a query to be expanded
-     * @param numOfTerms the number of terms to be added to original query
-     * @return a query with additional numOfTerms terms
+     * @param rankedResults     the ranked documents of a query
+     * @param feedbackDocuments the number of top ranked documents the terms are taken from
+     * @param scorer            the scoring function
+     * @return the terms of the feedback documents, sorted by weight
      */
-    private String pseudoRelevanceFeedback(WeightedDocument topResult, String query, int numOfTerms) {
-        //id of top result
-        int docId = topResult.getDocId();
-
-        //get unique tokens from docId
-        Set<String> uniqueTokens = new HashSet<>();
-        uniqueTokens.addAll(getDocumentTokens(docId));
-
-        //add unique tokens to a list
-        List<String> tokenList = new ArrayList<>();
-        tokenList.addAll(uniqueTokens);
-
-        //pre-process tokens
-        //normalize tokens to lower case
-        tokenList = stringNormalizer(tokenList);
-
-        //stem tokens
-        tokenList = stringStemmer(tokenList);
-
-        //removes stopwords from tokens
-        tokenList = stopwordsRemoval(tokenList);
-
-        // calculates tf.idf for each term
-        List<WeightedPost> weightedTermList = new ArrayList<>();
-        Map<Integer, List<WeightedPost>> docPostList = new TreeMap<>();
-        for (String token : tokenList) {
-            //gets list of terms
-            List<Document> termList = positionalIndex.get(token);
-            for (Document term : termList) {
-                if (term.getDocId() == docId) {
-                    //weights term and saves to a map
-                    WeightedPost weightedTerm = weighTerm(term);
-                    weightedTermList.add(weightedTerm);
-                    docPostList.put(docId, weightedTermList);
+    private List<WeightedPost> rankExpansionTerms(List<WeightedDocument> rankedResults, int feedbackDocuments,
+                                                  Scorer scorer) {
+        int numOfDocs = Math.min(feedbackDocuments, rankedResults.size());
+
+        //sums the weight of each term over the feedback documents, read from their term vectors
+        Map<Integer, WeightedPost> termWeights = new LinkedHashMap<>();
+        for (int i = 0; i < numOfDocs; i++) {
+            int docId = rankedResults.get(i).getDocId();
+            TermVector termVector = getTermVector(docId);
+            int[] termIds = termVector.getTermIds();
+            int[] termFrequencies = termVector.getTermFrequencies();
+
+            for (int j = 0; j < termVector.size(); j++) {
+                double weight = weigh(termFrequencies[j], getDocumentFrequency(termIds[j]),
+                        getCollectionFrequency(termIds[j]), docId, scorer) / numOfDocs;
+
+                WeightedPost weightedTerm = termWeights.get(termIds[j]);
+                if (weightedTerm == null) {
+                    termWeights.put(termIds[j], new WeightedPost(termIds[j], docId, weight));
+                } else {
+                    weightedTerm.setWeight(weightedTerm.getWeight() + weight);
                 }
             }
         }
 
         //rank terms
-        Collections.sort(docPostList.get(docId), (docOne, docTwo) -> Double
+        List<WeightedPost> weightedTermList = new ArrayList<>(termWeights.values());
+        Collections.sort(weightedTermList, (docOne, docTwo) -> Double
                 .compare(docTwo.getWeight(), docOne.getWeight()));
 
         //save result
-        //saveRankedTermsToFile(docPostList.get(docId), query, "RankedDoc.txt");
-
-        //expand query
-        String newQuery = expandQuery(query, docPostList.get(docId), numOfTerms);
-
-        return newQuery;
+        //saveRankedTermsToFile(weightedTermList, query, "RankedDoc.txt");
 
+        return weightedTermList;
     }
 
     /**
@@ -480,7 +804,7 @@ public class QueryEvaluator extends PositionalInvertedIndex {
                 writer.write("rank, term, and relevance score:\n");
                 int counter = 1;
                 for (WeightedPost term : result) {
-                    writer.write(counter + ". \tTerm: " + term.getTerm() + "\tscore: " + term.getWeight() + "\n");
+                    writer.write(counter + ". \tTerm: " + getTerm(term.getTermId()) + "\tscore: " + term.getWeight() + "\n");
                     counter++;
                 }
                 writer.write("\n");
@@ -502,44 +826,163 @@ public class QueryEvaluator extends PositionalInvertedIndex {
      *              and/or proximity query
      * @return a list of ranked documents
      */
-    private List<WeightedDocument> evaluateQuery(String query) {
-        Map<Integer, List<WeightedPost>> proxQueryResult = null;
-        Map<Integer, List<WeightedPost>> regQueryResult = null;
+    List<WeightedDocument> evaluateQuery(String query) {
+        QueryTrace trace = newTrace();
+        trace.start();
+
+        List<WeightedDocument> rankedResults = evaluateBaseQuery(query, scorer, trace).getRankedResults();
+        recordTrace(trace, rankedResults.size());
 
+        //save result
+        //saveQueryResultToFile(rankedResults, query, "QueryResult.txt");
+
+        return rankedResults;
+
+    }
+
+    /**
+     * Evaluates and ranks the original query with a scorer
+     *
+     * @param query  a string containing bag of words query
+     *               and/or proximity query
+     * @param scorer the scoring function
+     * @param trace  the trace of the query
+     * @return the term weights and the ranking of the query
+     */
+    BaseQueryResult evaluateBaseQuery(String query, Scorer scorer, QueryTrace trace) {
         //pre-process query
         //split query into proximity query tokens or regular tokens
         QueryCollection queryCollection = getQueryCollection(query);
+        trace.setQuery(query, queryCollection, dictionary);
+        trace.lap(QueryStage.PARSE);
 
         //evaluate proximity query
-        proxQueryResult = evaluateProximityQuery(queryCollection.getProximityQueryList());
+        Map<Integer, List<WeightedPost>> proxQueryResult =
+                evaluateProximityQuery(queryCollection.getProximityQueryList(), scorer, trace);
+        trace.lap(QueryStage.PROXIMITY);
 
         //evaluate regular query
-        regQueryResult = evaluateRegularQuery(queryCollection.getRegularQueryList());
+        Map<Integer, Double> regQueryResult =
+                evaluateRegularQuery(queryCollection.getRegularQueryList(), new HashMap<>(), scorer, trace);
+        trace.lap(QueryStage.REGULAR);
 
-        //merge regular and proximity weighted terms
-        for (Map.Entry<Integer, List<WeightedPost>> entry : proxQueryResult.entrySet()) {
-            Integer docId = entry.getKey();
-            //add docId - weighted posts to map
-            if (!regQueryResult.containsKey(docId)) {
-                regQueryResult.put(docId, proxQueryResult.get(docId));
+        //merge regular and proximity weighted terms and rank documents
+        List<WeightedDocument> rankedResults = rankDocuments(regQueryResult, proxQueryResult, trace);
+        return new BaseQueryResult(scorer, queryCollection, proxQueryResult, regQueryResult, rankedResults);
+    }
 
-            } else {
-                //adds weighted term the list associated to this docId
-                List<WeightedPost> weightedPostList = regQueryResult.get(docId);
-                weightedPostList.addAll(proxQueryResult.get(docId));
-            }
+    /**
+     * Evaluates a query and its expansions with pseudo-relevance feedback, with the scorer
+     * and number of feedback documents of this evaluator
+     *
+     * @param query a string containing bag of words query
+     *              and/or proximity query
+     * @return a map of <number of expansion terms, ranked documents>, empty if the query matched no document
+     */
+    Map<Integer, List<WeightedDocument>> evaluateExpandedQuery(String query) {
+        QueryTrace trace = newTrace();
+        trace.start();
+
+        BaseQueryResult baseQuery = evaluateBaseQuery(query, scorer, trace);
+        Map<Integer, List<WeightedDocument>> expandedResults =
+                expandQuery(baseQuery, feedbackDocuments, EXPANSION_TERMS, true, trace);
 
+        //the last expansion level, or the original ranking if the query matched no document
+        List<WeightedDocument> rankedResults = expandedResults.getOrDefault(
+                EXPANSION_TERMS[EXPANSION_TERMS.length - 1], baseQuery.getRankedResults());
+        recordTrace(trace, rankedResults.size());
 
+        return expandedResults;
+    }
+
+    /**
+     * Expands an evaluated query with pseudo-relevance feedback.
+     * Each expansion level x is the original query plus x expansion terms, ranked from the top
+     * results of the previous level when chained, or of the original query otherwise.
+     * Candidate terms are ranked once per set of feedback documents, and the weights of the
+     * original query terms are computed once, so a level only weighs the terms it adds to the previous one
+     *
+     * @param baseQuery         the evaluated original query
+     * @param feedbackDocuments the number of top ranked documents the terms are taken from
+     * @param expansionLevels   the numbers of expansion terms, in increasing order, 0 for the original ranking
+     * @param chained           true to take the feedback documents of a level from the previous level,
+     *                          false to take them from the original query so a level does not depend on the others
+     * @param trace             the trace of the query
+     * @return a map of <number of expansion terms, ranked documents>, empty if the query matched no document
+     */
+    Map<Integer, List<WeightedDocument>> expandQuery(BaseQueryResult baseQuery, int feedbackDocuments,
+                                                     int[] expansionLevels, boolean chained, QueryTrace trace) {
+        Map<Integer, List<WeightedDocument>> expandedResults = new LinkedHashMap<>();
+        Scorer scorer = baseQuery.getScorer();
+        Map<Integer, List<WeightedPost>> proxQueryResult = baseQuery.getProxQueryResult();
+
+        //ranked query results
+        List<WeightedDocument> rankedResults = baseQuery.getRankedResults();
+        if (rankedResults.isEmpty()) {
+            return expandedResults;
         }
 
-        //rank document
-        List<WeightedDocument> rankedResults = rankDocuments(regQueryResult);
+        //ranked expansion terms of each set of feedback documents
+        Map<List<Integer>, List<WeightedPost>> expansionTerms = baseQuery.getExpansionTerms();
 
-        //save result
-        //saveQueryResultToFile(rankedResults, query, "QueryResult.txt");
+        //document weights of the query expanded so far, and the terms it was expanded with
+        Map<Integer, Double> expandedQueryResult = null;
+        int[] addedTerms = new int[0];
 
-        return rankedResults;
+        for (int numOfTerms : expansionLevels) {
+            if (numOfTerms == 0) {
+                expandedResults.put(numOfTerms, baseQuery.getRankedResults());
+                continue;
+            }
+
+            //calculate pseudo-relevance feedback
+            List<WeightedDocument> feedbackDocs = chained ? rankedResults : baseQuery.getRankedResults();
+            List<Integer> feedbackDocIds = new ArrayList<>();
+            for (int i = 0; i < Math.min(feedbackDocuments, feedbackDocs.size()); i++) {
+                feedbackDocIds.add(feedbackDocs.get(i).getDocId());
+            }
+            int[] terms = getTerms(numOfTerms, expansionTerms.computeIfAbsent(feedbackDocIds,
+                    docIds -> rankExpansionTerms(feedbackDocs, feedbackDocuments, scorer)));
+            trace.lap(QueryStage.FEEDBACK);
+
+            //starts over from the original query if this level does not extend the previous one
+            if (expandedQueryResult == null || !startsWith(terms, addedTerms)) {
+                expandedQueryResult = new HashMap<>(baseQuery.getRegQueryResult());
+                addedTerms = new int[0];
+            }
+
+            //weighs only the new terms
+            evaluateRegularQuery(Arrays.copyOfRange(terms, addedTerms.length, terms.length), expandedQueryResult,
+                    scorer, trace);
+            addedTerms = terms;
+            trace.lap(QueryStage.REGULAR);
+
+            //ranked query results for expanded query
+            rankedResults = rankDocuments(expandedQueryResult, proxQueryResult, trace);
+
+            expandedResults.put(numOfTerms, rankedResults);
+        }
 
+        return expandedResults;
+    }
+
+    /**
+     * Checks if an array of term ids starts with another one
+     *
+     * @param terms  an array of term ids
+     * @param prefix the expected first term ids
+     * @return true if the first terms of terms are the prefix terms
+     */
+    private boolean startsWith(int[] terms, int[] prefix) {
+        if (terms.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (terms[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
 //    /**
@@ -566,42 +1009,20 @@ public class QueryEvaluator extends PositionalInvertedIndex {
 //    }
 
     /**
-     * Parse a query file with format <query><number>1</number><text>battery</text>
+     * Saves the mean effectiveness of each expansion level
      *
-     * @param fileName the name of xml file
-     * @return a map of <query id , query>
+     * @param effectiveness the effectiveness of each number of expansion terms
+     * @param fileName      the name of the csv file
      */
-    private Map<String, String> parse(String fileName) {
-
-        Pattern tagRegexNumber = Pattern.compile("<number>(.+?)</number>");
-        Pattern tagRegexQuery = Pattern.compile("<text>(.+?)</text>");
-        String line;
-        List<String> lines = new ArrayList<>();
-        //saves file lines into a list
-        try {
-            BufferedReader br = new BufferedReader(new FileReader(fileName));
-            while ((line = br.readLine()) != null) {
-                lines.add(line);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        //saves query id and query to a map
-        Map<String, String> queries = new HashMap<>();
-        Matcher matcher;
-        Matcher matcher2;
-        for (String line1 : lines) {
-            matcher = tagRegexNumber.matcher(line1);
-            matcher2 = tagRegexQuery.matcher(line1);
-            while (matcher.find() && matcher2.find()) {
-                String id = matcher.group(1);
-                String query = matcher2.group(1);
-                queries.put(id, query);
+    private void saveEffectivenessToFile(Map<Integer, EffectivenessEvaluator> effectiveness, String fileName) {
+        try (FileWriter writer = new FileWriter(fileName)) {
+            writer.write("expansionTerms," + effectiveness.values().iterator().next().getCsvHeader() + "\n");
+            for (Map.Entry<Integer, EffectivenessEvaluator> level : effectiveness.entrySet()) {
+                writer.write(level.getKey() + "," + level.getValue().toCsv() + "\n");
             }
+        } catch (IOException ioe) {
+            System.out.println(Arrays.toString(ioe.getStackTrace()));
         }
-
-        return queries;
     }
 
     /**
@@ -609,52 +1030,107 @@ public class QueryEvaluator extends PositionalInvertedIndex {
      */
     public void run(String fileName) {
 
-        //parse file and save query and query id
-        Map<String, String> queries = parse(fileName);
-
-        queries.forEach((id, query) -> {
-            //ranked query results
-            List<WeightedDocument> rankedResults = evaluateQuery(query);
-            String queryResult;
-            //calculate pseudo-relevance feedback
-
-            if (rankedResults != null && rankedResults.size() > 0) {
-                //expanded query x = 1
-                queryResult = pseudoRelevanceFeedback(rankedResults.get(0), query, 1);
-
-                //ranked query results for expanded query
-                rankedResults = evaluateQuery(queryResult);
-
-                //save result
-                saveExpandedQueryResultToFile(rankedResults, id, "ExpandedQueryResult" + 1 + ".txt");
-
-                //expanded query x = 3
-                queryResult = pseudoRelevanceFeedback(rankedResults.get(0), query, 3);
-
-                //ranked query results for expanded query
-                rankedResults = evaluateQuery(queryResult);
-
-                //save result
-                saveExpandedQueryResultToFile(rankedResults, id, "ExpandedQueryResult" + 3 + ".txt");
+        //effectiveness of each expansion level, if there are relevance judgements
+        Map<Integer, EffectivenessEvaluator> effectiveness = new LinkedHashMap<>();
+        if (qrels != null) {
+            for (int numOfTerms : EXPANSION_TERMS) {
+                effectiveness.put(numOfTerms, new EffectivenessEvaluator(qrels));
+            }
+        }
 
-                //expanded query x = 5
-                queryResult = pseudoRelevanceFeedback(rankedResults.get(0), query, 5);
+        //read the queries one at a time, in file order
+        try (QueryFileReader queries = new QueryFileReader(fileName)) {
+            while (queries.next()) {
+                String id = queries.getId();
+                Map<Integer, List<WeightedDocument>> expandedResults = new LinkedHashMap<>();
+                evaluateExpandedQuery(queries.getText()).forEach((numOfTerms, rankedResults) ->
+                        expandedResults.put(numOfTerms, toExternalIds(rankedResults)));
+                //save the results of each expansion level
+                expandedResults.forEach((numOfTerms, rankedResults) ->
+                        saveExpandedQueryResultToFile(rankedResults, id, "ExpandedQueryResult" + numOfTerms + ".txt"));
+                //a query without results counts for every level, judgements have numeric query ids
+                if (!effectiveness.isEmpty() && id.matches("\\d+")) {
+                    effectiveness.forEach((numOfTerms, evaluator) -> evaluator.add(Integer.parseInt(id),
+                            expandedResults.getOrDefault(numOfTerms, Collections.emptyList())));
+                }
+            }
+        } catch (IOException ioe) {
+            System.out.println(Arrays.toString(ioe.getStackTrace()));
+        }
 
-                //ranked query results for expanded query
-                rankedResults = evaluateQuery(queryResult);
+        //save the mean effectiveness of each expansion level
+        if (!effectiveness.isEmpty()) {
+            saveEffectivenessToFile(effectiveness, "Effectiveness.csv");
+        }
 
-                //save result
-                saveExpandedQueryResultToFile(rankedResults, id, "ExpandedQueryResult" + 5 + ".txt");
-            }
+        //save the metrics summary
+        if (metrics != null) {
+            metrics.saveToFile("QueryMetrics.json");
+            metrics.saveToFile("QueryMetrics.csv");
+        }
 
-        });
+        //hit rate of the cache of mapped postings
+        if (getPostingCache() != null) {
+            System.err.println("Posting cache: " + getPostingCache().toJson());
+        }
 
     }
 
 
     public static void main(String[] args) {
-        QueryEvaluator queryEvaluator = new QueryEvaluator(args[0]); //pass documents.txt and queries.xml
+        //-Dstopwords=file replaces the default stopwords, one word per line
+        //-DindexStopwords=true keeps the stopword positions for proximity queries
+        //-DreorderDocuments=true gives documents sharing terms close internal ids
+        QueryEvaluator queryEvaluator = new QueryEvaluator(args[0], true,
+                StopwordSet.forName(System.getProperty("stopwords")),
+                Boolean.getBoolean("indexStopwords"),
+                Boolean.getBoolean("reorderDocuments")); //pass documents.txt and queries.xml
+        //-Dindex.file=file reads the postings from a mapped file, through a cache of -Dindex.cacheBytes
+        queryEvaluator.configurePostingFile();
+        if (args.length > 2) {
+            //optional number of feedback documents
+            queryEvaluator.setFeedbackDocuments(Integer.valueOf(args[2]));
+        }
+        if (args.length > 3) {
+            //optional scorer: tfidf, bm25 or ql
+            queryEvaluator.setScorer(Scorer.forName(args[3]));
+        }
+        //-Dimpact.bits=n evaluates regular terms score-at-a-time on n bit impacts
+        queryEvaluator.configureImpactIndex();
+        //-Dmetrics=true records per stage latencies, -Dmetrics.allocation=true also allocated bytes
+        if (Boolean.getBoolean("metrics") || Boolean.getBoolean("metrics.allocation")) {
+            queryEvaluator.setMetrics(new QueryMetrics(Boolean.getBoolean("metrics.allocation")));
+        }
+        //-DslowQueryMillis=n logs the queries taking at least n milliseconds to SlowQueries.log
+        SlowQueryLog slowQueryLog = null;
+        if (System.getProperty("slowQueryMillis") != null) {
+            try {
+                slowQueryLog = new SlowQueryLog(System.getProperty("slowQueryLog", "SlowQueries.log"),
+                        Long.getLong("slowQueryMillis"), 1024);
+                queryEvaluator.setSlowQueryLog(slowQueryLog);
+            } catch (IOException ioe) {
+                System.out.println(Arrays.toString(ioe.getStackTrace()));
+            }
+        }
+        //-Dqrels=file measures each expansion level against relevance judgements, saved to Effectiveness.csv
+        if (System.getProperty("qrels") != null) {
+            try {
+                queryEvaluator.setQrels(Qrels.load(System.getProperty("qrels")));
+            } catch (IOException ioe) {
+                System.out.println(Arrays.toString(ioe.getStackTrace()));
+            }
+        }
         queryEvaluator.run(args[1]);
+        if (slowQueryLog != null) {
+            try {
+                slowQueryLog.close();
+                if (slowQueryLog.getDropped() > 0) {
+                    System.err.println(slowQueryLog.getDropped() + " slow queries were not logged");
+                }
+            } catch (IOException ioe) {
+                System.out.println(Arrays.toString(ioe.getStackTrace()));
+            }
+        }
         //queryEvaluator.run();
 
     }
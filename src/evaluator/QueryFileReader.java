@@ -0,0 +1,214 @@
+package evaluator;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the queries of a query file with format <query><number>1</number><text>battery</text></query>
+ * one at a time, in file order. Only the current query is kept in memory, and the elements
+ * of a query may span several lines
+ */
+public class QueryFileReader implements AutoCloseable {
+    private Reader reader;
+    private int lineNumber = 1;
+    //a character read ahead, -2 if none
+    private int unread = -2;
+
+    //the current query
+    private String id;
+    private String text;
+
+    private StringBuilder buffer = new StringBuilder();
+
+    public QueryFileReader(String fileName) throws IOException {
+        this(new BufferedReader(new FileReader(fileName)));
+    }
+
+    QueryFileReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next query, which has both a number and a text within the same query element.
+     * A query element closed before it has both is skipped with a warning
+     *
+     * @return false at the end of the file
+     * @throws IOException if the file cannot be read or an element is not closed
+     */
+    public boolean next() throws IOException {
+        String number = null;
+        String content = null;
+        String tag;
+        while ((tag = nextTag()) != null) {
+            if (tag.equals("query")) {
+                number = null;
+                content = null;
+            } else if (tag.equals("/query") && (number != null || content != null)) {
+                System.err.println("Skipping a query without " + (number == null ? "a number" : "a text")
+                        + " at line " + lineNumber);
+                number = null;
+                content = null;
+            } else if (tag.equals("number")) {
+                number = readContent(tag);
+            } else if (tag.equals("text")) {
+                content = readContent(tag);
+            }
+            if (number != null && content != null) {
+                id = number.trim();
+                text = content;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Skips to the next tag, comments and declarations included
+     *
+     * @return the tag name, starting with / for closing tags, null at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private String nextTag() throws IOException {
+        int character;
+        while ((character = read()) != -1 && character != '<') {
+            //skips the text between elements
+        }
+        if (character == -1) {
+            return null;
+        }
+        return readTag();
+    }
+
+    //reads a tag after its <, return its name
+    private String readTag() throws IOException {
+        buffer.setLength(0);
+        int character;
+        boolean name = true;
+        while ((character = read()) != '>') {
+            if (character == -1) {
+                throw new IOException("Unexpected end of file in a tag at line " + lineNumber);
+            }
+            if (Character.isWhitespace(character)) {
+                //skips the attributes
+                name = false;
+            } else if (name) {
+                buffer.append((char) character);
+            }
+            if (buffer.length() == 3 && buffer.toString().equals("!--")) {
+                skipComment();
+                return "!--";
+            }
+        }
+        return buffer.toString();
+    }
+
+    //skips the rest of a comment, up to -->
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        int character;
+        while ((character = read()) != -1) {
+            if (character == '>' && dashes >= 2) {
+                return;
+            }
+            dashes = character == '-' ? dashes + 1 : 0;
+        }
+        throw new IOException("Unexpected end of file in a comment at line " + lineNumber);
+    }
+
+    /**
+     * Reads the text of an element up to its closing tag, decoding character references
+     *
+     * @param tag the name of the element
+     * @return the text of the element
+     * @throws IOException if the element contains another element or is not closed
+     */
+    private String readContent(String tag) throws IOException {
+        StringBuilder content = new StringBuilder();
+        int character;
+        while ((character = read()) != '<') {
+            if (character == -1) {
+                throw new IOException("Unexpected end of file in <" + tag + "> at line " + lineNumber);
+            }
+            if (character == '&') {
+                content.append(readReference());
+            } else {
+                content.append((char) character);
+            }
+        }
+        String closingTag = readTag();
+        if (!closingTag.equals("/" + tag)) {
+            throw new IOException("Unexpected <" + closingTag + "> in <" + tag + "> at line " + lineNumber);
+        }
+        return content.toString();
+    }
+
+    //reads a character reference after its &, return the character, or the reference if it is unknown
+    private String readReference() throws IOException {
+        buffer.setLength(0);
+        int character;
+        while (buffer.length() < 10 && (character = read()) != -1) {
+            if (character != ';' && character != '#' && !Character.isLetterOrDigit(character)) {
+                //not a reference, the character is read again as text
+                unread = character;
+                break;
+            }
+            if (character == ';') {
+                String reference = buffer.toString();
+                switch (reference) {
+                    case "amp":
+                        return "&";
+                    case "lt":
+                        return "<";
+                    case "gt":
+                        return ">";
+                    case "quot":
+                        return "\"";
+                    case "apos":
+                        return "'";
+                    default:
+                        try {
+                            if (reference.startsWith("#x")) {
+                                return new String(Character.toChars(Integer.parseInt(reference.substring(2), 16)));
+                            } else if (reference.startsWith("#")) {
+                                return new String(Character.toChars(Integer.parseInt(reference.substring(1))));
+                            }
+                        } catch (IllegalArgumentException iae) {
+                            //not a valid character, kept as is
+                        }
+                        return "&" + reference + ";";
+                }
+            }
+            buffer.append((char) character);
+        }
+        return "&" + buffer;
+    }
+
+    //reads a character, counting lines
+    private int read() throws IOException {
+        if (unread != -2) {
+            int character = unread;
+            unread = -2;
+            return character;
+        }
+        int character = reader.read();
+        if (character == '\n') {
+            lineNumber++;
+        }
+        return character;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
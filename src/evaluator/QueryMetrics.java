@@ -0,0 +1,126 @@
+package evaluator;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms per query stage and work counters, aggregated over the traces
+ * of all the queries evaluated. Safe to use from several query threads
+ */
+public class QueryMetrics {
+    private boolean trackAllocation;
+
+    private LatencyHistogram[] stageLatencies = new LatencyHistogram[QueryStage.values().length];
+    private LongAdder[] stageAllocatedBytes = new LongAdder[QueryStage.values().length];
+    private LongAdder postingsScanned = new LongAdder();
+    private LongAdder documentsScored = new LongAdder();
+
+    /**
+     * @param trackAllocation whether to also measure the bytes allocated by each stage
+     */
+    public QueryMetrics(boolean trackAllocation) {
+        this.trackAllocation = trackAllocation;
+        for (int i = 0; i < stageLatencies.length; i++) {
+            stageLatencies[i] = new LatencyHistogram();
+            stageAllocatedBytes[i] = new LongAdder();
+        }
+    }
+
+    public boolean isTrackingAllocation() {
+        return trackAllocation;
+    }
+
+    /**
+     * Adds the trace of a finished query. Stages the query did not go through are not recorded
+     *
+     * @param trace a stopped trace
+     */
+    void record(QueryTrace trace) {
+        for (QueryStage stage : QueryStage.values()) {
+            long nanos = trace.getStageNanos(stage);
+            if (nanos > 0) {
+                stageLatencies[stage.ordinal()].record(nanos);
+                stageAllocatedBytes[stage.ordinal()].add(trace.getStageAllocatedBytes(stage));
+            }
+        }
+        postingsScanned.add(trace.getPostingsScanned());
+        documentsScored.add(trace.getDocumentsScored());
+    }
+
+    public LatencyHistogram getLatencies(QueryStage stage) {
+        return stageLatencies[stage.ordinal()];
+    }
+
+    public long getQueryCount() {
+        return stageLatencies[QueryStage.TOTAL.ordinal()].getCount();
+    }
+
+    /**
+     * Summary in JSON format, latencies in nanoseconds
+     *
+     * @return a JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"queries\":").append(getQueryCount())
+                .append(",\"postingsScanned\":").append(postingsScanned.sum())
+                .append(",\"documentsScored\":").append(documentsScored.sum())
+                .append(",\"stages\":{");
+        for (QueryStage stage : QueryStage.values()) {
+            LatencyHistogram latencies = stageLatencies[stage.ordinal()];
+            if (stage.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(stage.name().toLowerCase()).append("\":{")
+                    .append("\"count\":").append(latencies.getCount())
+                    .append(",\"meanNanos\":").append(String.format(Locale.ROOT, "%.1f", latencies.getMean()))
+                    .append(",\"p50Nanos\":").append(latencies.getPercentile(50))
+                    .append(",\"p90Nanos\":").append(latencies.getPercentile(90))
+                    .append(",\"p99Nanos\":").append(latencies.getPercentile(99))
+                    .append(",\"maxNanos\":").append(latencies.getMax());
+            if (trackAllocation) {
+                json.append(",\"allocatedBytes\":").append(stageAllocatedBytes[stage.ordinal()].sum());
+            }
+            json.append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Summary in CSV format, one line per stage, latencies in nanoseconds
+     *
+     * @return the CSV lines with a header
+     */
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder("stage,count,mean_ns,p50_ns,p90_ns,p99_ns,max_ns,allocated_bytes\n");
+        for (QueryStage stage : QueryStage.values()) {
+            LatencyHistogram latencies = stageLatencies[stage.ordinal()];
+            csv.append(stage.name().toLowerCase())
+                    .append(',').append(latencies.getCount())
+                    .append(',').append(String.format(Locale.ROOT, "%.1f", latencies.getMean()))
+                    .append(',').append(latencies.getPercentile(50))
+                    .append(',').append(latencies.getPercentile(90))
+                    .append(',').append(latencies.getPercentile(99))
+                    .append(',').append(latencies.getMax())
+                    .append(',').append(trackAllocation ? String.valueOf(stageAllocatedBytes[stage.ordinal()].sum()) : "")
+                    .append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Saves the summary to a file, in CSV format if the file name ends with .csv, JSON otherwise
+     *
+     * @param fileName the name of the file
+     */
+    public void saveToFile(String fileName) {
+        try (PrintWriter writer = new PrintWriter(fileName)) {
+            writer.print(fileName.endsWith(".csv") ? toCsv() : toJson() + "\n");
+        } catch (FileNotFoundException fnfe) {
+            System.out.println(Arrays.toString(fnfe.getStackTrace()));
+        }
+    }
+}
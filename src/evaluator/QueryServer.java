@@ -0,0 +1,402 @@
+package evaluator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Serves queries over HTTP from an index that is built once and kept in memory.
+ * Queries are evaluated by a fixed number of threads with a bounded queue, requests that do not fit
+ * are rejected with 503 and requests that do not finish in time are answered with 504.
+ * The index is served as immutable versions: each query reads the current version once and keeps it. Reloads,
+ * added documents and statistics build a new version next to the current one, one change at a time, and swap it in
+ * atomically, so queries never wait for them. A version is reclaimed when the last query holding it finishes
+ *
+ * Endpoints:
+ * GET /query?q=query[&k=10][&expand=true] ranked documents of a query, or of each expansion level
+ * POST /reload[?documents=file] rebuilds the index from the documents file, without the added documents
+ * POST /documents[?documents=file] adds the documents of the body, or of a file, to the index
+ * GET /metrics per stage latency metrics, when enabled
+ * GET /cache hit rate and size of the cache of mapped postings, when the postings are mapped
+ * GET /statistics the term statistics of the index, as a shard of a collection
+ * POST /statistics sets the term statistics of the whole collection, sent by a ShardCoordinator
+ */
+public class QueryServer {
+    //number of ranked documents returned by default
+    private static final int DEFAULT_RESULTS = 10;
+
+    private HttpServer server;
+    private ThreadPoolExecutor queryExecutor;
+    private ExecutorService exchangeExecutor;
+    private long timeoutMillis;
+
+    //builds an evaluator from a documents file
+    private Function<String, QueryEvaluator> loader;
+    private volatile String documentsFile;
+    private AtomicReference<QueryEvaluator> evaluator = new AtomicReference<>();
+    private final Object reloadLock = new Object();
+
+    /**
+     * Builds the index and binds the server, call start to accept requests
+     *
+     * @param documentsFile the documents to index
+     * @param loader        builds a configured evaluator from a documents file
+     * @param port          the port to listen on
+     * @param threads       the number of queries evaluated at the same time
+     * @param queueCapacity the number of queries waiting for a thread before new ones are rejected
+     * @param timeoutMillis the maximum time a request waits for its query
+     * @throws IOException if the port cannot be bound
+     */
+    QueryServer(String documentsFile, Function<String, QueryEvaluator> loader, int port, int threads,
+                int queueCapacity, long timeoutMillis) throws IOException {
+        this.documentsFile = documentsFile;
+        this.loader = loader;
+        this.timeoutMillis = timeoutMillis;
+        this.evaluator.set(loader.apply(documentsFile));
+
+        this.queryExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity));
+        //exchanges only wait for their query or are rejected right away
+        this.exchangeExecutor = Executors.newCachedThreadPool();
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.setExecutor(exchangeExecutor);
+        this.server.createContext("/query", this::handleQuery);
+        this.server.createContext("/reload", this::handleReload);
+        this.server.createContext("/documents", this::handleDocuments);
+        this.server.createContext("/metrics", this::handleMetrics);
+        this.server.createContext("/cache", this::handleCache);
+        this.server.createContext("/statistics", this::handleStatistics);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and waits for the running queries
+     */
+    public void stop() {
+        server.stop(0);
+        queryExecutor.shutdown();
+        try {
+            queryExecutor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        exchangeExecutor.shutdown();
+    }
+
+    /**
+     * Evaluates a query on the current index
+     *
+     * @param exchange the request, with the query in the q parameter or in the body
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleQuery(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = getParameters(exchange);
+        String query = parameters.containsKey("q") ? parameters.get("q") : readBody(exchange).trim();
+        if (query.isEmpty()) {
+            send(exchange, 400, "{\"error\":\"missing query\"}");
+            return;
+        }
+        boolean expand = Boolean.parseBoolean(parameters.get("expand"));
+        int numOfResults;
+        try {
+            numOfResults = Integer.parseInt(parameters.getOrDefault("k", String.valueOf(DEFAULT_RESULTS)));
+        } catch (NumberFormatException nfe) {
+            send(exchange, 400, "{\"error\":\"invalid k\"}");
+            return;
+        }
+        if (numOfResults < 1) {
+            send(exchange, 400, "{\"error\":\"k must be at least 1\"}");
+            return;
+        }
+
+        //the query keeps the index it started with, even if a reload swaps it
+        QueryEvaluator snapshot = evaluator.get();
+        Future<String> response;
+        try {
+            response = queryExecutor.submit(() -> expand
+                    ? toJson(snapshot, query, snapshot.evaluateExpandedQuery(query), numOfResults)
+                    : toJson(snapshot, query, Collections.singletonMap(0, snapshot.evaluateQuery(query)),
+                    numOfResults));
+        } catch (RejectedExecutionException ree) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, "{\"error\":\"too many queries\"}");
+            return;
+        }
+
+        try {
+            send(exchange, 200, response.get(timeoutMillis, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException te) {
+            //a queued query is dropped, a running one finishes but its result is discarded
+            response.cancel(true);
+            send(exchange, 504, "{\"error\":\"query timed out\"}");
+        } catch (ExecutionException ee) {
+            send(exchange, 500, "{\"error\":" + SlowQueryLog.quote(String.valueOf(ee.getCause())) + "}");
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, "{\"error\":\"server stopping\"}");
+        }
+    }
+
+    /**
+     * Builds a new index and swaps it with the current one. Reloads run one at a time
+     *
+     * @param exchange the request, with an optional documents file parameter
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleReload(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, "{\"error\":\"use POST\"}");
+            return;
+        }
+        String fileName = getParameters(exchange).getOrDefault("documents", documentsFile);
+        QueryEvaluator loaded;
+        long start = System.nanoTime();
+        try {
+            synchronized (reloadLock) {
+                loaded = loader.apply(fileName);
+                //keeps the current index if the documents could not be read
+                if (loaded.getCollectionSize() == 0) {
+                    send(exchange, 500, "{\"error\":"
+                            + SlowQueryLog.quote("no documents indexed from " + fileName) + "}");
+                    return;
+                }
+                evaluator.set(loaded);
+                documentsFile = fileName;
+            }
+        } catch (RuntimeException re) {
+            send(exchange, 500, "{\"error\":" + SlowQueryLog.quote(String.valueOf(re)) + "}");
+            return;
+        }
+        send(exchange, 200, "{\"documents\":" + SlowQueryLog.quote(fileName)
+                + ",\"version\":" + loaded.getVersion()
+                + ",\"numOfDocs\":" + loaded.getCollectionStatistics().getDocumentCount()
+                + ",\"numOfTerms\":" + loaded.dictionary.size()
+                + ",\"millis\":" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "}");
+    }
+
+    /**
+     * Adds documents to a new version of the index and swaps it with the current one.
+     * Queries keep running on the current version while the new one is built
+     *
+     * @param exchange the request, with the documents in the body or in the file of the documents parameter
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleDocuments(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, "{\"error\":\"use POST\"}");
+            return;
+        }
+        String fileName = getParameters(exchange).get("documents");
+        QueryEvaluator current;
+        QueryEvaluator next;
+        long start = System.nanoTime();
+        try (BufferedReader documents = new BufferedReader(fileName != null ? new FileReader(fileName)
+                : new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            synchronized (reloadLock) {
+                current = evaluator.get();
+                next = current.withDocuments(documents);
+                evaluator.set(next);
+            }
+        } catch (FileNotFoundException fnfe) {
+            send(exchange, 400, "{\"error\":" + SlowQueryLog.quote("no file " + fileName) + "}");
+            return;
+        } catch (RuntimeException re) {
+            send(exchange, 500, "{\"error\":" + SlowQueryLog.quote(String.valueOf(re)) + "}");
+            return;
+        }
+        send(exchange, 200, "{\"version\":" + next.getVersion()
+                + ",\"added\":" + (next.getCollectionSize() - current.getCollectionSize())
+                + ",\"numOfDocs\":" + next.getCollectionStatistics().getDocumentCount()
+                + ",\"numOfTerms\":" + next.dictionary.size()
+                + ",\"millis\":" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "}");
+    }
+
+    /**
+     * Sends the per stage latency metrics of the current index
+     *
+     * @param exchange the request
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        QueryMetrics metrics = evaluator.get().getMetrics();
+        if (metrics == null) {
+            send(exchange, 404, "{\"error\":\"metrics are disabled\"}");
+        } else {
+            send(exchange, 200, metrics.toJson());
+        }
+    }
+
+    /**
+     * Sends the hit rate and size of the cache of mapped postings of the current index
+     *
+     * @param exchange the request
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleCache(HttpExchange exchange) throws IOException {
+        PostingCache postingCache = evaluator.get().getPostingCache();
+        if (postingCache == null) {
+            send(exchange, 404, "{\"error\":\"postings are not mapped\"}");
+        } else {
+            send(exchange, 200, postingCache.toJson());
+        }
+    }
+
+    /**
+     * Sends the term statistics of the current index, or swaps in a new version of the index weighing terms
+     * with the statistics of the collection it is a shard of. The impact index, if any, is rebuilt with them
+     *
+     * @param exchange the request, with the statistics of the collection in the body of a POST
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleStatistics(HttpExchange exchange) throws IOException {
+        QueryEvaluator snapshot = evaluator.get();
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            StringWriter statistics = new StringWriter();
+            snapshot.getShardStatistics().write(statistics);
+            send(exchange, 200, "text/plain", statistics.toString());
+            return;
+        }
+
+        TermStatistics statistics;
+        try (BufferedReader body = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            statistics = TermStatistics.read(body);
+        } catch (IOException ioe) {
+            send(exchange, 400, "{\"error\":" + SlowQueryLog.quote(ioe.getMessage()) + "}");
+            return;
+        }
+        synchronized (reloadLock) {
+            evaluator.set(evaluator.get().withGlobalStatistics(statistics));
+        }
+        send(exchange, 200, "{\"numOfDocs\":" + statistics.getDocumentCount()
+                + ",\"numOfTerms\":" + statistics.size() + "}");
+    }
+
+    /**
+     * Formats ranked documents as JSON
+     *
+     * @param index        the index the documents were ranked on
+     * @param query        the query
+     * @param results      the ranked documents of each expansion level
+     * @param numOfResults the maximum number of documents of each level
+     * @return a JSON object
+     */
+    private static String toJson(PositionalInvertedIndex index, String query,
+                                 Map<Integer, List<WeightedDocument>> results, int numOfResults) {
+        StringBuilder json = new StringBuilder("{\"query\":").append(SlowQueryLog.quote(query)).append(",\"results\":{");
+        boolean firstLevel = true;
+        for (Map.Entry<Integer, List<WeightedDocument>> level : results.entrySet()) {
+            json.append(firstLevel ? "" : ",").append('"').append(level.getKey()).append("\":[");
+            List<WeightedDocument> rankedResults = level.getValue();
+            for (int i = 0; i < Math.min(numOfResults, rankedResults.size()); i++) {
+                json.append(i > 0 ? "," : "").append("{\"docId\":")
+                        .append(index.getExternalId(rankedResults.get(i).getDocId()))
+                        .append(",\"score\":").append(rankedResults.get(i).getWeight()).append('}');
+            }
+            json.append(']');
+            firstLevel = false;
+        }
+        return json.append("}}").toString();
+    }
+
+    //return the decoded parameters of the request URI
+    static Map<String, String> getParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    //return the request body
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = body.read(buffer); read > 0; read = body.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    //sends a JSON response and closes the exchange
+    static void send(HttpExchange exchange, int status, String json) throws IOException {
+        send(exchange, status, "application/json", json);
+    }
+
+    //sends a response and closes the exchange
+    static void send(HttpExchange exchange, int status, String contentType, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    /**
+     * Starts a server on documents.txt
+     * Args: documents.txt [port] [feedbackDocs] [tfidf|bm25|ql]
+     * -Dserver.threads, -Dserver.queue and -Dserver.timeoutMillis bound the query evaluation
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int feedbackDocuments = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        String scorer = args.length > 3 ? args[3] : "tfidf";
+        StopwordSet stopwords = StopwordSet.forName(System.getProperty("stopwords"));
+        QueryMetrics metrics = Boolean.getBoolean("metrics") || Boolean.getBoolean("metrics.allocation")
+                ? new QueryMetrics(Boolean.getBoolean("metrics.allocation")) : null;
+
+        Function<String, QueryEvaluator> loader = documentsFile -> {
+            QueryEvaluator queryEvaluator = new QueryEvaluator(documentsFile, false, stopwords,
+                    Boolean.getBoolean("indexStopwords"), Boolean.getBoolean("reorderDocuments"));
+            queryEvaluator.configurePostingFile();
+            queryEvaluator.setFeedbackDocuments(feedbackDocuments);
+            queryEvaluator.setScorer(Scorer.forName(scorer));
+            queryEvaluator.setMetrics(metrics);
+            queryEvaluator.configureImpactIndex();
+            return queryEvaluator;
+        };
+
+        QueryServer queryServer = new QueryServer(args[0], loader, port,
+                Integer.getInteger("server.threads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("server.queue", 64),
+                Long.getLong("server.timeoutMillis", 5000));
+        Runtime.getRuntime().addShutdownHook(new Thread(queryServer::stop));
+        queryServer.start();
+        System.err.println("Serving queries on http://localhost:" + queryServer.getPort() + "/query");
+    }
+}
@@ -0,0 +1,21 @@
+package evaluator;
+
+/**
+ * Stages of the evaluation of a query
+ */
+public enum QueryStage {
+    //getQueryCollection
+    PARSE,
+    //evaluateProximityQuery
+    PROXIMITY,
+    //evaluateRegularQuery
+    REGULAR,
+    //merge of the regular and proximity weights
+    MERGE,
+    //sort of the ranked documents
+    RANK,
+    //ranking of the pseudo-relevance feedback expansion terms
+    FEEDBACK,
+    //the whole query
+    TOTAL
+}
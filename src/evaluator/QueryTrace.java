@@ -0,0 +1,211 @@
+package evaluator;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time, allocated bytes and work counters of the evaluation of one query.
+ * A trace is used by one thread. Time is split into stages with lap, which adds the time
+ * since the previous lap to a stage. The DISABLED trace records nothing.
+ * With recordDetails, the trace also keeps the query and the sizes of the postings and
+ * intersections of each clause, for the slow query log
+ */
+public class QueryTrace {
+    static final QueryTrace DISABLED = new QueryTrace(false, false, false);
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = threadBean();
+
+    private boolean enabled;
+    private boolean trackAllocation;
+
+    private long[] stageNanos = new long[QueryStage.values().length];
+    private long[] stageAllocatedBytes = new long[QueryStage.values().length];
+    private long startNanos;
+    private long lapNanos;
+    private long startAllocatedBytes;
+    private long lapAllocatedBytes;
+
+    private long postingsScanned;
+    private long documentsScored;
+
+    private boolean recordDetails;
+    private String query;
+    private QueryCollection queryCollection;
+    private TermDictionary dictionary;
+    private int resultCount;
+    //{term id, posting list size} of each regular query term
+    private List<int[]> termPostings;
+    //{proximity, term one, term two, postings one, postings two, intersection docs, matching docs} of each clause
+    private List<int[]> proximityClauses;
+    //docs in the intersection of the results of two proximity clauses
+    private List<Integer> clauseIntersections;
+
+    QueryTrace(boolean enabled, boolean trackAllocation, boolean recordDetails) {
+        this.enabled = enabled;
+        this.trackAllocation = trackAllocation && THREAD_BEAN != null;
+        this.recordDetails = recordDetails;
+        if (recordDetails) {
+            termPostings = new ArrayList<>();
+            proximityClauses = new ArrayList<>();
+            clauseIntersections = new ArrayList<>();
+        }
+    }
+
+    //return the thread bean if it can measure allocated bytes, null otherwise
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            com.sun.management.ThreadMXBean bean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            return bean.isThreadAllocatedMemorySupported() ? bean : null;
+        } catch (ClassCastException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    //return the bytes allocated by the current thread
+    private static long allocatedBytes() {
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isRecordingDetails() {
+        return recordDetails;
+    }
+
+    //starts timing the query
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        lapNanos = startNanos;
+        if (trackAllocation) {
+            startAllocatedBytes = allocatedBytes();
+            lapAllocatedBytes = startAllocatedBytes;
+        }
+    }
+
+    //adds the time since the previous lap to a stage
+    void lap(QueryStage stage) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        stageNanos[stage.ordinal()] += now - lapNanos;
+        lapNanos = now;
+        if (trackAllocation) {
+            long allocated = allocatedBytes();
+            stageAllocatedBytes[stage.ordinal()] += allocated - lapAllocatedBytes;
+            lapAllocatedBytes = allocated;
+        }
+    }
+
+    //stops timing the query, the time since start is the TOTAL stage
+    void stop() {
+        if (!enabled) {
+            return;
+        }
+        stageNanos[QueryStage.TOTAL.ordinal()] = System.nanoTime() - startNanos;
+        if (trackAllocation) {
+            stageAllocatedBytes[QueryStage.TOTAL.ordinal()] = allocatedBytes() - startAllocatedBytes;
+        }
+    }
+
+    void addPostingsScanned(long postings) {
+        if (enabled) {
+            postingsScanned += postings;
+        }
+    }
+
+    void addDocumentsScored(long documents) {
+        if (enabled) {
+            documentsScored += documents;
+        }
+    }
+
+    /**
+     * Keeps the query being evaluated
+     *
+     * @param rawQuery   the query string
+     * @param collection the parsed query
+     * @param terms      the dictionary of the term ids in the parsed query
+     */
+    void setQuery(String rawQuery, QueryCollection collection, TermDictionary terms) {
+        if (recordDetails) {
+            query = rawQuery;
+            queryCollection = collection;
+            dictionary = terms;
+        }
+    }
+
+    void setResultCount(int count) {
+        resultCount = count;
+    }
+
+    void addTermPostings(int termId, int postings) {
+        if (recordDetails) {
+            termPostings.add(new int[]{termId, postings});
+        }
+    }
+
+    void addProximityClause(ProximityQuery clause, int postingsOne, int postingsTwo, int intersection, int matches) {
+        if (recordDetails) {
+            proximityClauses.add(new int[]{clause.getTermProximity(), clause.getTermOne(), clause.getTermTwo(),
+                    postingsOne, postingsTwo, intersection, matches});
+        }
+    }
+
+    void addClauseIntersection(int documents) {
+        if (recordDetails) {
+            clauseIntersections.add(documents);
+        }
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public QueryCollection getQueryCollection() {
+        return queryCollection;
+    }
+
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    public List<int[]> getTermPostings() {
+        return termPostings;
+    }
+
+    public List<int[]> getProximityClauses() {
+        return proximityClauses;
+    }
+
+    public List<Integer> getClauseIntersections() {
+        return clauseIntersections;
+    }
+
+    public long getStageNanos(QueryStage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    public long getStageAllocatedBytes(QueryStage stage) {
+        return stageAllocatedBytes[stage.ordinal()];
+    }
+
+    public long getPostingsScanned() {
+        return postingsScanned;
+    }
+
+    public long getDocumentsScored() {
+        return documentsScored;
+    }
+}
@@ -0,0 +1,187 @@
+package evaluator;
+
+import java.util.Arrays;
+
+/**
+ * Orders documents so that documents sharing terms get close ids, which makes the gaps
+ * between the docIds of the posting lists smaller.
+ * Recursive graph bisection: the documents are split in two halves, and documents are swapped
+ * between the halves while this lowers the estimated cost of encoding the gaps of both halves,
+ * then each half is split again, down to small partitions
+ */
+public class RecursiveGraphBisection {
+    //swap rounds of each bisection
+    static final int ITERATIONS = 20;
+
+    //partitions of at most this size are not split
+    static final int MIN_PARTITION_SIZE = 16;
+
+    //distinct term ids of each document, without the terms of a single document
+    private int[][] documentTerms;
+
+    //number of documents of each half containing each term, in the current bisection
+    private int[] leftDegrees;
+    private int[] rightDegrees;
+
+    //gain of moving a document containing a term to the other half, computed once per round
+    private double[] leftMoveGains;
+    private double[] rightMoveGains;
+    private int[] gainRounds;
+    private int round;
+
+    //gain of moving each document to the other half
+    private double[] documentGains;
+
+    //log2 of 0 to the number of documents + 1, for the gap costs
+    private double[] log2;
+
+    /**
+     * @param documentTerms the distinct term ids of each document
+     * @param numOfTerms    the number of term ids
+     */
+    RecursiveGraphBisection(int[][] documentTerms, int numOfTerms) {
+        //a term of a single document has no gap to shorten
+        int[] docFrequencies = new int[numOfTerms];
+        for (int[] terms : documentTerms) {
+            for (int termId : terms) {
+                docFrequencies[termId]++;
+            }
+        }
+        this.documentTerms = new int[documentTerms.length][];
+        for (int i = 0; i < documentTerms.length; i++) {
+            this.documentTerms[i] = Arrays.stream(documentTerms[i])
+                    .filter(termId -> docFrequencies[termId] > 1).toArray();
+        }
+
+        this.leftDegrees = new int[numOfTerms];
+        this.rightDegrees = new int[numOfTerms];
+        this.leftMoveGains = new double[numOfTerms];
+        this.rightMoveGains = new double[numOfTerms];
+        this.gainRounds = new int[numOfTerms];
+        this.documentGains = new double[documentTerms.length];
+        this.log2 = new double[documentTerms.length + 2];
+        for (int i = 1; i < log2.length; i++) {
+            log2[i] = Math.log(i) / Math.log(2);
+        }
+    }
+
+    /**
+     * Orders the documents
+     *
+     * @return the index of the documents in their new order
+     */
+    int[] order() {
+        int[] documents = new int[documentTerms.length];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = i;
+        }
+        bisect(documents, 0, documents.length);
+        return documents;
+    }
+
+    /**
+     * Splits documents[from, to) in two halves of documents sharing terms, then each half
+     *
+     * @param documents the documents being ordered
+     * @param from      the first document of the partition
+     * @param to        the end of the partition
+     */
+    private void bisect(int[] documents, int from, int to) {
+        if (to - from <= MIN_PARTITION_SIZE) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        Integer[] left = new Integer[middle - from];
+        Integer[] right = new Integer[to - middle];
+
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            countDegrees(documents, from, middle, to);
+            round++;
+            for (int i = from; i < to; i++) {
+                documentGains[documents[i]] = getMoveGain(documents[i], i < middle, middle - from, to - middle);
+            }
+
+            //the documents that gain most from moving are swapped first
+            for (int i = 0; i < left.length; i++) {
+                left[i] = documents[from + i];
+            }
+            for (int i = 0; i < right.length; i++) {
+                right[i] = documents[middle + i];
+            }
+            Arrays.sort(left, (one, two) -> Double.compare(documentGains[two], documentGains[one]));
+            Arrays.sort(right, (one, two) -> Double.compare(documentGains[two], documentGains[one]));
+
+            int swaps = 0;
+            while (swaps < Math.min(left.length, right.length)
+                    && documentGains[left[swaps]] + documentGains[right[swaps]] > 0) {
+                swaps++;
+            }
+            if (swaps == 0) {
+                break;
+            }
+            for (int i = 0; i < left.length; i++) {
+                documents[from + i] = i < swaps ? right[i] : left[i];
+            }
+            for (int i = 0; i < right.length; i++) {
+                documents[middle + i] = i < swaps ? left[i] : right[i];
+            }
+        }
+
+        bisect(documents, from, middle);
+        bisect(documents, middle, to);
+    }
+
+    //counts the documents of each half containing each term
+    private void countDegrees(int[] documents, int from, int middle, int to) {
+        for (int i = from; i < to; i++) {
+            for (int termId : documentTerms[documents[i]]) {
+                leftDegrees[termId] = 0;
+                rightDegrees[termId] = 0;
+            }
+        }
+        for (int i = from; i < to; i++) {
+            int[] degrees = i < middle ? leftDegrees : rightDegrees;
+            for (int termId : documentTerms[documents[i]]) {
+                degrees[termId]++;
+            }
+        }
+    }
+
+    /**
+     * Gain of moving a document to the other half, the decrease of the estimated gap cost of its terms
+     *
+     * @param document    the document
+     * @param inLeft      whether the document is in the left half
+     * @param leftSize    the number of documents of the left half
+     * @param rightSize   the number of documents of the right half
+     * @return the gain, negative if moving the document increases the cost
+     */
+    private double getMoveGain(int document, boolean inLeft, int leftSize, int rightSize) {
+        double gain = 0;
+        for (int termId : documentTerms[document]) {
+            if (gainRounds[termId] != round) {
+                gainRounds[termId] = round;
+                int leftDegree = leftDegrees[termId];
+                int rightDegree = rightDegrees[termId];
+                double cost = cost(leftDegree, leftSize) + cost(rightDegree, rightSize);
+                leftMoveGains[termId] = leftDegree == 0 ? 0
+                        : cost - cost(leftDegree - 1, leftSize) - cost(rightDegree + 1, rightSize);
+                rightMoveGains[termId] = rightDegree == 0 ? 0
+                        : cost - cost(leftDegree + 1, leftSize) - cost(rightDegree - 1, rightSize);
+            }
+            gain += inLeft ? leftMoveGains[termId] : rightMoveGains[termId];
+        }
+        return gain;
+    }
+
+    /**
+     * Estimated bits of the gaps of a term in a partition, log2 of the average gap per document
+     *
+     * @param degree the number of documents of the partition containing the term
+     * @param size   the number of documents of the partition
+     * @return the cost
+     */
+    private double cost(int degree, int size) {
+        return degree * (log2[size] - log2[degree + 1]);
+    }
+}
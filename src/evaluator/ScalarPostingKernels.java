@@ -0,0 +1,106 @@
+package evaluator;
+
+/**
+ * Kernels in plain Java, used when the Vector API is not available and for the short arrays
+ * the vector kernels leave over
+ */
+public class ScalarPostingKernels implements PostingKernels {
+
+    @Override
+    public int intersect(int[] docIdsOne, int[] docIdsTwo, int[] indexesOne, int[] indexesTwo) {
+        return intersect(docIdsOne, 0, docIdsTwo, 0, indexesOne, indexesTwo, 0);
+    }
+
+    /**
+     * Intersects two posting lists on their docIds, from a docId of each list
+     *
+     * @param docIdsOne  the docIds of list one, in increasing order
+     * @param fromOne    the index of the first docId of list one intersected
+     * @param docIdsTwo  the docIds of list two, in increasing order
+     * @param fromTwo    the index of the first docId of list two intersected
+     * @param indexesOne the array the indexes in list one of the common docIds are written to
+     * @param indexesTwo the array the indexes in list two of the common docIds are written to
+     * @param count      the number of common docIds already written
+     * @return the number of common docIds written
+     */
+    static int intersect(int[] docIdsOne, int fromOne, int[] docIdsTwo, int fromTwo, int[] indexesOne,
+                         int[] indexesTwo, int count) {
+        int indexOne = fromOne;
+        int indexTwo = fromTwo;
+        while (indexOne < docIdsOne.length && indexTwo < docIdsTwo.length) {
+            if (docIdsOne[indexOne] == docIdsTwo[indexTwo]) {
+                indexesOne[count] = indexOne++;
+                indexesTwo[count] = indexTwo++;
+                count++;
+            } else if (docIdsOne[indexOne] < docIdsTwo[indexTwo]) {
+                indexOne++;
+            } else {
+                indexTwo++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean matchesWindow(int[] positionsOne, int sizeOne, int[] positionsTwo, int sizeTwo, int window) {
+        return matchesWindow(positionsOne, 0, sizeOne, positionsTwo, 0, sizeTwo, window);
+    }
+
+    /**
+     * Checks if a position of term two follows a position of term one within a window,
+     * from a position of each array
+     *
+     * @param positionsOne the positions of term one, in increasing order
+     * @param fromOne      the first position of term one checked
+     * @param sizeOne      the number of positions of term one
+     * @param positionsTwo the positions of term two, in increasing order
+     * @param fromTwo      the first position of term two checked
+     * @param sizeTwo      the number of positions of term two
+     * @param window       the number of words allowed between the terms
+     * @return true if some position two is after some position one by at most window + 1
+     */
+    static boolean matchesWindow(int[] positionsOne, int fromOne, int sizeOne, int[] positionsTwo, int fromTwo,
+                                 int sizeTwo, int window) {
+        int indexTwo = fromTwo;
+        for (int indexOne = fromOne; indexOne < sizeOne; indexOne++) {
+            int position = positionsOne[indexOne];
+            //skips the positions of term two that are not after this position
+            while (indexTwo < sizeTwo && positionsTwo[indexTwo] <= position) {
+                indexTwo++;
+            }
+            //the first position after this one is the closest
+            if (indexTwo < sizeTwo && positionsTwo[indexTwo] <= position + window + 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int and(long[] wordsOne, long[] wordsTwo, long[] result) {
+        return and(wordsOne, wordsTwo, result, 0);
+    }
+
+    /**
+     * Intersects two bitmaps from a word
+     *
+     * @param wordsOne a bitmap
+     * @param wordsTwo another bitmap
+     * @param result   the array the intersection is written to
+     * @param from     the first word intersected
+     * @return the number of bits set in the intersected words
+     */
+    static int and(long[] wordsOne, long[] wordsTwo, long[] result, int from) {
+        int count = 0;
+        for (int i = from; i < result.length; i++) {
+            result[i] = wordsOne[i] & wordsTwo[i];
+            count += Long.bitCount(result[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
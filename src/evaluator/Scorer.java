@@ -0,0 +1,73 @@
+package evaluator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Scoring function used to weigh a query term in a document.
+ */
+public interface Scorer {
+
+    /**
+     * Weighs a term in a document
+     *
+     * @param termFrequency       the number of occurrences of the term in the document
+     * @param documentFrequency   the number of documents containing the term
+     * @param collectionFrequency the number of occurrences of the term in the collection
+     * @param documentLength      the number of indexed tokens in the document
+     * @param statistics          the statistics of the collection
+     * @return the weight of the term in the document
+     */
+    double score(int termFrequency, int documentFrequency, long collectionFrequency, int documentLength,
+                 CollectionStatistics statistics);
+
+    //name written to the run files
+    String getName();
+
+    /**
+     * Creates a scorer, with its default parameters unless they are given as in bm25(k1=0.9,b=0.4) or ql(mu=1000)
+     *
+     * @param name tfidf, bm25 or ql, with optional parameters
+     * @return the scorer
+     */
+    static Scorer forName(String name) {
+        //parameters between parentheses
+        Map<String, Double> parameters = new HashMap<>();
+        int open = name.indexOf('(');
+        if (open >= 0) {
+            if (!name.endsWith(")")) {
+                throw new IllegalArgumentException("Invalid scorer: " + name);
+            }
+            for (String parameter : name.substring(open + 1, name.length() - 1).split(",")) {
+                String[] pair = parameter.split("=");
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Invalid scorer parameter: " + parameter);
+                }
+                parameters.put(pair[0].trim().toLowerCase(), Double.valueOf(pair[1].trim()));
+            }
+            name = name.substring(0, open);
+        }
+
+        Scorer scorer;
+        switch (name.trim().toLowerCase()) {
+            case "tfidf":
+                scorer = new TfIdfScorer();
+                break;
+            case "bm25":
+                scorer = new Bm25Scorer(parameters.getOrDefault("k1", 1.2), parameters.getOrDefault("b", 0.75));
+                parameters.remove("k1");
+                parameters.remove("b");
+                break;
+            case "ql":
+                scorer = new DirichletScorer(parameters.getOrDefault("mu", 2000.0));
+                parameters.remove("mu");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scorer: " + name);
+        }
+        if (!parameters.isEmpty()) {
+            throw new IllegalArgumentException("Unknown " + scorer.getName() + " parameters: " + parameters.keySet());
+        }
+        return scorer;
+    }
+}
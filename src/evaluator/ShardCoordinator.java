@@ -0,0 +1,485 @@
+package evaluator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves queries over a collection partitioned by documents into shards, each indexed and served by a QueryServer,
+ * in its own process. The coordinator sums the term statistics of the shards and sends the sums back, so each shard
+ * weighs its documents as a single index of the collection would. Each query is sent to every shard, and their
+ * top k documents are merged. Shards that do not answer in time are left out of the ranking, which lists them.
+ * Query expansion needs the term vectors of the feedback documents of every shard and is not supported
+ *
+ * Endpoints:
+ * GET /query?q=query[&k=10] ranked documents of a query, and the shards that did not answer
+ * POST /reload rebuilds the index of every shard and sends them the new statistics of the collection
+ * POST /documents[?documents=file] spreads the documents of the body, or of a file, over the shards and sends them
+ * the new statistics of the collection
+ */
+public class ShardCoordinator {
+    //number of ranked documents returned by default
+    private static final int DEFAULT_RESULTS = 10;
+
+    //docId and score of a ranked document in a shard response
+    private static final Pattern RESULT = Pattern.compile("\\{\"docId\":(-?\\d+),\"score\":([^}]+)}");
+
+    //address printed by a QueryServer once it accepts requests
+    private static final Pattern SERVING = Pattern.compile("Serving queries on (http://\\S+)/query");
+
+    //number of documents added by a shard response to POST /documents
+    private static final Pattern ADDED = Pattern.compile("\"added\":(\\d+)");
+
+    private List<URI> shards;
+    private long shardTimeoutMillis;
+    private HttpClient client = HttpClient.newHttpClient();
+    private HttpServer server;
+    private ExecutorService exchangeExecutor;
+    private List<Process> processes = new ArrayList<>();
+    private final Object reloadLock = new Object();
+    //number of documents spread over the shards by POST /documents, the next one goes to shard documents % shards
+    private int documents;
+
+    //ranked documents merged from the shards, and the shards that are missing from them
+    static class MergedResults {
+        private List<WeightedDocument> rankedResults;
+        private List<Integer> failedShards;
+
+        MergedResults(List<WeightedDocument> rankedResults, List<Integer> failedShards) {
+            this.rankedResults = rankedResults;
+            this.failedShards = failedShards;
+        }
+
+        public List<WeightedDocument> getRankedResults() {
+            return rankedResults;
+        }
+
+        public List<Integer> getFailedShards() {
+            return failedShards;
+        }
+    }
+
+    /**
+     * Sends the statistics of the collection to the shards and binds the server, call start to accept requests
+     *
+     * @param shards             the addresses of the QueryServer of each shard
+     * @param port               the port to listen on
+     * @param shardTimeoutMillis the maximum time a query waits for each shard
+     * @throws IOException if a shard cannot be reached or the port cannot be bound
+     */
+    ShardCoordinator(List<URI> shards, int port, long shardTimeoutMillis) throws IOException {
+        this.shards = shards;
+        this.shardTimeoutMillis = shardTimeoutMillis;
+        broadcastStatistics();
+
+        this.exchangeExecutor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.setExecutor(exchangeExecutor);
+        this.server.createContext("/query", this::handleQuery);
+        this.server.createContext("/reload", this::handleReload);
+        this.server.createContext("/documents", this::handleDocuments);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and stops the shard processes started for this coordinator
+     */
+    public void stop() {
+        server.stop(0);
+        exchangeExecutor.shutdown();
+        for (Process process : processes) {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Sums the term statistics of the shards and sends each shard the sums for its terms
+     *
+     * @return the statistics of the collection
+     * @throws IOException if a shard cannot be reached or rejects the statistics
+     */
+    TermStatistics broadcastStatistics() throws IOException {
+        List<TermStatistics> shardStatistics = new ArrayList<>();
+        TermStatistics collection = new TermStatistics(0, 0);
+        for (URI shard : shards) {
+            String body = send(HttpRequest.newBuilder(shard.resolve("/statistics")).GET().build());
+            TermStatistics statistics = TermStatistics.read(new BufferedReader(new StringReader(body)));
+            shardStatistics.add(statistics);
+            collection.add(statistics);
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            StringWriter body = new StringWriter();
+            collection.restrictTo(shardStatistics.get(i)).write(body);
+            send(HttpRequest.newBuilder(shards.get(i).resolve("/statistics"))
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString())).build());
+        }
+        return collection;
+    }
+
+    /**
+     * Sends a query to every shard and merges their rankings
+     *
+     * @param query        the query
+     * @param numOfResults the maximum number of ranked documents
+     * @return the ranked documents, with the docIds of the documents file, and the shards missing from them
+     */
+    MergedResults evaluateQuery(String query, int numOfResults) {
+        String path = "/query?k=" + numOfResults + "&q=" + URLEncoder.encode(query, StandardCharsets.UTF_8);
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (URI shard : shards) {
+            responses.add(client.sendAsync(HttpRequest.newBuilder(shard.resolve(path))
+                    .timeout(Duration.ofMillis(shardTimeoutMillis)).GET().build(), HttpResponse.BodyHandlers.ofString()));
+        }
+
+        //all shards share the same deadline
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shardTimeoutMillis);
+        List<WeightedDocument> rankedResults = new ArrayList<>();
+        List<Integer> failedShards = new ArrayList<>();
+        for (int i = 0; i < responses.size(); i++) {
+            try {
+                HttpResponse<String> response = responses.get(i).get(Math.max(0, deadline - System.nanoTime()),
+                        TimeUnit.NANOSECONDS);
+                if (response.statusCode() != 200) {
+                    failedShards.add(i);
+                    continue;
+                }
+                Matcher matcher = RESULT.matcher(response.body());
+                while (matcher.find()) {
+                    rankedResults.add(new WeightedDocument(Double.parseDouble(matcher.group(2)),
+                            Integer.parseInt(matcher.group(1))));
+                }
+            } catch (ExecutionException | TimeoutException e) {
+                responses.get(i).cancel(true);
+                failedShards.add(i);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                responses.get(i).cancel(true);
+                failedShards.add(i);
+            }
+        }
+
+        //ranked as by a single index, ties by docId
+        Collections.sort(rankedResults, (docOne, docTwo) -> docOne.getWeight() != docTwo.getWeight()
+                ? Double.compare(docTwo.getWeight(), docOne.getWeight())
+                : Integer.compare(docOne.getDocId(), docTwo.getDocId()));
+        return new MergedResults(rankedResults.subList(0, Math.min(numOfResults, rankedResults.size())),
+                failedShards);
+    }
+
+    /**
+     * Evaluates a query on the shards
+     *
+     * @param exchange the request, with the query in the q parameter
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleQuery(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = QueryServer.getParameters(exchange);
+        String query = parameters.getOrDefault("q", "").trim();
+        if (query.isEmpty()) {
+            QueryServer.send(exchange, 400, "{\"error\":\"missing query\"}");
+            return;
+        }
+        if (Boolean.parseBoolean(parameters.get("expand"))) {
+            QueryServer.send(exchange, 400, "{\"error\":\"query expansion is not supported on shards\"}");
+            return;
+        }
+        int numOfResults;
+        try {
+            numOfResults = Integer.parseInt(parameters.getOrDefault("k", String.valueOf(DEFAULT_RESULTS)));
+        } catch (NumberFormatException nfe) {
+            QueryServer.send(exchange, 400, "{\"error\":\"invalid k\"}");
+            return;
+        }
+        if (numOfResults < 1) {
+            QueryServer.send(exchange, 400, "{\"error\":\"k must be at least 1\"}");
+            return;
+        }
+
+        MergedResults results = evaluateQuery(query, numOfResults);
+        if (results.getFailedShards().size() == shards.size()) {
+            QueryServer.send(exchange, 504, "{\"error\":\"no shard answered\"}");
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"query\":").append(SlowQueryLog.quote(query))
+                .append(",\"results\":{\"0\":[");
+        List<WeightedDocument> rankedResults = results.getRankedResults();
+        for (int i = 0; i < rankedResults.size(); i++) {
+            json.append(i > 0 ? "," : "").append("{\"docId\":").append(rankedResults.get(i).getDocId())
+                    .append(",\"score\":").append(rankedResults.get(i).getWeight()).append('}');
+        }
+        json.append("]},\"failedShards\":").append(results.getFailedShards().toString().replace(" ", "")).append('}');
+        QueryServer.send(exchange, 200, json.toString());
+    }
+
+    /**
+     * Rebuilds the index of every shard from its documents file, then sends them the new statistics.
+     * Queries evaluated during a reload may be weighed with the statistics of the shards only
+     *
+     * @param exchange the request
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleReload(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            QueryServer.send(exchange, 405, "{\"error\":\"use POST\"}");
+            return;
+        }
+        long start = System.nanoTime();
+        TermStatistics collection;
+        try {
+            synchronized (reloadLock) {
+                for (URI shard : shards) {
+                    send(HttpRequest.newBuilder(shard.resolve("/reload"))
+                            .POST(HttpRequest.BodyPublishers.noBody()).build());
+                }
+                collection = broadcastStatistics();
+            }
+        } catch (IOException ioe) {
+            QueryServer.send(exchange, 502, "{\"error\":" + SlowQueryLog.quote(ioe.getMessage()) + "}");
+            return;
+        }
+        QueryServer.send(exchange, 200, "{\"shards\":" + shards.size()
+                + ",\"numOfDocs\":" + collection.getDocumentCount()
+                + ",\"numOfTerms\":" + collection.size()
+                + ",\"millis\":" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "}");
+    }
+
+    /**
+     * Adds documents to the shards, the i-th document going to shard i % numOfShards, then sends them the new
+     * statistics of the collection. Queries evaluated in between may be weighed with statistics that only count
+     * the documents added to their own shard
+     *
+     * @param exchange the request, with the documents in the body or in the file of the documents parameter
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleDocuments(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            QueryServer.send(exchange, 405, "{\"error\":\"use POST\"}");
+            return;
+        }
+        String fileName = QueryServer.getParameters(exchange).get("documents");
+        long start = System.nanoTime();
+        long added = 0;
+        TermStatistics collection;
+        try (BufferedReader br = new BufferedReader(fileName != null ? new FileReader(fileName)
+                : new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            synchronized (reloadLock) {
+                List<StringWriter> bodies = new ArrayList<>();
+                List<PrintWriter> writers = new ArrayList<>();
+                for (int shard = 0; shard < shards.size(); shard++) {
+                    bodies.add(new StringWriter());
+                    writers.add(new PrintWriter(bodies.get(shard)));
+                }
+                documents = distribute(br, writers, documents);
+                for (int shard = 0; shard < shards.size(); shard++) {
+                    writers.get(shard).flush();
+                    if (bodies.get(shard).getBuffer().length() == 0) {
+                        continue;
+                    }
+                    String response = send(HttpRequest.newBuilder(shards.get(shard).resolve("/documents"))
+                            .POST(HttpRequest.BodyPublishers.ofString(bodies.get(shard).toString())).build());
+                    Matcher matcher = ADDED.matcher(response);
+                    if (matcher.find()) {
+                        added += Long.parseLong(matcher.group(1));
+                    }
+                }
+                collection = broadcastStatistics();
+            }
+        } catch (FileNotFoundException fnfe) {
+            QueryServer.send(exchange, 400, "{\"error\":" + SlowQueryLog.quote("no file " + fileName) + "}");
+            return;
+        } catch (IOException ioe) {
+            QueryServer.send(exchange, 502, "{\"error\":" + SlowQueryLog.quote(ioe.getMessage()) + "}");
+            return;
+        }
+        QueryServer.send(exchange, 200, "{\"shards\":" + shards.size()
+                + ",\"added\":" + added
+                + ",\"numOfDocs\":" + collection.getDocumentCount()
+                + ",\"numOfTerms\":" + collection.size()
+                + ",\"millis\":" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "}");
+    }
+
+    //sends a request to a shard and return the response body, an error status is an IOException
+    private String send(HttpRequest request) throws IOException {
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException(request.uri() + " answered " + response.statusCode() + ": " + response.body());
+            }
+            return response.body();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + request.uri());
+        }
+    }
+
+    /**
+     * Splits a documents file in one file per shard, the i-th document of the file going to shard i % numOfShards.
+     * Documents keep their ids, so the shards rank them with the ids of the documents file
+     *
+     * @param documentsFile the documents file
+     * @param numOfShards   the number of shards
+     * @param folder        the folder of the shard files, Shard0.txt to Shard[numOfShards - 1].txt
+     * @return the names of the shard files
+     * @throws IOException if a file cannot be read or written
+     */
+    static List<String> partition(String documentsFile, int numOfShards, String folder) throws IOException {
+        Files.createDirectories(Paths.get(folder));
+        List<String> fileNames = new ArrayList<>();
+        List<PrintWriter> writers = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(documentsFile))) {
+            for (int shard = 0; shard < numOfShards; shard++) {
+                fileNames.add(Paths.get(folder, "Shard" + shard + ".txt").toString());
+                writers.add(new PrintWriter(fileNames.get(shard)));
+            }
+            distribute(br, writers, 0);
+        } finally {
+            for (PrintWriter writer : writers) {
+                writer.close();
+            }
+        }
+        return fileNames;
+    }
+
+    /**
+     * Writes the documents of a reader round-robin, the lines before the first document are read as part of it
+     *
+     * @param br       the documents, in the format of the documents file
+     * @param writers  the writer of each shard
+     * @param document the number of documents written before, the first document goes to shard document % shards
+     * @return the number of documents written, those written before included
+     * @throws IOException if the documents cannot be read
+     */
+    private static int distribute(BufferedReader br, List<PrintWriter> writers, int document) throws IOException {
+        String line;
+        while ((line = br.readLine()) != null) {
+            writers.get(Math.floorMod(document, writers.size())).println(line);
+            if (line.startsWith("</DOC>")) {
+                document++;
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Starts a QueryServer process on a shard file, with the JVM options of this process.
+     * Its output is forwarded to System.err
+     *
+     * @param shard     the number of the shard
+     * @param shardFile the documents of the shard
+     * @param scorer    the scoring function
+     * @param address   completed with the address of the shard once it accepts requests
+     * @return the process
+     * @throws IOException if the process cannot be started
+     */
+    private static Process startShard(int shard, String shardFile, String scorer, CompletableFuture<URI> address)
+            throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("-Dindex.file=")) {
+                //each shard maps its own postings
+                command.add("-Dindex.file=" + shardFile + ".postings");
+            } else if (argument.startsWith("-D") || argument.startsWith("-X") || argument.startsWith("--add-modules")) {
+                command.add(argument);
+            }
+        }
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), QueryServer.class.getName(),
+                shardFile, "0", "1", scorer));
+        Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+
+        //the shard prints its address once it accepts requests
+        Thread reader = new Thread(() -> {
+            try (BufferedReader br = new BufferedReader(
+                    new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    Matcher matcher = SERVING.matcher(line);
+                    if (matcher.find()) {
+                        address.complete(URI.create(matcher.group(1)));
+                    }
+                    System.err.println("[shard " + shard + "] " + line);
+                }
+            } catch (IOException ioe) {
+                System.out.println(Arrays.toString(ioe.getStackTrace()));
+            }
+            address.completeExceptionally(new IOException("Shard " + shard + " stopped before serving queries"));
+        }, "shard-" + shard);
+        reader.setDaemon(true);
+        reader.start();
+        return process;
+    }
+
+    /**
+     * Partitions documents.txt and serves queries on a QueryServer process per shard
+     * Args: documents.txt numOfShards [port] [tfidf|bm25|ql]
+     * -Dshards=http://host:port,... uses running QueryServers as shards instead, the args are then [port]
+     * -Dcoordinator.shardTimeoutMillis bounds the time a query waits for each shard,
+     * -Dcoordinator.folder is the folder of the shard files, shards by default.
+     * Other -D and -X options are passed to the shard processes
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        String shardList = System.getProperty("shards");
+        int portArgument = shardList != null ? 0 : 2;
+        int port = args.length > portArgument ? Integer.parseInt(args[portArgument]) : 8080;
+        long shardTimeoutMillis = Long.getLong("coordinator.shardTimeoutMillis", 2000);
+
+        List<URI> shards = new ArrayList<>();
+        List<Process> processes = new ArrayList<>();
+        if (shardList != null) {
+            for (String shard : shardList.split(",")) {
+                shards.add(URI.create(shard.trim()));
+            }
+        } else {
+            String scorer = args.length > 3 ? args[3] : "tfidf";
+            List<String> shardFiles = partition(args[0], Integer.parseInt(args[1]),
+                    System.getProperty("coordinator.folder", "shards"));
+            List<CompletableFuture<URI>> addresses = new ArrayList<>();
+            for (int shard = 0; shard < shardFiles.size(); shard++) {
+                addresses.add(new CompletableFuture<>());
+                processes.add(startShard(shard, shardFiles.get(shard), scorer, addresses.get(shard)));
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> processes.forEach(Process::destroy)));
+            for (CompletableFuture<URI> address : addresses) {
+                shards.add(address.get());
+            }
+        }
+
+        ShardCoordinator coordinator = new ShardCoordinator(shards, port, shardTimeoutMillis);
+        coordinator.processes = processes;
+        Runtime.getRuntime().addShutdownHook(new Thread(coordinator::stop));
+        coordinator.start();
+        System.err.println("Serving queries on http://localhost:" + coordinator.getPort() + "/query over "
+                + shards.size() + " shards");
+    }
+}
@@ -0,0 +1,198 @@
+package evaluator;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs the queries slower than a threshold as JSON lines, with the parsed query,
+ * the posting list and intersection sizes of each clause, the time of each stage and the result count.
+ * Query threads only add the trace to a bounded queue, a background thread formats and writes it.
+ * When the queue is full the entry is dropped and counted instead of blocking the query
+ */
+public class SlowQueryLog implements AutoCloseable {
+    //marks the end of the queue
+    private static final QueryTrace END = new QueryTrace(false, false, false);
+
+    //maximum time close waits for the queue and for the writer thread
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    private long thresholdNanos;
+    private BlockingQueue<QueryTrace> queue;
+    private BufferedWriter writer;
+    private Thread writerThread;
+    private AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param fileName        the log file, entries are appended to it
+     * @param thresholdMillis queries taking at least this time are logged
+     * @param queueCapacity   the maximum number of entries waiting to be written
+     * @throws IOException if the file cannot be opened
+     */
+    public SlowQueryLog(String fileName, long thresholdMillis, int queueCapacity) throws IOException {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new BufferedWriter(new FileWriter(fileName, true));
+        this.writerThread = new Thread(this::writeEntries, "slow-query-log");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Adds the trace of a finished query to the log if it is slower than the threshold. Never blocks
+     *
+     * @param trace a stopped trace recording details
+     */
+    void offer(QueryTrace trace) {
+        if (trace.getStageNanos(QueryStage.TOTAL) >= thresholdNanos && !queue.offer(trace)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    //number of slow queries not logged because the queue was full
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    //writes the queued entries until the end marker, flushing whenever the queue is empty.
+    //entries that cannot be written are counted as dropped, and the queue keeps being drained
+    private void writeEntries() {
+        while (true) {
+            QueryTrace trace;
+            try {
+                trace = queue.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (trace == END) {
+                break;
+            }
+            try {
+                writer.write(toJson(trace));
+                writer.newLine();
+                if (queue.isEmpty()) {
+                    writer.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                dropped.incrementAndGet();
+                System.out.println(e + " " + Arrays.toString(e.getStackTrace()));
+            }
+        }
+        try {
+            writer.flush();
+        } catch (IOException ioe) {
+            System.out.println(Arrays.toString(ioe.getStackTrace()));
+        }
+    }
+
+    /**
+     * Formats a trace as a JSON object
+     *
+     * @param trace a trace recording details
+     * @return the JSON object
+     */
+    static String toJson(QueryTrace trace) {
+        TermDictionary dictionary = trace.getDictionary();
+        QueryCollection queryCollection = trace.getQueryCollection();
+        StringBuilder json = new StringBuilder("{\"query\":").append(quote(trace.getQuery()));
+
+        json.append(",\"totalMicros\":").append(TimeUnit.NANOSECONDS.toMicros(trace.getStageNanos(QueryStage.TOTAL)))
+                .append(",\"results\":").append(trace.getResultCount())
+                .append(",\"postingsScanned\":").append(trace.getPostingsScanned())
+                .append(",\"documentsScored\":").append(trace.getDocumentsScored());
+
+        //parsed query
+        json.append(",\"parsed\":{\"regular\":[");
+        int[] regularTerms = queryCollection == null ? new int[0] : queryCollection.getRegularQueryList();
+        for (int i = 0; i < regularTerms.length; i++) {
+            json.append(i > 0 ? "," : "").append(term(dictionary, regularTerms[i]));
+        }
+        json.append("],\"proximity\":[");
+        if (queryCollection != null) {
+            for (int i = 0; i < queryCollection.getProximityQueryList().size(); i++) {
+                ProximityQuery clause = queryCollection.getProximityQueryList().get(i);
+                json.append(i > 0 ? "," : "").append("{\"proximity\":").append(clause.getTermProximity())
+                        .append(",\"termOne\":").append(term(dictionary, clause.getTermOne()))
+                        .append(",\"termTwo\":").append(term(dictionary, clause.getTermTwo())).append('}');
+            }
+        }
+        json.append("]}");
+
+        //posting list sizes of the regular terms, expansion terms included
+        json.append(",\"terms\":[");
+        for (int i = 0; i < trace.getTermPostings().size(); i++) {
+            int[] termPostings = trace.getTermPostings().get(i);
+            json.append(i > 0 ? "," : "").append("{\"term\":").append(term(dictionary, termPostings[0]))
+                    .append(",\"postings\":").append(termPostings[1]).append('}');
+        }
+
+        //posting list, intersection and match sizes of the proximity clauses
+        json.append("],\"proximityClauses\":[");
+        for (int i = 0; i < trace.getProximityClauses().size(); i++) {
+            int[] clause = trace.getProximityClauses().get(i);
+            json.append(i > 0 ? "," : "").append("{\"proximity\":").append(clause[0])
+                    .append(",\"termOne\":").append(term(dictionary, clause[1]))
+                    .append(",\"termTwo\":").append(term(dictionary, clause[2]))
+                    .append(",\"postingsOne\":").append(clause[3])
+                    .append(",\"postingsTwo\":").append(clause[4])
+                    .append(",\"intersection\":").append(clause[5])
+                    .append(",\"matches\":").append(clause[6]).append('}');
+        }
+        json.append("],\"clauseIntersections\":").append(trace.getClauseIntersections());
+
+        //time of each stage
+        json.append(",\"stageMicros\":{");
+        for (QueryStage stage : QueryStage.values()) {
+            json.append(stage.ordinal() > 0 ? "," : "").append('"').append(stage.name().toLowerCase()).append("\":")
+                    .append(String.format(Locale.ROOT, "%.1f", trace.getStageNanos(stage) / 1e3));
+        }
+        return json.append("}}").toString();
+    }
+
+    //return the quoted term of a term id, null if the term is not indexed
+    private static String term(TermDictionary dictionary, int termId) {
+        return termId == TermDictionary.UNKNOWN ? "null" : quote(dictionary.getTerm(termId));
+    }
+
+    //return a JSON string
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == '"' || character == '\\') {
+                quoted.append('\\').append(character);
+            } else if (character < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) character));
+            } else {
+                quoted.append(character);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Writes the entries already queued and closes the file. Waits at most CLOSE_TIMEOUT_SECONDS
+     * for the queue to have room for the end marker, and for the writer thread to finish
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (writerThread.isAlive() && queue.offer(END, CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                writerThread.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            System.err.println("Slow query log writer did not finish, " + queue.size() + " entries are not logged");
+        }
+        writer.close();
+    }
+}
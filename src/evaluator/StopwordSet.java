@@ -0,0 +1,105 @@
+package evaluator;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable set of stopwords, shared by index and query analysis.
+ * Words are kept in an open addressing table with linear probing, so a lookup hashes the token
+ * once and compares it with the few words of its probe sequence. Stopwords are compared with
+ * lower case, stemmed tokens
+ */
+public class StopwordSet {
+    //stopwords used when no stopword file is given
+    public static final StopwordSet DEFAULT = new StopwordSet("the", "is", "at", "of", "on", "and", "a");
+
+    //table size is a power of two, at most half full
+    private String[] table;
+    private int size;
+
+    StopwordSet(String... words) {
+        int capacity = 2;
+        while (capacity < words.length * 2) {
+            capacity *= 2;
+        }
+        table = new String[capacity];
+        for (String word : words) {
+            add(word);
+        }
+    }
+
+    /**
+     * Reads a stopword file with one word per line. Blank lines and lines starting with # are ignored
+     *
+     * @param fileName the name of the file
+     * @return the stopwords of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static StopwordSet load(String fileName) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim().toLowerCase();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    words.add(line);
+                }
+            }
+        }
+        return new StopwordSet(words.toArray(new String[0]));
+    }
+
+    /**
+     * Returns the stopwords of a file, the default stopwords if the name is null
+     *
+     * @param fileName the name of a stopword file, or null
+     * @return the stopwords
+     */
+    public static StopwordSet forName(String fileName) {
+        if (fileName == null) {
+            return DEFAULT;
+        }
+        try {
+            return load(fileName);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("Cannot read stopword file " + fileName, ioe);
+        }
+    }
+
+    //adds a word to the table, which has room for it
+    private void add(String word) {
+        int slot = slot(word);
+        while (table[slot] != null) {
+            if (table[slot].equals(word)) {
+                return;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        table[slot] = word;
+        size++;
+    }
+
+    //return true if the token is a stopword
+    public boolean contains(String token) {
+        for (int slot = slot(token); table[slot] != null; slot = (slot + 1) & (table.length - 1)) {
+            if (table[slot].equals(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //return the first slot of a word, spreading the high bits of its hash code
+    private int slot(String word) {
+        int hash = word.hashCode();
+        return (hash ^ (hash >>> 16)) & (table.length - 1);
+    }
+
+    //number of stopwords
+    public int size() {
+        return size;
+    }
+}
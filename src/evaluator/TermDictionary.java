@@ -0,0 +1,81 @@
+package evaluator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns an int id to each indexed term.
+ * Terms are only looked up as strings when parsing queries and writing output files.
+ * Stopwords get a term id too, flagged when the term is added, so analysis filters them by id
+ */
+public class TermDictionary {
+    //id of a term that is not in the dictionary
+    public static final int UNKNOWN = -1;
+
+    //term id -> term and term -> term id
+    private List<String> terms = new ArrayList<>();
+    private Map<String, Integer> termIds = new HashMap<>();
+
+    private StopwordSet stopwords;
+    //term ids of the stopwords
+    private BitSet stopwordIds = new BitSet();
+
+    TermDictionary(StopwordSet stopwords) {
+        this.stopwords = stopwords;
+    }
+
+    //return a dictionary with the terms of this one, terms added to either are not added to the other
+    TermDictionary copy() {
+        TermDictionary copy = new TermDictionary(stopwords);
+        copy.terms = new ArrayList<>(terms);
+        copy.termIds = new HashMap<>(termIds);
+        copy.stopwordIds = (BitSet) stopwordIds.clone();
+        return copy;
+    }
+
+    /**
+     * Adds a term to the dictionary
+     *
+     * @param term a term
+     * @return the id of the term, a new id if it was not in the dictionary
+     */
+    int add(String term) {
+        Integer termId = termIds.get(term);
+        if (termId == null) {
+            termId = terms.size();
+            termIds.put(term, termId);
+            terms.add(term);
+            if (stopwords.contains(term)) {
+                stopwordIds.set(termId);
+            }
+        }
+        return termId;
+    }
+
+    //return the id of a term, UNKNOWN if the term is not in the dictionary
+    public int getTermId(String term) {
+        return termIds.getOrDefault(term, UNKNOWN);
+    }
+
+    //return true if the term id is a stopword
+    public boolean isStopword(int termId) {
+        return termId != UNKNOWN && stopwordIds.get(termId);
+    }
+
+    public StopwordSet getStopwords() {
+        return stopwords;
+    }
+
+    //return the term associated to a term id
+    public String getTerm(int termId) {
+        return terms.get(termId);
+    }
+
+    //number of terms in the dictionary
+    public int size() {
+        return terms.size();
+    }
+}
@@ -0,0 +1,135 @@
+package evaluator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Document and collection frequencies of terms, with the number of documents and tokens of the collection.
+ * Each shard of a collection reports its own, the coordinator sums them and sends the sums back so that
+ * shards weigh terms as a single index of the collection would.
+ * Text format: a line "documentCount totalLength", then one line "term documentFrequency collectionFrequency" per term
+ */
+public class TermStatistics {
+    private int documentCount;
+    private long totalLength;
+
+    //<term, {document frequency, collection frequency}>
+    private Map<String, long[]> frequencies = new HashMap<>();
+
+    /**
+     * @param documentCount the number of documents
+     * @param totalLength   the number of indexed tokens
+     */
+    TermStatistics(int documentCount, long totalLength) {
+        this.documentCount = documentCount;
+        this.totalLength = totalLength;
+    }
+
+    /**
+     * Adds the frequencies of a term, to the ones it already has
+     *
+     * @param term                the term
+     * @param documentFrequency   the number of documents containing the term
+     * @param collectionFrequency the number of occurrences of the term
+     */
+    void addTerm(String term, long documentFrequency, long collectionFrequency) {
+        long[] termFrequencies = frequencies.computeIfAbsent(term, key -> new long[2]);
+        termFrequencies[0] += documentFrequency;
+        termFrequencies[1] += collectionFrequency;
+    }
+
+    /**
+     * Adds the statistics of another part of the collection
+     *
+     * @param shard the statistics of a shard
+     */
+    void add(TermStatistics shard) {
+        documentCount += shard.documentCount;
+        totalLength += shard.totalLength;
+        for (Map.Entry<String, long[]> entry : shard.frequencies.entrySet()) {
+            addTerm(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+    }
+
+    /**
+     * Statistics restricted to the terms of a shard, the part of the collection statistics it needs
+     *
+     * @param shard the statistics of a shard
+     * @return these statistics for the terms of the shard
+     */
+    TermStatistics restrictTo(TermStatistics shard) {
+        TermStatistics restricted = new TermStatistics(documentCount, totalLength);
+        for (String term : shard.frequencies.keySet()) {
+            long[] termFrequencies = frequencies.get(term);
+            if (termFrequencies != null) {
+                restricted.frequencies.put(term, termFrequencies);
+            }
+        }
+        return restricted;
+    }
+
+    //return the document and collection frequencies of a term, null if the term has none
+    public long[] getFrequencies(String term) {
+        return frequencies.get(term);
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    //return the number of terms
+    public int size() {
+        return frequencies.size();
+    }
+
+    /**
+     * Writes the statistics in text format
+     *
+     * @param writer where the statistics are written
+     * @throws IOException if the statistics cannot be written
+     */
+    public void write(Writer writer) throws IOException {
+        writer.write(documentCount + " " + totalLength + "\n");
+        for (Map.Entry<String, long[]> entry : frequencies.entrySet()) {
+            writer.write(entry.getKey() + " " + entry.getValue()[0] + " " + entry.getValue()[1] + "\n");
+        }
+    }
+
+    /**
+     * Reads statistics in text format
+     *
+     * @param reader the statistics
+     * @return the statistics
+     * @throws IOException if the statistics cannot be read or are not in text format
+     */
+    public static TermStatistics read(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        String[] fields = line == null ? new String[0] : line.trim().split(" ");
+        if (fields.length != 2) {
+            throw new IOException("Invalid statistics header: " + line);
+        }
+        try {
+            TermStatistics statistics = new TermStatistics(Integer.parseInt(fields[0]), Long.parseLong(fields[1]));
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                fields = line.split(" ");
+                if (fields.length != 3) {
+                    throw new IOException("Invalid term statistics: " + line);
+                }
+                statistics.addTerm(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+            }
+            return statistics;
+        } catch (NumberFormatException nfe) {
+            throw new IOException("Invalid statistics: " + nfe.getMessage(), nfe);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package evaluator;
+
+/**
+ * The terms of a single document and their frequencies,
+ * stored as parallel arrays of term ids and term frequencies.
+ */
+public class TermVector {
+    private int[] termIds;
+    private int[] termFrequencies;
+
+    TermVector(int[] termIds, int[] termFrequencies) {
+        this.termIds = termIds;
+        this.termFrequencies = termFrequencies;
+    }
+
+    public int[] getTermIds() {
+        return termIds;
+    }
+
+    public int[] getTermFrequencies() {
+        return termFrequencies;
+    }
+
+    //number of distinct terms in the document
+    public int size() {
+        return termIds.length;
+    }
+}
@@ -0,0 +1,36 @@
+package evaluator;
+
+/**
+ * TF.IDF: (1 + log tf) * log(N / df)
+ */
+public class TfIdfScorer implements Scorer {
+
+    @Override
+    public double score(int termFrequency, int documentFrequency, long collectionFrequency, int documentLength,
+                        CollectionStatistics statistics) {
+        //TF: (1 + Math.log10(termFreq))
+        //IDF: Math.log10(getCollectionSize() / docFreqTerm)
+        return (1 + Math.log10(termFrequency)) * Math.log10(statistics.getDocumentCount() / (double) documentFrequency);
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    @Override
+    public String getName() {
+        return "tfidf";
+    }
+
+    //scorers without parameters are all equal
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass();
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -6,8 +6,8 @@ package evaluator;
 public class WeightedPost extends Document {
     private double weight;
 
-    WeightedPost(String token, int docId, double weight) {
-        super(token, docId);
+    WeightedPost(int termId, int docId, double weight) {
+        super(termId, docId);
         this.weight = weight;
     }
 
@@ -0,0 +1,143 @@
+package evaluator;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * Generates synthetic documents whose word frequencies follow a Zipf distribution.
+ * The most frequent words are the stopwords, followed by generated lower case words.
+ * The same seed always generates the same documents
+ */
+public class ZipfianCorpus {
+    private static final String[] STOPWORDS = {"the", "and", "a", "of", "is", "on", "at"};
+
+    //words by rank, rank 0 is the most frequent word
+    private String[] vocabulary;
+    private double[] cumulativeProbabilities;
+    private Random random;
+
+    /**
+     * @param vocabularySize the number of distinct words
+     * @param exponent       the Zipf exponent, around 1 for natural language
+     * @param seed           the seed of the random generator
+     */
+    public ZipfianCorpus(int vocabularySize, double exponent, long seed) {
+        this.random = new Random(seed);
+        this.vocabulary = createVocabulary(vocabularySize);
+
+        //P(rank) is proportional to 1 / (rank + 1)^exponent
+        cumulativeProbabilities = new double[vocabularySize];
+        double sum = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulativeProbabilities[rank] = sum;
+        }
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            cumulativeProbabilities[rank] /= sum;
+        }
+    }
+
+    /**
+     * Creates the stopwords followed by distinct generated words of at least two letters
+     *
+     * @param vocabularySize the number of words
+     * @return the words by rank
+     */
+    private String[] createVocabulary(int vocabularySize) {
+        String[] words = new String[vocabularySize];
+        Set<String> stopwords = new HashSet<>(Arrays.asList(STOPWORDS));
+        int rank = 0;
+        for (; rank < Math.min(STOPWORDS.length, vocabularySize); rank++) {
+            words[rank] = STOPWORDS[rank];
+        }
+
+        //bijective base 26 numbers, starting at "aa"
+        StringBuilder word = new StringBuilder();
+        for (int number = 27; rank < vocabularySize; number++) {
+            word.setLength(0);
+            for (int value = number; value > 0; value = (value - 1) / 26) {
+                word.append((char) ('a' + (value - 1) % 26));
+            }
+            String generated = word.reverse().toString();
+            if (!stopwords.contains(generated)) {
+                words[rank++] = generated;
+            }
+        }
+        return words;
+    }
+
+    //return the word of a rank
+    public String getWord(int rank) {
+        return vocabulary[rank];
+    }
+
+    public int getVocabularySize() {
+        return vocabulary.length;
+    }
+
+    //return the rank of a random word
+    public int nextRank() {
+        int rank = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+        return rank >= 0 ? rank : Math.min(-rank - 1, vocabulary.length - 1);
+    }
+
+    //return a random word
+    public String nextWord() {
+        return vocabulary[nextRank()];
+    }
+
+    //return a random word that is not a stopword
+    public String nextContentWord() {
+        int rank = nextRank();
+        while (rank < STOPWORDS.length) {
+            rank = nextRank();
+        }
+        return vocabulary[rank];
+    }
+
+    //return a random document with length words
+    public String nextDocument(int length) {
+        StringBuilder doc = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                doc.append(' ');
+            }
+            doc.append(nextWord());
+        }
+        return doc.toString();
+    }
+
+    /**
+     * Writes numOfDocs documents in the <DOC n> format read by PositionalInvertedIndex.
+     * Document lengths are uniform between half and one and a half times meanLength
+     *
+     * @param fileName   the name of the file
+     * @param numOfDocs  the number of documents, with ids 1 to numOfDocs
+     * @param meanLength the mean number of words in a document
+     * @throws IOException if the file cannot be written
+     */
+    public void writeDocuments(String fileName, int numOfDocs, int meanLength) throws IOException {
+        writeDocuments(fileName, numOfDocs, () -> meanLength / 2 + random.nextInt(meanLength + 1));
+    }
+
+    /**
+     * Writes numOfDocs documents in the <DOC n> format read by PositionalInvertedIndex
+     *
+     * @param fileName        the name of the file
+     * @param numOfDocs       the number of documents, with ids 1 to numOfDocs
+     * @param documentLengths the number of words of each document
+     * @throws IOException if the file cannot be written
+     */
+    public void writeDocuments(String fileName, int numOfDocs, IntSupplier documentLengths) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+            for (int docId = 1; docId <= numOfDocs; docId++) {
+                writer.write("<DOC " + docId + ">\n");
+                writer.write(nextDocument(documentLengths.getAsInt()));
+                writer.write("\n</DOC>\n\n");
+            }
+        }
+    }
+}
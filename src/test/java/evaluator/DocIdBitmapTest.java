@@ -0,0 +1,167 @@
+package evaluator;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks the docId bitmaps on random posting lists mixing array and bitmap groups: their intersection, and the
+ * intersection of posting lists on bitmaps, lists, both or docId arrays against the merge of the lists
+ */
+class DocIdBitmapTest {
+    private static final int RUNS = 100;
+
+    private static QueryEvaluator evaluator;
+
+    @BeforeAll
+    static void createEvaluator(@TempDir Path folder) throws IOException {
+        Path documents = folder.resolve("documents.txt");
+        Files.write(documents, Arrays.asList("<DOC 1>", "screen price", "</DOC>"));
+        evaluator = new QueryEvaluator(documents.toString(), false, StopwordSet.DEFAULT);
+    }
+
+    @Test
+    void andMatchesSetIntersection() {
+        Random random = new Random(1);
+        for (int run = 0; run < RUNS; run++) {
+            int[][] docIds = randomPair(random);
+            DocIdBitmap bitmapOne = DocIdBitmap.of(postings(docIds[0]));
+            DocIdBitmap bitmapTwo = DocIdBitmap.of(postings(docIds[1]));
+            assertArrayEquals(docIds[0], bitmapOne.toArray());
+            assertEquals(docIds[0].length, bitmapOne.getCardinality());
+
+            int[] expected = intersection(docIds[0], docIds[1]);
+            DocIdBitmap result = bitmapOne.and(bitmapTwo);
+            assertArrayEquals(expected, result.toArray());
+            assertEquals(expected.length, result.getCardinality());
+            assertArrayEquals(expected, bitmapTwo.and(bitmapOne).toArray());
+        }
+    }
+
+    /**
+     * Groups whose intersection fills the whole buffer of and() keep it, the groups after them must be
+     * written to a new one
+     */
+    @Test
+    void andKeepsFullGroupsApartFromTheNextOnes() {
+        Random random = new Random(2);
+        for (int run = 0; run < RUNS; run++) {
+            TreeSet<Integer> one = new TreeSet<>();
+            TreeSet<Integer> two = new TreeSet<>();
+            for (int key = 0; key < 3; key++) {
+                //a full array group in both lists, or in one list and within a bitmap group of the other
+                List<Integer> full = randomValues(random, key, DocIdBitmap.ARRAY_CONTAINER_MAX);
+                one.addAll(full);
+                two.addAll(full);
+                if (random.nextBoolean()) {
+                    two.addAll(randomValues(random, key, 2 * DocIdBitmap.ARRAY_CONTAINER_MAX));
+                }
+                //followed by a partly shared array group
+                List<Integer> partial = randomValues(random, key + 3, 1 + random.nextInt(200));
+                one.addAll(partial);
+                two.addAll(partial.subList(0, partial.size() / 2));
+                two.addAll(randomValues(random, key + 3, random.nextInt(200)));
+            }
+            int[] docIdsOne = one.stream().mapToInt(Integer::intValue).toArray();
+            int[] docIdsTwo = two.stream().mapToInt(Integer::intValue).toArray();
+            assertArrayEquals(intersection(docIdsOne, docIdsTwo),
+                    DocIdBitmap.of(postings(docIdsOne)).and(DocIdBitmap.of(postings(docIdsTwo))).toArray());
+        }
+    }
+
+    @Test
+    void intersectionOnBitmapsMatchesMerge() {
+        Random random = new Random(3);
+        for (int run = 0; run < RUNS; run++) {
+            int[][] docIds = randomPair(random);
+            List<Document> postOne = postings(docIds[0]);
+            List<Document> postTwo = postings(docIds[1]);
+            DocIdBitmap bitmapOne = DocIdBitmap.of(postOne);
+            DocIdBitmap bitmapTwo = DocIdBitmap.of(postTwo);
+            List<Document> expected = evaluator.intersect(postOne, postTwo);
+
+            DocIdBitmap none = null;
+            assertSamePostings(expected, evaluator.intersect(postOne, none, postTwo, none));
+            assertSamePostings(expected, evaluator.intersect(postOne, bitmapOne, postTwo, none));
+            assertSamePostings(expected, evaluator.intersect(postOne, none, postTwo, bitmapTwo));
+            assertSamePostings(expected, evaluator.intersect(postOne, bitmapOne, postTwo, bitmapTwo));
+            //and on the docId arrays, with the intersection kernel
+            assertSamePostings(expected, evaluator.intersect(postOne, docIds[0], postTwo, docIds[1]));
+        }
+    }
+
+    //checks that both lists hold the same postings, in the same order
+    private static void assertSamePostings(List<Document> expected, List<Document> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
+    //return two docId lists over the same groups, each group empty, sparse, full or dense in each list
+    private static int[][] randomPair(Random random) {
+        TreeSet<Integer> one = new TreeSet<>();
+        TreeSet<Integer> two = new TreeSet<>();
+        int numOfGroups = 1 + random.nextInt(5);
+        for (int key = 0; key < numOfGroups; key++) {
+            one.addAll(randomValues(random, key, randomGroupSize(random)));
+            two.addAll(randomValues(random, key, randomGroupSize(random)));
+            if (random.nextInt(4) == 0) {
+                //shares a whole group
+                two.addAll(one.subSet(key << 16, (key + 1) << 16));
+            }
+        }
+        return new int[][]{one.stream().mapToInt(Integer::intValue).toArray(),
+                two.stream().mapToInt(Integer::intValue).toArray()};
+    }
+
+    //return the number of docIds of a group: none, an array group, a full array group or a bitmap group
+    private static int randomGroupSize(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return 0;
+            case 1:
+                return 1 + random.nextInt(300);
+            case 2:
+                return DocIdBitmap.ARRAY_CONTAINER_MAX;
+            default:
+                return DocIdBitmap.ARRAY_CONTAINER_MAX + 1 + random.nextInt(20000);
+        }
+    }
+
+    //return distinct random docIds of a group, in increasing order
+    private static List<Integer> randomValues(Random random, int key, int size) {
+        TreeSet<Integer> values = new TreeSet<>();
+        while (values.size() < size) {
+            values.add((key << 16) | random.nextInt(65536));
+        }
+        return new ArrayList<>(values);
+    }
+
+    //return the postings of docIds
+    private static List<Document> postings(int[] docIds) {
+        List<Document> postings = new ArrayList<>();
+        for (int docId : docIds) {
+            postings.add(new Document(0, docId, new int[]{1}));
+        }
+        return postings;
+    }
+
+    //return the docIds of both arrays
+    private static int[] intersection(int[] docIdsOne, int[] docIdsTwo) {
+        return Arrays.stream(docIdsOne).filter(docId -> Arrays.binarySearch(docIdsTwo, docId) >= 0).toArray();
+    }
+}
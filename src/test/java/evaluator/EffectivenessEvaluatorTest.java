@@ -0,0 +1,119 @@
+package evaluator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks precision, average precision, nDCG and recall against values computed by hand, with graded labels,
+ * unjudged documents, a judged query without results and the queries that are skipped
+ */
+class EffectivenessEvaluatorTest {
+    private static final double DELTA = 1e-12;
+
+    //query 1: graded, one relevant document is never retrieved. Query 2: one relevant document.
+    //query 3: only a non-relevant judgement. Query 4 is not judged
+    private static Qrels qrels() {
+        Qrels qrels = new Qrels();
+        qrels.add(1, 1, 2);
+        qrels.add(1, 2, 0);
+        qrels.add(1, 3, 1);
+        qrels.add(1, 4, 1);
+        qrels.add(1, 9, 1);
+        qrels.add(2, 5, 3);
+        qrels.add(3, 6, 0);
+        return qrels;
+    }
+
+    @Test
+    void measuresOfOneQuery() {
+        EffectivenessEvaluator evaluator = new EffectivenessEvaluator(qrels(), 5, 2);
+        assertArrayEquals(new int[]{2, 5}, evaluator.getCutoffs());
+
+        //non-relevant, relevant with gain 2, unjudged, relevant with gain 1
+        assertTrue(evaluator.add(1, ranking(2, 1, 7, 3)));
+        assertEquals(1, evaluator.getQueryCount());
+
+        //1 relevant in the top 2, 2 in the top 5 although only 4 documents were returned
+        assertEquals(1 / 2.0, evaluator.getMeanPrecision(0), DELTA);
+        assertEquals(2 / 5.0, evaluator.getMeanPrecision(1), DELTA);
+        //precision at the relevant ranks 2 and 4, over the 4 relevant documents
+        assertEquals((1 / 2.0 + 2 / 4.0) / 4, evaluator.getMeanAveragePrecision(), DELTA);
+        assertEquals(2 / 4.0, evaluator.getMeanRecall(), DELTA);
+
+        //the ideal ranking has the gains 2, 1, 1, 1
+        assertEquals((2 / log2(3)) / (2 + 1 / log2(3)), evaluator.getMeanNdcg(0), DELTA);
+        assertEquals((2 / log2(3) + 1 / log2(5)) / (2 + 1 / log2(3) + 1 / log2(4) + 1 / log2(5)),
+                evaluator.getMeanNdcg(1), DELTA);
+    }
+
+    @Test
+    void perfectRanking() {
+        EffectivenessEvaluator evaluator = new EffectivenessEvaluator(qrels(), 2, 5);
+        evaluator.add(1, ranking(1, 3, 4, 9, 2));
+
+        assertEquals(1, evaluator.getMeanPrecision(0), DELTA);
+        assertEquals(4 / 5.0, evaluator.getMeanPrecision(1), DELTA);
+        assertEquals(1, evaluator.getMeanAveragePrecision(), DELTA);
+        assertEquals(1, evaluator.getMeanNdcg(0), DELTA);
+        assertEquals(1, evaluator.getMeanNdcg(1), DELTA);
+        assertEquals(1, evaluator.getMeanRecall(), DELTA);
+    }
+
+    @Test
+    void judgedQueriesWithoutResultsCountAsZero() {
+        EffectivenessEvaluator evaluator = new EffectivenessEvaluator(qrels(), 2, 5);
+        evaluator.add(1, ranking(2, 1, 7, 3));
+        assertTrue(evaluator.add(2, Collections.emptyList()));
+
+        //query 2 has no relevant document retrieved, every mean is halved
+        assertEquals(2, evaluator.getQueryCount());
+        assertEquals(1 / 4.0, evaluator.getMeanPrecision(0), DELTA);
+        assertEquals(1 / 5.0, evaluator.getMeanPrecision(1), DELTA);
+        assertEquals(1 / 8.0, evaluator.getMeanAveragePrecision(), DELTA);
+        assertEquals(1 / 4.0, evaluator.getMeanRecall(), DELTA);
+        assertEquals((2 / log2(3)) / (2 + 1 / log2(3)) / 2, evaluator.getMeanNdcg(0), DELTA);
+    }
+
+    @Test
+    void queriesWithoutRelevantJudgementsAreSkipped() {
+        EffectivenessEvaluator evaluator = new EffectivenessEvaluator(qrels(), 2, 5);
+        assertEquals(0, evaluator.getMeanAveragePrecision());
+
+        //a query judged non-relevant only, and a query that is not judged
+        assertFalse(evaluator.add(3, ranking(6)));
+        assertFalse(evaluator.add(4, ranking(1, 3)));
+        assertEquals(0, evaluator.getQueryCount());
+        assertEquals(2, evaluator.getSkippedQueries());
+        assertEquals("queries,P@2,P@5,MAP,nDCG@2,nDCG@5,recall", evaluator.getCsvHeader());
+        assertEquals("0,0.0000,0.0000,0.0000,0.0000,0.0000,0.0000", evaluator.toCsv());
+
+        evaluator.add(2, ranking(8, 5));
+        assertEquals(1, evaluator.getQueryCount());
+        assertEquals(2, evaluator.getSkippedQueries());
+        //the relevant document at rank 2: nDCG 3 / log2(3) over 3
+        assertEquals(String.format(Locale.ROOT, "1,0.5000,0.2000,0.5000,%.4f,%.4f,1.0000",
+                1 / log2(3), 1 / log2(3)), evaluator.toCsv());
+    }
+
+    //return a ranking of docIds, with decreasing weights
+    private static List<WeightedDocument> ranking(int... docIds) {
+        List<WeightedDocument> ranking = new ArrayList<>();
+        for (int i = 0; i < docIds.length; i++) {
+            ranking.add(new WeightedDocument(docIds.length - i, docIds[i]));
+        }
+        return ranking;
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+}
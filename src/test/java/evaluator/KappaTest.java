@@ -0,0 +1,83 @@
+package evaluator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks Cohen's and Fleiss' kappa against values computed by hand, for files that judge partially
+ * overlapping (query, document) pairs in different orders
+ */
+class KappaTest {
+    private static final double DELTA = 1e-12;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void twoGradesThreeFiles() throws IOException {
+        //the baseline is in the folder it is compared with, and is only read once
+        Path baseline = write("a.txt",
+                "1 0 10 1", "1 0 11 0", "1 0 12 1", "1 0 13 0", "2 0 10 1", "2 0 14 1");
+        //does not judge 2/14, judges 3/15 that the others do not
+        write("b.txt",
+                "3 0 15 0", "2 0 10 0", "1 0 13 0", "1 0 12 1", "1 0 11 1", "1 0 10 1");
+        write("c.txt",
+                "1 0 10 1", "1 0 11 0", "1 0 12 0", "1 0 13 0", "2 0 10 1", "2 0 14 0");
+        Kappa kappa = new Kappa(baseline.toString(), folder.toString());
+        kappa.countAgreements();
+
+        //a and b agree on 3 of 5 pairs, both label 1 with probability 3/5: (0.6 - 0.52) / 0.48
+        assertEquals(1 / 6.0, kappa.getKappa(0, 1), DELTA);
+        //a and c agree on 4 of 6 pairs, chance agreement 4/9: (6/9 - 4/9) / (5/9)
+        assertEquals(0.4, kappa.getKappa(0, 2), DELTA);
+        //b and c agree on 2 of 5 pairs, chance agreement 12/25: (10/25 - 12/25) / (13/25)
+        assertEquals(-2 / 13.0, kappa.getKappa(1, 2), DELTA);
+        assertEquals(kappa.getKappa(1, 2), kappa.getKappa(2, 1), DELTA);
+        assertEquals(1, kappa.getKappa(1, 1), DELTA);
+
+        //5 pairs judged by all: mean agreement (1 + 1/3 + 1/3 + 1 + 1/3) / 5 = 3/5,
+        //7 labels 0 and 8 labels 1 of 15: chance agreement 113/225, (135 - 113) / (225 - 113)
+        assertEquals(22 / 112.0, kappa.getFleissKappa(), DELTA);
+    }
+
+    @Test
+    void threeGradesTwoFiles() throws IOException {
+        Path baseline = folder.resolve("baseline.qrels");
+        Files.write(baseline, String.join("\n",
+                "1 0 1 2", "1 0 2 1", "1 0 3 0", "1 0 4 2", "1 0 5 1", "1 0 6 0").getBytes());
+        write("judge.txt",
+                "1 0 1 2", "1 0 2 1", "1 0 3 1", "1 0 4 0", "1 0 5 1", "1 0 7 2");
+        Kappa kappa = new Kappa(baseline.toString(), folder.toString());
+        kappa.countAgreements();
+
+        //3 of the 5 common pairs agree, labels 0/1/2: 1/2/2 and 1/3/1, chance agreement 9/25
+        assertEquals(6 / 16.0, kappa.getKappa(0, 1), DELTA);
+        //2 raters: mean agreement 3/5, labels 0/1/2 given 2/5/3 times: chance agreement 0.38
+        assertEquals(0.22 / 0.62, kappa.getFleissKappa(), DELTA);
+    }
+
+    @Test
+    void filesWithoutCommonPairs() throws IOException {
+        Path baseline = write("a.txt", "1 0 1 1", "1 0 2 0");
+        write("b.txt", "2 0 1 1", "2 0 2 0");
+        Kappa kappa = new Kappa(baseline.toString(), folder.toString());
+        kappa.countAgreements();
+
+        assertTrue(Double.isNaN(kappa.getKappa(0, 1)));
+        assertTrue(Double.isNaN(kappa.getFleissKappa()));
+    }
+
+    //return a judgement file of the folder with the given lines
+    private Path write(String fileName, String... lines) throws IOException {
+        Path path = folder.resolve(fileName);
+        Files.write(path, String.join("\n", lines).getBytes());
+        return path;
+    }
+}
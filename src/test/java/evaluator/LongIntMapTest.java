@@ -0,0 +1,86 @@
+package evaluator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the map of long keys against a HashMap: growth past the initial capacity, keys that collide
+ * in every table size, replaced values and the insertion order of the entries
+ */
+class LongIntMapTest {
+
+    @Test
+    void growsAndKeepsInsertionOrder() {
+        LongIntMap map = new LongIntMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        long[] order = new long[20000];
+        Random random = new Random(1);
+        int size = 0;
+        for (int i = 0; i < 40000; i++) {
+            //half the keys are put again with another value
+            long key = i % 2 == 0 || size == 0 ? random.nextLong() : order[random.nextInt(size)];
+            int index = map.put(key, i);
+            if (expected.put(key, i) == null) {
+                assertEquals(size, index);
+                order[size++] = key;
+            } else {
+                assertEquals(key, map.getKey(index));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (int index = 0; index < map.size(); index++) {
+            assertEquals(order[index], map.getKey(index));
+            assertEquals((int) expected.get(order[index]), map.getValue(index));
+            assertEquals(index, map.indexOf(order[index]));
+        }
+        assertEquals(-1, map.indexOf(order[0] + 1));
+        assertEquals(-5, map.get(order[0] + 1, -5));
+    }
+
+    @Test
+    void collidingKeysAreKeptApart() {
+        //keys whose hashes share their 32 high bits, so they start probing from the same slot at every table size
+        long inverse = inverse(0x9E3779B97F4A7C15L);
+        LongIntMap map = new LongIntMap(4);
+        int numOfKeys = 100;
+        for (int i = 0; i < numOfKeys; i++) {
+            assertEquals(i, map.put(collidingKey(inverse, i), i));
+        }
+        //0 and the negative keys are ordinary keys
+        assertEquals(numOfKeys, map.put(0, -1));
+        assertEquals(numOfKeys + 1, map.put(-1, -2));
+
+        for (int i = 0; i < numOfKeys; i++) {
+            assertEquals(i, map.indexOf(collidingKey(inverse, i)));
+            assertEquals(i, map.get(collidingKey(inverse, i), -1));
+        }
+        assertEquals(-1, map.get(0, 0));
+        assertEquals(-2, map.get(-1, 0));
+        assertEquals(-1, map.indexOf(collidingKey(inverse, numOfKeys)));
+
+        //replacing a value keeps the entry where it is
+        assertEquals(7, map.put(collidingKey(inverse, 7), 70));
+        assertEquals(70, map.getValue(7));
+        assertEquals(numOfKeys + 2, map.size());
+    }
+
+    //return the i-th key whose hash has the high bits 0x12345678
+    private static long collidingKey(long inverse, int i) {
+        return ((0x12345678L << 32) | i) * inverse;
+    }
+
+    //return the multiplicative inverse of an odd number modulo 2^64, by Newton's iteration
+    private static long inverse(long odd) {
+        long inverse = odd;
+        for (int i = 0; i < 5; i++) {
+            inverse *= 2 - odd * inverse;
+        }
+        return inverse;
+    }
+}
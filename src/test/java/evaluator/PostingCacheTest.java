@@ -0,0 +1,114 @@
+package evaluator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the cache of decoded posting lists: the lists returned under concurrent lookups, the budget,
+ * the hit counts and the posting lists larger than the budget
+ */
+class PostingCacheTest {
+    private static final int NUM_OF_TERMS = 500;
+
+    @Test
+    void concurrentLookupsReturnTheListOfTheirTerm() throws Exception {
+        AtomicLong loads = new AtomicLong();
+        long maxBytes = 64 * 1024;
+        PostingCache cache = new PostingCache(termId -> {
+            loads.incrementAndGet();
+            return entry(termId);
+        }, maxBytes);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> mismatches = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            long seed = thread;
+            mismatches.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                int count = 0;
+                for (int i = 0; i < 20000; i++) {
+                    //most lookups are for a few terms
+                    int termId = random.nextInt(4) == 0 ? random.nextInt(NUM_OF_TERMS) : random.nextInt(20);
+                    PostingCache.Entry entry = cache.get(termId);
+                    if (!matches(entry, termId)) {
+                        count++;
+                    }
+                }
+                return count;
+            }));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        for (Future<Integer> mismatch : mismatches) {
+            assertEquals(0, mismatch.get());
+        }
+
+        assertTrue(cache.getBytes() <= maxBytes, cache.toJson());
+        assertEquals(8 * 20000, cache.getHits() + cache.getMisses());
+        assertTrue(loads.get() <= cache.getMisses());
+        assertTrue(cache.getHitRate() > 0.5, cache.toJson());
+    }
+
+    @Test
+    void listsLargerThanTheBudgetAreNotCached() {
+        PostingCache cache = new PostingCache(PostingCacheTest::entry, 100);
+        PostingCache.Entry entry = cache.get(7);
+        assertTrue(matches(entry, 7));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void termsAskedForAgainAreProtected() {
+        long entryBytes = entry(0).getBytes();
+        PostingCache cache = new PostingCache(PostingCacheTest::entry, 10 * entryBytes);
+        PostingCache.Entry hot = cache.get(0);
+        assertSame(hot, cache.get(0));
+        //terms queried once evict each other, not the protected term
+        for (int termId = 100; termId < 200; termId++) {
+            cache.get(termId);
+        }
+        assertSame(hot, cache.get(0));
+        assertEquals(2, cache.getHits());
+        assertTrue(cache.getBytes() <= 10 * entryBytes);
+    }
+
+    //return the posting list of a term, each term has its own docIds
+    private static PostingCache.Entry entry(int termId) {
+        List<Document> postings = new ArrayList<>();
+        int[] docIds = new int[10];
+        for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = termId * 100 + i;
+            postings.add(new Document(termId, docIds[i], new int[]{i + 1}));
+        }
+        return PostingCache.Entry.of(postings, docIds);
+    }
+
+    //return true if an entry holds the postings and docIds of a term
+    private static boolean matches(PostingCache.Entry entry, int termId) {
+        if (entry.getPostings().size() != entry.getDocIds().length) {
+            return false;
+        }
+        for (int i = 0; i < entry.getDocIds().length; i++) {
+            Document document = entry.getPostings().get(i);
+            if (document.getTermId() != termId || document.getDocId() != termId * 100 + i
+                    || entry.getDocIds()[i] != document.getDocId()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,192 @@
+package evaluator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that posting lists written to a posting file are read back as they were: empty lists, large gaps,
+ * lists crossing mapped segments, the raw copy of a mapped file rewritten in place, and the invalid files
+ */
+class PostingFileTest {
+    //64 byte segments, so most lists cross a segment
+    private static final int SMALL_SEGMENT_SHIFT = 6;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void everyListIsReadBackAsWritten() throws IOException {
+        List<List<Document>> postingLists = postingLists(200, 1);
+        String fileName = folder.resolve("postings").toString();
+        PostingFile written = PostingFile.write(postingLists, fileName);
+        assertEquals(postingLists.size(), written.getNumOfTerms());
+        assertEquals(Files.size(folder.resolve("postings")), written.getSize());
+        assertReads(postingLists, written);
+
+        PostingFile opened = PostingFile.open(fileName);
+        assertEquals(fileName, opened.getFileName());
+        assertReads(postingLists, opened);
+    }
+
+    @Test
+    void listsCrossingSegmentsAreReadBackAsWritten() throws IOException {
+        List<List<Document>> postingLists = postingLists(200, 2);
+        String fileName = folder.resolve("postings").toString();
+        PostingFile.write(postingLists, fileName);
+
+        PostingFile postingFile = PostingFile.open(fileName, SMALL_SEGMENT_SHIFT);
+        assertTrue(postingFile.getSize() > 100L << SMALL_SEGMENT_SHIFT);
+        assertReads(postingLists, postingFile);
+    }
+
+    @Test
+    void rewritingAMappedFileCopiesTheListsThatAreKept() throws IOException {
+        List<List<Document>> postingLists = postingLists(100, 3);
+        String fileName = folder.resolve("postings").toString();
+        PostingFile.write(postingLists, fileName);
+        PostingFile base = PostingFile.open(fileName, SMALL_SEGMENT_SHIFT);
+
+        //every third list is replaced, and two terms are added
+        Random random = new Random(4);
+        PostingCache.Entry[] replaced = new PostingCache.Entry[postingLists.size() + 2];
+        List<List<Document>> expected = new ArrayList<>(postingLists);
+        for (int termId = 0; termId < replaced.length; termId++) {
+            if (termId % 3 == 0 || termId >= postingLists.size()) {
+                List<Document> postingList = postingList(termId, random);
+                replaced[termId] = PostingCache.Entry.of(postingList, docIds(postingList));
+                if (termId < postingLists.size()) {
+                    expected.set(termId, postingList);
+                } else {
+                    expected.add(postingList);
+                }
+            }
+        }
+
+        PostingFile rewritten = PostingFile.write(base, replaced, fileName);
+        assertEquals(fileName, rewritten.getFileName());
+        assertReads(expected, rewritten);
+        assertReads(expected, PostingFile.open(fileName));
+
+        //the version that mapped the old file still reads it, and no temporary file is left
+        assertReads(postingLists, base);
+        assertEquals(1, numOfFiles(folder));
+    }
+
+    @Test
+    void filesWithoutTheSignatureAreRejected() throws IOException {
+        Path path = folder.resolve("text");
+        Files.write(path, "not a posting file".getBytes());
+        IOException exception = assertThrows(IOException.class, () -> PostingFile.open(path.toString()));
+        assertEquals("Not a posting file: " + path, exception.getMessage());
+
+        Path shortFile = folder.resolve("short");
+        Files.write(shortFile, new byte[]{0x50, 0x49});
+        exception = assertThrows(IOException.class, () -> PostingFile.open(shortFile.toString()));
+        assertEquals("Not a posting file: " + shortFile, exception.getMessage());
+    }
+
+    @Test
+    void truncatedFilesAreRejected() throws IOException {
+        String fileName = folder.resolve("postings").toString();
+        long size = PostingFile.write(postingLists(20, 5), fileName).getSize();
+
+        //the last posting list is cut
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.setLength(size - 1);
+        }
+        IOException exception = assertThrows(IOException.class, () -> PostingFile.open(fileName));
+        assertEquals("Truncated posting file: " + fileName, exception.getMessage());
+
+        //the offsets are cut
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.setLength(20);
+        }
+        exception = assertThrows(IOException.class, () -> PostingFile.open(fileName));
+        assertEquals("Truncated posting file: " + fileName, exception.getMessage());
+    }
+
+    //return the number of files in a folder
+    private static long numOfFiles(Path folder) throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.count();
+        }
+    }
+
+    //checks the postings and docIds of every term of a file
+    private static void assertReads(List<List<Document>> postingLists, PostingFile postingFile) {
+        assertEquals(postingLists.size(), postingFile.getNumOfTerms());
+        for (int termId = 0; termId < postingLists.size(); termId++) {
+            List<Document> expected = postingLists.get(termId);
+            PostingCache.Entry entry = postingFile.read(termId);
+            assertEquals(expected.size(), entry.getPostings().size(), "term " + termId);
+            assertArrayEquals(docIds(expected), entry.getDocIds(), "term " + termId);
+            for (int i = 0; i < expected.size(); i++) {
+                Document document = entry.getPostings().get(i);
+                assertEquals(termId, document.getTermId());
+                assertEquals(expected.get(i).getDocId(), document.getDocId());
+                assertEquals(expected.get(i).getTermFrequency(), document.getTermFrequency());
+                assertArrayEquals(positions(expected.get(i)), positions(document), "term " + termId);
+            }
+        }
+    }
+
+    //return posting lists with an empty list, a list of extreme values and random lists
+    private static List<List<Document>> postingLists(int numOfTerms, long seed) {
+        Random random = new Random(seed);
+        List<List<Document>> postingLists = new ArrayList<>();
+        postingLists.add(Collections.emptyList());
+        postingLists.add(Arrays.asList(
+                new Document(1, 0, new int[]{0}),
+                new Document(1, 1 << 20, new int[]{1 << 28, Integer.MAX_VALUE - 1}),
+                new Document(1, Integer.MAX_VALUE, new int[]{Integer.MAX_VALUE})));
+        while (postingLists.size() < numOfTerms) {
+            postingLists.add(random.nextInt(10) == 0 ? Collections.emptyList()
+                    : postingList(postingLists.size(), random));
+        }
+        return postingLists;
+    }
+
+    //return a random posting list, with docId gaps of up to 4 bytes and position gaps of up to 3 bytes
+    private static List<Document> postingList(int termId, Random random) {
+        List<Document> postingList = new ArrayList<>();
+        int numOfDocs = 1 + random.nextInt(30);
+        int docId = random.nextInt(100);
+        for (int i = 0; i < numOfDocs && docId >= 0; i++) {
+            int[] positions = new int[1 + random.nextInt(5)];
+            int position = random.nextInt(1000);
+            for (int j = 0; j < positions.length; j++) {
+                positions[j] = position;
+                position += 1 + random.nextInt(1 << (7 * (1 + random.nextInt(3))));
+            }
+            postingList.add(new Document(termId, docId, positions));
+            docId += 1 + random.nextInt(1 << (7 * (1 + random.nextInt(4))));
+        }
+        return postingList;
+    }
+
+    //return the docIds of a posting list
+    private static int[] docIds(List<Document> postingList) {
+        return postingList.stream().mapToInt(Document::getDocId).toArray();
+    }
+
+    //return the positions of a document
+    private static int[] positions(Document document) {
+        return Arrays.copyOf(document.getTermPositions(), document.getTermFrequency());
+    }
+}
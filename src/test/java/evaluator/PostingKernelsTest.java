@@ -0,0 +1,138 @@
+package evaluator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks the kernels on random inputs: the scalar kernels against plain loops, and the vector kernels,
+ * when the JVM runs with --add-modules jdk.incubator.vector, against the scalar ones
+ */
+class PostingKernelsTest {
+    private static final int RUNS = 2000;
+
+    @Test
+    void scalarKernelsMatchPlainLoops() {
+        checkKernels(PostingKernels.forName("scalar"), new Random(1));
+    }
+
+    @Test
+    void vectorKernelsMatchPlainLoops() {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+                "needs --add-modules jdk.incubator.vector");
+        PostingKernels kernels = PostingKernels.forName("vector");
+        assertEquals("vector", kernels.getName());
+        checkKernels(kernels, new Random(1));
+    }
+
+    /**
+     * Lists of very different lengths go through the vector kernel comparing each docId of the short list
+     * with a block of the long one. Its indexes are written before knowing if there is a match, and must be
+     * overwritten by the next docId
+     */
+    @Test
+    void vectorIntersectionOfShortAndLongLists() {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+                "needs --add-modules jdk.incubator.vector");
+        PostingKernels kernels = PostingKernels.forName("vector");
+        Random random = new Random(2);
+        for (int run = 0; run < RUNS; run++) {
+            int[] longIds = randomDocIds(random, 64 + random.nextInt(2000), 1 + random.nextInt(8));
+            int[] shortIds = new int[1 + random.nextInt(16)];
+            for (int i = 0; i < shortIds.length; i++) {
+                //docIds of the long list, and docIds that are not in it, the last ones included
+                shortIds[i] = random.nextBoolean() ? longIds[random.nextInt(longIds.length)]
+                        : random.nextInt(longIds[longIds.length - 1] + 100);
+            }
+            shortIds = Arrays.stream(shortIds).sorted().distinct().toArray();
+            checkIntersection(kernels, shortIds, longIds);
+            checkIntersection(kernels, longIds, shortIds);
+        }
+    }
+
+    //checks the three kernels on random inputs of any length
+    private static void checkKernels(PostingKernels kernels, Random random) {
+        for (int run = 0; run < RUNS; run++) {
+            int[] docIdsOne = randomDocIds(random, random.nextInt(300), 1 + random.nextInt(20));
+            int[] docIdsTwo = randomDocIds(random, random.nextInt(300), 1 + random.nextInt(20));
+            checkIntersection(kernels, docIdsOne, docIdsTwo);
+
+            int[] positionsOne = randomDocIds(random, 1 + random.nextInt(40), 1 + random.nextInt(10));
+            int[] positionsTwo = randomDocIds(random, 1 + random.nextInt(40), 1 + random.nextInt(10));
+            int sizeOne = 1 + random.nextInt(positionsOne.length);
+            int sizeTwo = 1 + random.nextInt(positionsTwo.length);
+            int window = random.nextInt(5);
+            assertEquals(matchesWindow(positionsOne, sizeOne, positionsTwo, sizeTwo, window),
+                    kernels.matchesWindow(positionsOne, sizeOne, positionsTwo, sizeTwo, window));
+
+            int numOfWords = random.nextInt(40);
+            long[] wordsOne = randomWords(random, numOfWords);
+            long[] wordsTwo = randomWords(random, numOfWords);
+            long[] result = new long[wordsOne.length];
+            long[] expected = new long[wordsOne.length];
+            int cardinality = 0;
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = wordsOne[i] & wordsTwo[i];
+                cardinality += Long.bitCount(expected[i]);
+            }
+            assertEquals(cardinality, kernels.and(wordsOne, wordsTwo, result));
+            assertArrayEquals(expected, result);
+        }
+    }
+
+    //checks the common docIds and their indexes in both lists
+    private static void checkIntersection(PostingKernels kernels, int[] docIdsOne, int[] docIdsTwo) {
+        int[] indexesOne = new int[Math.min(docIdsOne.length, docIdsTwo.length)];
+        int[] indexesTwo = new int[indexesOne.length];
+        int count = kernels.intersect(docIdsOne, docIdsTwo, indexesOne, indexesTwo);
+
+        int[] expected = Arrays.stream(docIdsOne).filter(docId -> Arrays.binarySearch(docIdsTwo, docId) >= 0)
+                .toArray();
+        assertEquals(expected.length, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(expected[i], docIdsOne[indexesOne[i]]);
+            assertEquals(expected[i], docIdsTwo[indexesTwo[i]]);
+        }
+    }
+
+    //return true if a position of term two follows a position of term one by at most window + 1
+    private static boolean matchesWindow(int[] positionsOne, int sizeOne, int[] positionsTwo, int sizeTwo,
+                                         int window) {
+        for (int i = 0; i < sizeOne; i++) {
+            for (int j = 0; j < sizeTwo; j++) {
+                int distance = positionsTwo[j] - positionsOne[i];
+                if (distance > 0 && distance <= window + 1) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    //return increasing docIds with random gaps of at most maxGap
+    private static int[] randomDocIds(Random random, int length, int maxGap) {
+        int[] docIds = new int[length];
+        int docId = random.nextInt(maxGap);
+        for (int i = 0; i < length; i++) {
+            docIds[i] = docId;
+            docId += 1 + random.nextInt(maxGap);
+        }
+        return docIds;
+    }
+
+    //return words with sparse or dense bits
+    private static long[] randomWords(Random random, int numOfWords) {
+        long[] words = new long[numOfWords];
+        boolean dense = random.nextBoolean();
+        for (int i = 0; i < words.length; i++) {
+            words[i] = dense ? random.nextLong() | random.nextLong() : random.nextLong() & random.nextLong()
+                    & random.nextLong();
+        }
+        return words;
+    }
+}
@@ -0,0 +1,60 @@
+package evaluator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks reading a qrels file: skipped lines, repeated judgements, file order and the keys of large ids
+ */
+class QrelsTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void judgementsAreReadInFileOrder() throws IOException {
+        Path path = folder.resolve("qrels.txt");
+        Files.write(path, String.join("\n",
+                "2 0 7 1",
+                "",
+                "1 0 3 0",
+                "not a judgement",
+                "1 0 3",
+                "1 0 doc 1",
+                "  1\t0  5   2  ",
+                "2 0 7 0").getBytes());
+        Qrels qrels = Qrels.load(path.toString());
+
+        //the blank line is not counted, the repeated judgement replaces the first one in place
+        assertEquals(3, qrels.getSkippedLines());
+        assertEquals(3, qrels.size());
+        assertEquals(0, qrels.getLabel(2, 7));
+        assertEquals(0, qrels.getLabel(1, 3));
+        assertEquals(2, qrels.getLabel(1, 5));
+        assertEquals(Qrels.NOT_JUDGED, qrels.getLabel(1, 7));
+
+        LongIntMap labels = qrels.getLabels();
+        assertEquals(Qrels.key(2, 7), labels.getKey(0));
+        assertEquals(Qrels.key(1, 3), labels.getKey(1));
+        assertEquals(Qrels.key(1, 5), labels.getKey(2));
+    }
+
+    @Test
+    void keysKeepLargeAndNegativeIds() {
+        for (int qid : new int[]{0, 1, Integer.MAX_VALUE, -1}) {
+            for (int docId : new int[]{0, 1, Integer.MAX_VALUE, -1, Integer.MIN_VALUE}) {
+                long key = Qrels.key(qid, docId);
+                assertEquals(qid, Qrels.getQueryId(key));
+                assertEquals(docId, Qrels.getDocId(key));
+            }
+        }
+        //a negative docId does not change the query id
+        assertEquals(Qrels.key(1, 0) | 0xFFFFFFFFL, Qrels.key(1, -1));
+    }
+}
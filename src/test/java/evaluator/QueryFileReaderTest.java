@@ -0,0 +1,103 @@
+package evaluator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks reading query files: elements over several lines, comments, character references,
+ * queries missing a number or a text, and the errors of elements that are not closed
+ */
+class QueryFileReaderTest {
+
+    @Test
+    void elementsOverSeveralLinesAndComments() throws IOException {
+        String queries = String.join("\n",
+                "<?xml version=\"1.0\"?>",
+                "<!-- a comment -- with dashes <query> -->",
+                "<queries>",
+                "<query>",
+                "  <number>",
+                "    7",
+                "  </number>",
+                "  <text>battery",
+                "life</text>",
+                "</query>",
+                "<query type=\"short\"><!-- <number>99</number> --><number>8</number><text>screen</text></query>",
+                "</queries>");
+        try (QueryFileReader reader = new QueryFileReader(new StringReader(queries))) {
+            assertTrue(reader.next());
+            assertEquals("7", reader.getId());
+            assertEquals("battery\nlife", reader.getText());
+            assertTrue(reader.next());
+            assertEquals("8", reader.getId());
+            assertEquals("screen", reader.getText());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    void referencesAreDecoded() throws IOException {
+        String queries = "<query><number>1</number><text>a &amp; b &lt;c&gt; &quot;d&quot; &apos;e&apos; "
+                + "&#233;&#x41; &nbsp; &#xZZ; AT&T</text></query>";
+        try (QueryFileReader reader = new QueryFileReader(new StringReader(queries))) {
+            assertTrue(reader.next());
+            //unknown and invalid references, and an ampersand that starts no reference, are kept as they are
+            assertEquals("a & b <c> \"d\" 'e' \u00e9A &nbsp; &#xZZ; AT&T", reader.getText());
+        }
+    }
+
+    @Test
+    void queriesWithoutANumberOrATextAreSkipped() throws IOException {
+        String queries = String.join("\n",
+                "<query><number>1</number></query>",
+                "<query><text>no number</text></query>",
+                "<query></query>",
+                "<query><number>2</number><text>kept</text></query>");
+        String warnings;
+        PrintStream err = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errors, true));
+        try (QueryFileReader reader = new QueryFileReader(new StringReader(queries))) {
+            //the number of the first query is not paired with the text of the second one
+            assertTrue(reader.next());
+            assertEquals("2", reader.getId());
+            assertEquals("kept", reader.getText());
+            assertFalse(reader.next());
+        } finally {
+            System.setErr(err);
+            warnings = errors.toString();
+        }
+        //the empty query is skipped without a warning
+        assertEquals(String.format("Skipping a query without a text at line 1%n"
+                + "Skipping a query without a number at line 2%n"), warnings);
+    }
+
+    @Test
+    void elementsThatAreNotClosedAreReportedWithTheirLine() throws IOException {
+        assertEquals("Unexpected end of file in <text> at line 3",
+                error("<query>\n<number>1</number>\n<text>never closed"));
+        assertEquals("Unexpected </text> in <number> at line 2", error("<query>\n<number>1</text></query>"));
+        assertEquals("Unexpected end of file in a comment at line 2", error("<!-- not closed\n->"));
+        assertEquals("Unexpected end of file in a tag at line 1", error("<query><number"));
+    }
+
+    //return the message of the error reading a query file
+    private static String error(String queries) throws IOException {
+        try (QueryFileReader reader = new QueryFileReader(new StringReader(queries))) {
+            return assertThrows(IOException.class, () -> {
+                while (reader.next()) {
+                    //reads up to the error
+                }
+            }).getMessage();
+        }
+    }
+}